@@ -1,5 +1,6 @@
 package com.alerts;
 
+import com.data_codec.RecordTypeRegistry;
 import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
@@ -52,11 +53,11 @@ public class AlertGenerator {
     private void checkBloodPressureAlerts(Patient patient, List<PatientRecord> records) {
         for (int i = 0; i < records.size(); i++) {
             PatientRecord record = records.get(i);
-            String recordType = record.getRecordType();
+            int recordType = record.getRecordTypeCode();
             double value = record.getMeasurementValue();
             long timestamp = record.getTimestamp();
 
-            if ("BloodPressure".equals(recordType)) {
+            if (recordType == RecordTypeRegistry.BLOOD_PRESSURE) {
                 if (value > 180 || value < 90) {
                     triggerAlert(new Alert(String.valueOf(patient.getPatientId()), "Critical Blood Pressure", timestamp));
                 }
@@ -82,11 +83,11 @@ public class AlertGenerator {
     private void checkOxygenSaturationAlerts(Patient patient, List<PatientRecord> records) {
         for (int i = 0; i < records.size(); i++) {
             PatientRecord record = records.get(i);
-            String recordType = record.getRecordType();
+            int recordType = record.getRecordTypeCode();
             double value = record.getMeasurementValue();
             long timestamp = record.getTimestamp();
 
-            if ("OxygenSaturation".equals(recordType)) {
+            if (recordType == RecordTypeRegistry.OXYGEN_SATURATION) {
                 if (value < 92) {
                     triggerAlert(new Alert(String.valueOf(patient.getPatientId()), "Low Oxygen Saturation", timestamp));
                 }
@@ -109,9 +110,9 @@ public class AlertGenerator {
      */
     private void checkCombinedAlert(Patient patient, List<PatientRecord> records) {
         for (PatientRecord record : records) {
-            if ("BloodPressure".equals(record.getRecordType()) && record.getMeasurementValue() < 90) {
+            if (record.getRecordTypeCode() == RecordTypeRegistry.BLOOD_PRESSURE && record.getMeasurementValue() < 90) {
                 for (PatientRecord otherRecord : records) {
-                    if ("OxygenSaturation".equals(otherRecord.getRecordType()) && otherRecord.getMeasurementValue() < 92) {
+                    if (otherRecord.getRecordTypeCode() == RecordTypeRegistry.OXYGEN_SATURATION && otherRecord.getMeasurementValue() < 92) {
                         triggerAlert(new Alert(String.valueOf(patient.getPatientId()), "Hypotensive Hypoxemia", record.getTimestamp()));
                         break;
                     }
@@ -133,7 +134,7 @@ public class AlertGenerator {
         List<Double> values = new ArrayList<>();
 
         for (PatientRecord record : records) {
-            if ("ECG".equals(record.getRecordType())) {
+            if (record.getRecordTypeCode() == RecordTypeRegistry.ECG) {
                 double value = record.getMeasurementValue();
                 sum += value;
                 values.add(value);
@@ -1,5 +1,6 @@
 package com.alerts;
 
+import com.data_codec.RecordTypeRegistry;
 import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
@@ -66,9 +67,9 @@ public class AlertGeneratorWeek7Task {
      */
     private void checkCombinedAlert(Patient patient, List<PatientRecord> records) {
         for (PatientRecord record : records) {
-            if ("BloodPressure".equals(record.getRecordType()) && record.getMeasurementValue() < 90) {
+            if (record.getRecordTypeCode() == RecordTypeRegistry.BLOOD_PRESSURE && record.getMeasurementValue() < 90) {
                 for (PatientRecord otherRecord : records) {
-                    if ("OxygenSaturation".equals(otherRecord.getRecordType()) && otherRecord.getMeasurementValue() < 92) {
+                    if (otherRecord.getRecordTypeCode() == RecordTypeRegistry.OXYGEN_SATURATION && otherRecord.getMeasurementValue() < 92) {
                         triggerAlert(new Alert(String.valueOf(patient.getPatientId()), "Hypotensive Hypoxemia", record.getTimestamp()));
                         break;
                     }
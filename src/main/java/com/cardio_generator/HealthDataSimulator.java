@@ -98,6 +98,11 @@ public class HealthDataSimulator {
                                 Files.createDirectories(outputPath);
                             }
                             outputStrategy = new FileOutputStrategy(baseDirectory);
+                        } else if (outputArg.startsWith("gzfile:")) {
+                            String baseDirectory = outputArg.substring(7);
+                            Files.createDirectories(Paths.get(baseDirectory));
+                            outputStrategy = new FileOutputStrategy(baseDirectory,
+                                    FileOutputStrategy.DEFAULT_SEGMENT_SIZE);
                         } else if (outputArg.startsWith("websocket:")) {
                             try {
                                 int port = Integer.parseInt(outputArg.substring(10));
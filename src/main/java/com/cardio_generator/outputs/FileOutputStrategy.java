@@ -1,8 +1,16 @@
 package com.cardio_generator.outputs;
 
+import com.data_codec.GzipBlockCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.concurrent.ConcurrentHashMap;
@@ -10,8 +18,16 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Implements the OutputStrategy to output data to files. This strategy creates a file for each type of data label
  * and writes the data into the corresponding file in a specified base directory.
+ *
+ * <p>Created with a segment size, the strategy writes gzip instead: the lines of each label go to
+ * {@code <label>-00000.txt.gz}, {@code <label>-00001.txt.gz} and so on, a new segment being started once the current
+ * one reaches the segment size. Lines are compressed in blocks of {@link GzipBlockCodec#MAX_BLOCK_SIZE} bytes, each
+ * written as a gzip member that records its size, so {@code FileDataReader} can inflate a segment in parallel. A
+ * block is written when it fills up, on {@link #flush()} and on {@link #close()}, which a shutdown hook calls.
  */
-public class FileOutputStrategy implements OutputStrategy {
+public class FileOutputStrategy implements OutputStrategy, Closeable {
+    /** Default size at which a compressed segment is closed, in bytes. */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
 
     // The directory where data files are stored.
     private String baseDirectory;
@@ -19,6 +35,12 @@ public class FileOutputStrategy implements OutputStrategy {
     // Maps data labels to their respective file paths for efficient data output.
     public static ConcurrentHashMap<String, String> fileMap = new ConcurrentHashMap<>();
 
+    // Size at which a compressed segment is closed, or 0 to write plain text.
+    private final long segmentSize;
+
+    // Maps data labels to their compressed segment writers.
+    private final ConcurrentHashMap<String, SegmentWriter> segmentWriters = new ConcurrentHashMap<>();
+
     /**
      * Initializes a new FileOutputStrategy with a specified base directory for storing files.
      *
@@ -26,6 +48,22 @@ public class FileOutputStrategy implements OutputStrategy {
      */
     public FileOutputStrategy(String baseDirectory) {
         this.baseDirectory = baseDirectory;
+        this.segmentSize = 0;
+    }
+
+    /**
+     * Initializes a new FileOutputStrategy that writes gzip-compressed, rolling segments.
+     *
+     * @param baseDirectory the directory where data files will be saved.
+     * @param segmentSize the compressed size at which a segment is closed and the next one started, in bytes.
+     */
+    public FileOutputStrategy(String baseDirectory, long segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive: " + segmentSize);
+        }
+        this.baseDirectory = baseDirectory;
+        this.segmentSize = segmentSize;
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "file-output-flush"));
     }
 
     /**
@@ -48,6 +86,18 @@ public class FileOutputStrategy implements OutputStrategy {
             return;
         }
 
+        if (segmentSize > 0) {
+            String line = String.format("Patient ID: %d, Timestamp: %d, Label: %s, Data: %s%n",
+                    patientId, timestamp, label, data);
+            SegmentWriter writer = segmentWriters.computeIfAbsent(label, SegmentWriter::new);
+            try {
+                writer.write(line.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println("Error writing to segment for " + label + ": " + e.getMessage());
+            }
+            return;
+        }
+
         String filePath = fileMap.computeIfAbsent(label, k -> Paths.get(baseDirectory, label + ".txt").toString());
 
         try (PrintWriter out = new PrintWriter(
@@ -57,4 +107,120 @@ public class FileOutputStrategy implements OutputStrategy {
             System.err.println("Error writing to file " + filePath + ": " + e.getMessage());
         }
     }
+
+    /**
+     * Compresses and writes the lines buffered for every label. Does nothing in plain text mode, where every line is
+     * written at once.
+     */
+    public void flush() {
+        for (SegmentWriter writer : segmentWriters.values()) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                System.err.println("Error flushing segment for " + writer.label + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered lines and closes the open segments. Later output starts new segments.
+     */
+    @Override
+    public void close() {
+        for (SegmentWriter writer : segmentWriters.values()) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Error closing segment for " + writer.label + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Buffers the lines of one label into blocks and writes each block as a gzip member of the current segment.
+     */
+    private final class SegmentWriter {
+        private final String label;
+        private final GzipBlockCodec codec = new GzipBlockCodec();
+        private final byte[] block = new byte[GzipBlockCodec.MAX_BLOCK_SIZE];
+        private int blockLength;
+        private OutputStream out;
+        private long segmentLength;
+        private int nextSegment = -1;
+
+        SegmentWriter(String label) {
+            this.label = label;
+        }
+
+        synchronized void write(byte[] line) throws IOException {
+            if (blockLength + line.length > block.length) {
+                // Keep lines whole within a block, so a segment never ends mid-line.
+                writeBlock();
+            }
+            int offset = 0;
+            while (offset < line.length) {
+                if (blockLength == block.length) {
+                    writeBlock();
+                }
+                int length = Math.min(line.length - offset, block.length - blockLength);
+                System.arraycopy(line, offset, block, blockLength, length);
+                blockLength += length;
+                offset += length;
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            writeBlock();
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        synchronized void close() throws IOException {
+            writeBlock();
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (blockLength == 0) {
+                return;
+            }
+            if (out == null) {
+                out = new BufferedOutputStream(Files.newOutputStream(nextSegmentPath(),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+                segmentLength = 0;
+            }
+            segmentLength += codec.writeMember(block, 0, blockLength, out);
+            blockLength = 0;
+            if (segmentLength >= segmentSize) {
+                out.close();
+                out = null;
+            }
+        }
+
+        /**
+         * Returns the path of the next segment, continuing after the segments an earlier run left in the directory.
+         */
+        private Path nextSegmentPath() throws IOException {
+            if (nextSegment < 0) {
+                nextSegment = 0;
+                try (DirectoryStream<Path> existing =
+                             Files.newDirectoryStream(Paths.get(baseDirectory), label + "-*.txt.gz")) {
+                    for (Path path : existing) {
+                        String name = path.getFileName().toString();
+                        String number = name.substring(label.length() + 1, name.length() - ".txt.gz".length());
+                        try {
+                            nextSegment = Math.max(nextSegment, Integer.parseInt(number) + 1);
+                        } catch (NumberFormatException e) {
+                            // Not a segment of this label, e.g. "Label-x.txt.gz".
+                        }
+                    }
+                }
+            }
+            return Paths.get(baseDirectory, String.format("%s-%05d.txt.gz", label, nextSegment++));
+        }
+    }
 }
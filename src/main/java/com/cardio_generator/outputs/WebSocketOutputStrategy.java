@@ -1,17 +1,40 @@
 package com.cardio_generator.outputs;
 
+import com.data_codec.BinaryRecordCodec;
+import com.data_codec.BinaryRecordCodec.Encoding;
+import com.data_codec.RecordCodec;
 import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
 import org.java_websocket.server.WebSocketServer;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Output strategy that sets up a WebSocket server to broadcast messages to all connected clients in real-time.
+ *
+ * <p>Clients send one {@code patientId,timestamp,label,data} text frame per sample unless they ask for a
+ * binary encoding with the {@link BinaryRecordCodec#ENCODING_HEADER} handshake header. Samples for those
+ * clients are packed into {@link BinaryRecordCodec} frames, which are sent when full or, at the latest,
+ * after the flush interval.
  */
 public class WebSocketOutputStrategy implements OutputStrategy {
+    /** Default time a sample may wait for its binary frame to fill up, in milliseconds. */
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50;
 
     private WebSocketServer server;
+    private final BinaryRecordCodec frame; // Guarded by itself.
+    private final RecordCodec valueCodec = new RecordCodec(RecordCodec.Layout.STREAM_CSV); // Guarded by frame.
+    private final ScheduledExecutorService flusher;
 
     /**
      * Constructs a WebSocketOutputStrategy with the specified port.
@@ -19,10 +42,38 @@ public class WebSocketOutputStrategy implements OutputStrategy {
      * @param port the port on which the WebSocket server will listen
      */
     public WebSocketOutputStrategy(int port) {
+        this(port, BinaryRecordCodec.DEFAULT_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructs a WebSocketOutputStrategy with the specified port and binary framing.
+     *
+     * @param port the port on which the WebSocket server will listen
+     * @param recordsPerFrame the number of samples a binary frame holds at most
+     * @param flushIntervalMillis the time a sample may wait for its binary frame to fill up
+     */
+    public WebSocketOutputStrategy(int port, int recordsPerFrame, long flushIntervalMillis) {
         server = new SimpleWebSocketServer(new InetSocketAddress(port));
+        frame = new BinaryRecordCodec(recordsPerFrame);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websocket-frame-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleAtFixedRate(this::flushFrame, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
         System.out.println("WebSocket server created on port: " + port + ", listening for connections...");
     }
 
+    /**
+     * Returns the port the server listens on, which is useful when it was created with port 0.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getPort();
+    }
+
     /**
      * Starts the WebSocket server.
      */
@@ -34,6 +85,8 @@ public class WebSocketOutputStrategy implements OutputStrategy {
      * Stops the WebSocket server.
      */
     public void stop() {
+        flusher.shutdown();
+        flushFrame();
         try {
             server.stop();
         } catch (InterruptedException e) {
@@ -52,13 +105,75 @@ public class WebSocketOutputStrategy implements OutputStrategy {
      */
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
-        String message = String.format("%d,%d,%s,%s", patientId, timestamp, label, data);
-        // Broadcast the message to all connected clients
+        String message = null;
+        boolean binaryClients = false;
+        // Broadcast the message to all connected text clients
         for (WebSocket conn : server.getConnections()) {
-            conn.send(message);
+            if (encodingOf(conn) != Encoding.TEXT) {
+                binaryClients = true;
+            } else {
+                if (message == null) {
+                    message = patientId + "," + timestamp + "," + label + "," + data;
+                }
+                conn.send(message);
+            }
+        }
+        if (binaryClients) {
+            addToFrame(patientId, timestamp, label, data);
         }
     }
 
+    private void addToFrame(int patientId, long timestamp, String label, String data) {
+        synchronized (frame) {
+            if (!valueCodec.parseValue(data)) {
+                System.err.println("Cannot send non-numeric data in a binary frame: " + data);
+                return;
+            }
+            frame.add(patientId, timestamp, label, valueCodec.getValue());
+            if (frame.isFull()) {
+                flushFrame();
+            }
+        }
+    }
+
+    /**
+     * Sends the pending binary frame to every binary client, encoded as each of them asked.
+     */
+    private void flushFrame() {
+        synchronized (frame) {
+            if (frame.isEmpty()) {
+                return;
+            }
+            List<WebSocket> plainClients = new ArrayList<>();
+            List<WebSocket> deltaClients = new ArrayList<>();
+            for (WebSocket conn : server.getConnections()) {
+                Encoding encoding = encodingOf(conn);
+                if (encoding == Encoding.BINARY) {
+                    plainClients.add(conn);
+                } else if (encoding == Encoding.BINARY_DELTA) {
+                    deltaClients.add(conn);
+                }
+            }
+            try {
+                if (!plainClients.isEmpty()) {
+                    server.broadcast(frame.encode(false), plainClients);
+                }
+                if (!deltaClients.isEmpty()) {
+                    server.broadcast(frame.encode(true), deltaClients);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Failed to send binary frame: " + e.getMessage());
+            } finally {
+                frame.clear();
+            }
+        }
+    }
+
+    private static Encoding encodingOf(WebSocket conn) {
+        Encoding encoding = conn.getAttachment();
+        return encoding == null ? Encoding.TEXT : encoding;
+    }
+
     /**
      * Implementation of a simple WebSocket server.
      */
@@ -74,8 +189,19 @@ public class WebSocketOutputStrategy implements OutputStrategy {
         }
 
         @Override
-        public void onOpen(WebSocket conn, org.java_websocket.handshake.ClientHandshake handshake) {
-            System.out.println("New connection: " + conn.getRemoteSocketAddress());
+        public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft,
+                ClientHandshake request) throws InvalidDataException {
+            ServerHandshakeBuilder response = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+            // Confirm the encoding, so that clients can tell the server understood the request
+            Encoding encoding = Encoding.fromHeader(request.getFieldValue(BinaryRecordCodec.ENCODING_HEADER));
+            response.put(BinaryRecordCodec.ENCODING_HEADER, encoding.headerValue());
+            conn.setAttachment(encoding);
+            return response;
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+            System.out.println("New connection: " + conn.getRemoteSocketAddress() + " (" + encodingOf(conn) + ")");
         }
 
         @Override
@@ -0,0 +1,410 @@
+package com.data_codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes and reads the binary frames exchanged between the simulator's
+ * {@code WebSocketOutputStrategy} and the storage's {@code WebSocketClientImpl}
+ * when the client asks for them, instead of one text frame per sample. A frame packs
+ * many fixed-width records:
+ *
+ * <pre>
+ * byte    version (1)
+ * byte    format: 0 = plain, 1 = delta
+ * short   label count, then per label: short byte length, UTF-8 bytes
+ * int     record count
+ * long    base timestamp                  (delta format only)
+ * records:
+ *   int     patient ID
+ *   long    timestamp                     (plain)  | int timestamp - base (delta)
+ *   short   index into the frame's label table
+ *   double  value
+ * </pre>
+ *
+ * <p>All numbers are big-endian. Labels travel with every frame rather than
+ * as {@link RecordTypeRegistry} codes, because codes of labels registered at
+ * run time differ between processes. The decoder only resolves labels the
+ * registry already knows and rejects frames with any other, so a frame never
+ * registers labels. The delta format shrinks records from 22
+ * to 18 bytes; the encoder falls back to the plain format when a timestamp is
+ * too far from the first one of its frame.
+ *
+ * <p>Clients ask for a format with the {@link #ENCODING_HEADER} handshake
+ * header. A server that does not know the header keeps sending text, which
+ * clients keep accepting, so text remains the fallback.
+ *
+ * <p>An encoder buffers the records of the next frame, and a decoder keeps
+ * the error of the last frame, so a codec must not be shared between threads.
+ *
+ * <pre>
+ * BinaryRecordCodec codec = new BinaryRecordCodec(512);
+ * codec.add(1, System.currentTimeMillis(), "HeartRate", 72.0);
+ * ByteBuffer frame = codec.encode(true);
+ * codec.clear();
+ * ...
+ * if (!codec.decode(frame, sink)) {
+ *     System.err.println(codec.getError());
+ * }
+ * </pre>
+ */
+public final class BinaryRecordCodec {
+    /** Handshake header by which a client asks for an {@link Encoding}. */
+    public static final String ENCODING_HEADER = "X-Record-Encoding";
+    /** Number of records a frame holds unless another capacity is given. */
+    public static final int DEFAULT_CAPACITY = 512;
+
+    static final int PLAIN_RECORD_BYTES = Integer.BYTES + Long.BYTES + Short.BYTES + Double.BYTES;
+    static final int DELTA_RECORD_BYTES = Integer.BYTES + Integer.BYTES + Short.BYTES + Double.BYTES;
+
+    private static final byte VERSION = 1;
+    private static final byte PLAIN = 0;
+    private static final byte DELTA = 1;
+    private static final int MAX_LABELS = Short.MAX_VALUE;
+
+    /**
+     * The record encodings a client can ask for.
+     */
+    public enum Encoding {
+        /** One {@code patientId,timestamp,label,value} text frame per sample. */
+        TEXT("text"),
+        /** Binary frames with full timestamps. */
+        BINARY("binary"),
+        /** Binary frames with timestamps relative to the frame's first one. */
+        BINARY_DELTA("binary-delta");
+
+        private final String headerValue;
+
+        Encoding(String headerValue) {
+            this.headerValue = headerValue;
+        }
+
+        /**
+         * Returns the value of the {@link #ENCODING_HEADER} asking for this
+         * encoding.
+         *
+         * @return the header value
+         */
+        public String headerValue() {
+            return headerValue;
+        }
+
+        /**
+         * Reads the {@link #ENCODING_HEADER} of a handshake.
+         *
+         * @param headerValue the header value, or {@code null} or empty if
+         *                    the client sent none
+         * @return the encoding asked for, {@link #TEXT} if unknown
+         */
+        public static Encoding fromHeader(String headerValue) {
+            for (Encoding encoding : values()) {
+                if (encoding.headerValue.equalsIgnoreCase(headerValue)) {
+                    return encoding;
+                }
+            }
+            return TEXT;
+        }
+    }
+
+    // Encoder state: the records of the next frame and the labels they use.
+    private final int[] patientIds;
+    private final long[] timestamps;
+    private final short[] labelIndexes;
+    private final double[] values;
+    private int size;
+    private String[] labels = new String[8];
+    private int labelCount;
+
+    // Decoder state.
+    private int[] labelCodes = new int[8];
+    private byte[] labelBytes = new byte[32];
+    private boolean deltaFormat;
+    private int decodedRecords;
+    private String error;
+
+    /**
+     * Creates a codec whose frames hold {@link #DEFAULT_CAPACITY} records.
+     */
+    public BinaryRecordCodec() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a codec.
+     *
+     * @param capacity the number of records an encoded frame holds at most
+     */
+    public BinaryRecordCodec(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        patientIds = new int[capacity];
+        timestamps = new long[capacity];
+        labelIndexes = new short[capacity];
+        values = new double[capacity];
+    }
+
+    /**
+     * Adds a record to the next frame.
+     *
+     * @param patientId the unique identifier of the patient
+     * @param timestamp the time of the measurement, in milliseconds since the Unix epoch
+     * @param label     the type of record, e.g., "HeartRate"
+     * @param value     the measured value
+     * @throws IllegalStateException if the frame is full
+     */
+    public void add(int patientId, long timestamp, String label, double value) {
+        if (isFull()) {
+            throw new IllegalStateException("Frame is full");
+        }
+        patientIds[size] = patientId;
+        timestamps[size] = timestamp;
+        labelIndexes[size] = (short) labelIndex(label);
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Returns the number of records added since the last {@link #clear()}.
+     *
+     * @return the number of records in the next frame
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns whether the next frame takes no more records, either because it
+     * holds its capacity or because its label table is full.
+     *
+     * @return {@code true} if the frame must be encoded and cleared first
+     */
+    public boolean isFull() {
+        return size == patientIds.length || labelCount == MAX_LABELS;
+    }
+
+    /**
+     * Encodes the records added since the last {@link #clear()} into a new
+     * frame. The records stay, so the same records can be encoded in both
+     * formats.
+     *
+     * @param delta whether to use the delta format if the timestamps allow it
+     * @return the frame, ready to be read
+     */
+    public ByteBuffer encode(boolean delta) {
+        long base = size == 0 ? 0 : timestamps[0];
+        for (int i = 0; i < size && delta; i++) {
+            long offset = timestamps[i] - base;
+            delta = offset >= Integer.MIN_VALUE && offset <= Integer.MAX_VALUE;
+        }
+        byte[][] encodedLabels = new byte[labelCount][];
+        int length = 2 + Short.BYTES + Integer.BYTES + (delta ? Long.BYTES : 0)
+                + size * (delta ? DELTA_RECORD_BYTES : PLAIN_RECORD_BYTES);
+        for (int l = 0; l < labelCount; l++) {
+            encodedLabels[l] = labels[l].getBytes(StandardCharsets.UTF_8);
+            length += Short.BYTES + encodedLabels[l].length;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(length);
+        frame.put(VERSION).put(delta ? DELTA : PLAIN).putShort((short) labelCount);
+        for (byte[] bytes : encodedLabels) {
+            frame.putShort((short) bytes.length).put(bytes);
+        }
+        frame.putInt(size);
+        if (delta) {
+            frame.putLong(base);
+        }
+        for (int i = 0; i < size; i++) {
+            frame.putInt(patientIds[i]);
+            if (delta) {
+                frame.putInt((int) (timestamps[i] - base));
+            } else {
+                frame.putLong(timestamps[i]);
+            }
+            frame.putShort(labelIndexes[i]).putDouble(values[i]);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Removes all records and labels, to start the next frame.
+     */
+    public void clear() {
+        size = 0;
+        Arrays.fill(labels, 0, labelCount, null);
+        labelCount = 0;
+    }
+
+    /**
+     * Decodes a frame, handing every record to the sink in frame order. The
+     * frame is checked as a whole first, so a malformed frame hands over no
+     * records. The buffer's position is not changed.
+     *
+     * @param frame the frame
+     * @param sink  the sink receiving the records
+     * @return {@code true} if the frame is valid, {@code false} if it is
+     *         malformed, in which case {@link #getError()} says why
+     */
+    public boolean decode(ByteBuffer frame, RecordSink sink) {
+        ByteBuffer in = frame.duplicate();
+        int count = readHeader(in, true);
+        if (count < 0) {
+            return false;
+        }
+        boolean delta = deltaFormat;
+        long base = delta ? in.getLong() : 0;
+        for (int i = 0; i < count; i++) {
+            int patientId = in.getInt();
+            long timestamp = delta ? base + in.getInt() : in.getLong();
+            int code = labelCodes[in.getShort()];
+            sink.accept(patientId, code, in.getDouble(), timestamp);
+        }
+        decodedRecords = count;
+        return true;
+    }
+
+    /**
+     * Returns the number of records in the last frame decoded successfully.
+     *
+     * @return the record count
+     */
+    public int getDecodedRecords() {
+        return decodedRecords;
+    }
+
+    /**
+     * Describes why the last call to {@link #decode} failed.
+     *
+     * @return the reason, or {@code null} if the last frame was valid
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Returns the {@link RecordTypeRegistry} codes of the labels of a frame,
+     * without decoding its records.
+     *
+     * @param frame the frame
+     * @return the codes, or {@code null} if the label table is malformed or
+     *         holds a label the registry does not know
+     */
+    public int[] labelCodes(ByteBuffer frame) {
+        int labels = readHeader(frame.duplicate(), false);
+        return labels < 0 ? null : Arrays.copyOf(labelCodes, labels);
+    }
+
+    /**
+     * Reads the header up to the records and maps the labels to codes in
+     * {@link #labelCodes}. The labels are only resolved once the rest of the
+     * header is known to be valid.
+     *
+     * @param checkRecords whether to read the record count and check the size
+     *                     of the frame against it
+     * @return the record count, or the label count if records are not
+     *         checked, or -1 if the header is malformed
+     */
+    private int readHeader(ByteBuffer in, boolean checkRecords) {
+        try {
+            if (in.get() != VERSION) {
+                return fail("Unsupported frame version");
+            }
+            byte format = in.get();
+            if (format != PLAIN && format != DELTA) {
+                return fail("Unknown frame format " + format);
+            }
+            deltaFormat = format == DELTA;
+            int count = in.getShort();
+            if (count < 0) {
+                return fail("Invalid label count");
+            }
+            int labelTable = in.position();
+            for (int l = 0; l < count; l++) {
+                int length = in.getShort();
+                if (length <= 0 || length > in.remaining()) {
+                    return fail("Invalid label length");
+                }
+                in.position(in.position() + length);
+            }
+            if (!checkRecords) {
+                return resolveLabels(in, labelTable, count) ? count : -1;
+            }
+            int records = in.getInt();
+            long expected = (long) records * (format == DELTA ? DELTA_RECORD_BYTES : PLAIN_RECORD_BYTES)
+                    + (format == DELTA ? Long.BYTES : 0);
+            if (records < 0 || expected != in.remaining()) {
+                return fail("Frame size does not match its record count");
+            }
+            // Label indexes are checked here so that decoding cannot fail halfway.
+            int indexOffset = in.position() + (format == DELTA ? Long.BYTES + 2 * Integer.BYTES
+                    : Integer.BYTES + Long.BYTES);
+            int recordBytes = format == DELTA ? DELTA_RECORD_BYTES : PLAIN_RECORD_BYTES;
+            for (int i = 0; i < records; i++) {
+                short index = in.getShort(indexOffset + i * recordBytes);
+                if (index < 0 || index >= count) {
+                    return fail("Invalid label index");
+                }
+            }
+            int recordsStart = in.position();
+            if (!resolveLabels(in, labelTable, count)) {
+                return -1;
+            }
+            in.position(recordsStart);
+            return records;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            return fail("Truncated frame");
+        }
+    }
+
+    /**
+     * Maps the labels of a label table already checked by
+     * {@link #readHeader} to their codes, without registering any.
+     *
+     * @return {@code false} if a label is unknown
+     */
+    private boolean resolveLabels(ByteBuffer in, int labelTable, int count) {
+        if (labelCodes.length < count) {
+            labelCodes = new int[Math.max(count, labelCodes.length * 2)];
+        }
+        in.position(labelTable);
+        for (int l = 0; l < count; l++) {
+            int length = in.getShort();
+            if (labelBytes.length < length) {
+                labelBytes = new byte[length];
+            }
+            in.get(labelBytes, 0, length);
+            int code = RecordTypeRegistry.lookup(new String(labelBytes, 0, length, StandardCharsets.UTF_8));
+            if (code == RecordTypeRegistry.UNKNOWN) {
+                fail("Unknown record type");
+                return false;
+            }
+            labelCodes[l] = code;
+        }
+        error = null;
+        return true;
+    }
+
+    private int fail(String reason) {
+        error = reason;
+        return -1;
+    }
+
+    private int labelIndex(String label) {
+        for (int l = 0; l < labelCount; l++) {
+            if (labels[l].equals(label)) {
+                return l;
+            }
+        }
+        if (labelCount == labels.length) {
+            labels = Arrays.copyOf(labels, labelCount * 2);
+        }
+        labels[labelCount] = label;
+        return labelCount++;
+    }
+}
@@ -0,0 +1,242 @@
+package com.data_codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes and reads gzip files made of many small members that record their
+ * own compressed size, the layout of BGZF as written by {@code bgzip}. Every
+ * member holds at most {@link #MAX_BLOCK_SIZE} bytes of text and carries a
+ * {@code BC} extra field with its size, so the members of a file can be
+ * listed by reading their headers only and then inflated independently, in
+ * parallel. The files remain plain gzip: {@code gunzip} and
+ * {@link java.util.zip.GZIPInputStream} read them as one stream.
+ *
+ * <p>A codec reuses its deflater, inflater and buffers, so it must not be
+ * shared between threads.
+ *
+ * <pre>
+ * GzipBlockCodec codec = new GzipBlockCodec(Deflater.DEFAULT_COMPRESSION);
+ * codec.writeMember(text, 0, length, out);
+ * ...
+ * long[] members = GzipBlockCodec.indexMembers(channel);
+ * ByteBuffer text = codec.inflateMember(mapped, start, end);
+ * </pre>
+ */
+public final class GzipBlockCodec {
+    /** Largest number of bytes compressed into one member. */
+    public static final int MAX_BLOCK_SIZE = 0xff00;
+
+    private static final int MAX_MEMBER_SIZE = 0x10000;
+    private static final int HEADER_SIZE = 18;
+    private static final int TRAILER_SIZE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] member = new byte[MAX_MEMBER_SIZE];
+    private ByteBuffer inflated = ByteBuffer.allocate(MAX_MEMBER_SIZE);
+
+    /**
+     * Creates a codec that compresses with the default level.
+     */
+    public GzipBlockCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a codec.
+     *
+     * @param level the deflate level, from 0 to 9 or
+     *              {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public GzipBlockCodec(int level) {
+        this.deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Compresses up to {@link #MAX_BLOCK_SIZE} bytes into one member and
+     * writes it.
+     *
+     * @param data   the bytes to compress
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param out    the stream receiving the member
+     * @return the size of the member, in bytes
+     * @throws IOException if the member cannot be written
+     */
+    public int writeMember(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        if (length > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block too large: " + length);
+        }
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        int size = HEADER_SIZE;
+        while (!deflater.finished()) {
+            if (size == MAX_MEMBER_SIZE - TRAILER_SIZE) {
+                throw new IOException("Block does not fit into one gzip member");
+            }
+            size += deflater.deflate(member, size, MAX_MEMBER_SIZE - TRAILER_SIZE - size);
+        }
+        crc.reset();
+        crc.update(data, offset, length);
+        ByteBuffer bytes = ByteBuffer.wrap(member).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.put((byte) 0x1f).put((byte) 0x8b).put((byte) 8).put((byte) FEXTRA)
+                .putInt(0).put((byte) 0).put((byte) 0xff)
+                .putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2)
+                .putShort((short) (size + TRAILER_SIZE - 1));
+        bytes.putInt(size, (int) crc.getValue()).putInt(size + 4, length);
+        size += TRAILER_SIZE;
+        out.write(member, 0, size);
+        return size;
+    }
+
+    /**
+     * Lists the members of a gzip file from their headers, without inflating
+     * anything.
+     *
+     * @param channel the file
+     * @return the offsets at which the members start, followed by the file
+     *         size, or {@code null} if a member does not record its size, in
+     *         which case the file can only be read as a stream
+     * @throws IOException if the file cannot be read
+     */
+    public static long[] indexMembers(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 64).order(ByteOrder.LITTLE_ENDIAN);
+        long[] offsets = new long[1024];
+        int count = 0;
+        long position = 0;
+        while (position < size) {
+            header.clear();
+            int read;
+            do {
+                read = channel.read(header, position + header.position());
+            } while (read > 0 && header.hasRemaining());
+            int memberSize = recordedSize(header, header.position());
+            if (memberSize <= 0 || position + memberSize > size) {
+                return null;
+            }
+            if (count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[count++] = position;
+            position += memberSize;
+        }
+        offsets[count++] = size;
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Inflates one member and checks it against its trailer.
+     *
+     * @param file  the bytes of the file, for example mapped
+     * @param start the index at which the member starts
+     * @param end   the index after the member
+     * @return a buffer holding the inflated bytes between position 0 and its
+     *         limit, valid until the next call
+     * @throws IOException if the member is corrupt
+     */
+    public ByteBuffer inflateMember(ByteBuffer file, int start, int end) throws IOException {
+        ByteBuffer in = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (end - start < 10 + TRAILER_SIZE || in.get(start) != (byte) 0x1f
+                || in.get(start + 1) != (byte) 0x8b || in.get(start + 2) != 8) {
+            throw new IOException("Not a gzip member at offset " + start);
+        }
+        int flags = in.get(start + 3);
+        int position = start + 10;
+        if ((flags & FEXTRA) != 0) {
+            position += 2 + (in.getShort(position) & 0xffff);
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipZeroTerminated(in, position, end);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            position = skipZeroTerminated(in, position, end);
+        }
+        if ((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        if (position > end - TRAILER_SIZE) {
+            throw new IOException("Truncated gzip member at offset " + start);
+        }
+        int expectedCrc = in.getInt(end - TRAILER_SIZE);
+        int expectedSize = in.getInt(end - 4);
+        if (inflated.capacity() < expectedSize || expectedSize < 0) {
+            // ISIZE is the size modulo 2^32; members written by this class are small.
+            inflated = ByteBuffer.allocate(Math.max(expectedSize, inflated.capacity() * 2));
+        }
+        in.limit(end - TRAILER_SIZE).position(position);
+        inflated.clear();
+        inflater.reset();
+        inflater.setInput(in);
+        try {
+            while (!inflater.finished()) {
+                if (!inflated.hasRemaining()) {
+                    inflated.flip();
+                    inflated = ByteBuffer.allocate(inflated.capacity() * 2).put(inflated);
+                }
+                if (inflater.inflate(inflated) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated gzip member at offset " + start);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt gzip member at offset " + start + ": " + e.getMessage(), e);
+        }
+        inflated.flip();
+        crc.reset();
+        crc.update(inflated.duplicate());
+        if (inflated.limit() != expectedSize || (int) crc.getValue() != expectedCrc) {
+            throw new IOException("Checksum mismatch in gzip member at offset " + start);
+        }
+        return inflated;
+    }
+
+    /**
+     * Reads the size recorded in the {@code BC} extra field of a member
+     * header.
+     *
+     * @return the member size, or -1 if the header records none
+     */
+    private static int recordedSize(ByteBuffer header, int length) {
+        if (length < HEADER_SIZE || header.get(0) != (byte) 0x1f || header.get(1) != (byte) 0x8b
+                || header.get(2) != 8 || (header.get(3) & FEXTRA) == 0) {
+            return -1;
+        }
+        int extraLength = header.getShort(10) & 0xffff;
+        int position = 12;
+        int extraEnd = Math.min(12 + extraLength, length);
+        while (position + 4 <= extraEnd) {
+            int subfieldLength = header.getShort(position + 2) & 0xffff;
+            if (header.get(position) == 'B' && header.get(position + 1) == 'C' && subfieldLength == 2
+                    && position + 6 <= extraEnd) {
+                return (header.getShort(position + 4) & 0xffff) + 1;
+            }
+            position += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    private static int skipZeroTerminated(ByteBuffer in, int position, int end) throws IOException {
+        while (position < end && in.get(position) != 0) {
+            position++;
+        }
+        if (position == end) {
+            throw new IOException("Truncated gzip header");
+        }
+        return position + 1;
+    }
+}
@@ -0,0 +1,489 @@
+package com.data_codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Parses single patient records straight from bytes or characters into
+ * primitives. It understands the three text layouts used in this project:
+ *
+ * <ul>
+ * <li>{@link Layout#FILE_CSV}: {@code patientId,value,label,timestamp}, as
+ * read by the storage's {@code FileDataReader};</li>
+ * <li>{@link Layout#STREAM_CSV}: {@code patientId,timestamp,label,value}, as
+ * sent by the simulator's WebSocket and TCP outputs;</li>
+ * <li>{@link Layout#OUTPUT_TEXT}: {@code Patient ID: 1, Timestamp: 1714376789050,
+ * Label: Saturation, Data: 97.0%}, as written by the simulator's file and
+ * console outputs.</li>
+ * </ul>
+ *
+ * <p>Values may carry a trailing {@code %}, as saturation readings do, and
+ * the alert states {@code triggered} and {@code resolved} are read as 1 and
+ * 0. Labels are matched against a small per-codec cache of characters, so a
+ * record is parsed without creating any string or boxed number. Plain
+ * decimals with at most 15 significant digits are converted exactly with one
+ * division by a power of ten; other numbers fall back to
+ * {@link Double#parseDouble(String)}.
+ *
+ * <p>A label the {@link RecordTypeRegistry} does not know makes the record
+ * invalid, so input from the network cannot grow the process-wide registry.
+ * Codecs created with {@code registerLabels} set, for trusted sources such as
+ * local files, register such labels instead, once the record has parsed
+ * completely.
+ *
+ * <p>Malformed input is reported by {@link #parse} returning {@code false}
+ * and {@link #getError()} describing the problem; no exception is thrown.
+ * A codec keeps the fields of the last parsed record, so it must not be
+ * shared between threads.
+ *
+ * <pre>
+ * RecordCodec codec = new RecordCodec(RecordCodec.Layout.STREAM_CSV);
+ * if (codec.parse(message)) {
+ *     storage.addPatientData(codec.getPatientId(), codec.getValue(), codec.getRecordTypeCode(),
+ *             codec.getTimestamp());
+ * }
+ * </pre>
+ */
+public final class RecordCodec {
+
+    /**
+     * The field order and separators of a record.
+     */
+    public enum Layout {
+        /** {@code patientId,value,label,timestamp}. */
+        FILE_CSV(new int[] {PATIENT_ID, VALUE, LABEL, TIMESTAMP}, new String[] {"", "", "", ""}),
+        /** {@code patientId,timestamp,label,value}. */
+        STREAM_CSV(new int[] {PATIENT_ID, TIMESTAMP, LABEL, VALUE}, new String[] {"", "", "", ""}),
+        /** {@code Patient ID: %d, Timestamp: %d, Label: %s, Data: %s}. */
+        OUTPUT_TEXT(new int[] {PATIENT_ID, TIMESTAMP, LABEL, VALUE},
+                new String[] {"Patient ID: ", " Timestamp: ", " Label: ", " Data: "});
+
+        private final int[] fields;
+        private final String[] prefixes;
+
+        Layout(int[] fields, String[] prefixes) {
+            this.fields = fields;
+            this.prefixes = prefixes;
+        }
+    }
+
+    private static final int PATIENT_ID = 0;
+    private static final int TIMESTAMP = 1;
+    private static final int LABEL = 2;
+    private static final int VALUE = 3;
+    private static final int MAX_CACHED_LABELS = 64;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Layout layout;
+    private final boolean registerLabels;
+    private final ByteChars bytes = new ByteChars();
+    private char[][] labels = new char[0][];
+    private int[] labelCodes = new int[0];
+
+    private int patientId;
+    private long timestamp;
+    private double value;
+    private int recordTypeCode;
+    private int labelStart; // Where the label of the record being parsed lies, for registering it once the record is valid.
+    private int labelEnd;
+    private String error;
+
+    // Results of the number parsers, to avoid returning boxed values.
+    private long parsedLong;
+    private double parsedDouble;
+
+    /**
+     * Creates a codec for one layout that rejects records with labels the
+     * {@link RecordTypeRegistry} does not know.
+     *
+     * @param layout the layout of the records to parse
+     */
+    public RecordCodec(Layout layout) {
+        this(layout, false);
+    }
+
+    /**
+     * Creates a codec for one layout.
+     *
+     * @param layout         the layout of the records to parse
+     * @param registerLabels whether labels the registry does not know are
+     *                       registered rather than rejected
+     */
+    public RecordCodec(Layout layout, boolean registerLabels) {
+        this.layout = layout;
+        this.registerLabels = registerLabels;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Parses one record. A trailing carriage return is ignored.
+     *
+     * @param text the record, without line break
+     * @return {@code true} if the record is valid; its fields are then
+     *         available through the getters
+     */
+    public boolean parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses one record from the characters {@code [start, end)} of a longer
+     * text, such as one line of a message holding several. A trailing
+     * carriage return is ignored.
+     *
+     * @param text  the text holding the record
+     * @param start the index of the first character of the record
+     * @param end   the index after the last character of the record
+     * @return {@code true} if the record is valid
+     */
+    public boolean parse(CharSequence text, int start, int end) {
+        if (end > start && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        int position = start;
+        int[] fields = layout.fields;
+        String[] prefixes = layout.prefixes;
+        for (int f = 0; f < fields.length; f++) {
+            if (!startsWith(text, position, end, prefixes[f])) {
+                return fail(f == 0 ? "Unexpected start of record" : "Unexpected field separator");
+            }
+            position += prefixes[f].length();
+            int fieldEnd = f == fields.length - 1 ? end : indexOf(text, ',', position, end);
+            if (fieldEnd < 0) {
+                return fail("Missing fields");
+            }
+            if (!parseField(fields[f], text, position, fieldEnd)) {
+                return false;
+            }
+            position = fieldEnd + 1;
+        }
+        if (recordTypeCode == RecordTypeRegistry.UNKNOWN && !registerLabel(text)) {
+            return false;
+        }
+        error = null;
+        return true;
+    }
+
+    /**
+     * Parses one record from the bytes {@code [start, end)} of a buffer, read
+     * as ASCII. The buffer's position and limit are not changed.
+     *
+     * @param buffer the buffer holding the record
+     * @param start  the index of the first byte of the record
+     * @param end    the index after the last byte of the record
+     * @return {@code true} if the record is valid
+     */
+    public boolean parse(ByteBuffer buffer, int start, int end) {
+        bytes.reset(buffer, start, end);
+        return parse(bytes);
+    }
+
+    /**
+     * Parses a value field on its own, such as the data string the simulator
+     * hands to its outputs. Percent signs and alert states are understood as
+     * in {@link #parse}.
+     *
+     * @param text the value
+     * @return {@code true} if the value is valid; it is then available
+     *         through {@link #getValue()}
+     */
+    public boolean parseValue(CharSequence text) {
+        if (!parseValue(text, 0, text.length())) {
+            return fail("Invalid value");
+        }
+        value = parsedDouble;
+        error = null;
+        return true;
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the {@link RecordTypeRegistry} code of the record's label.
+     *
+     * @return the record type code
+     */
+    public int getRecordTypeCode() {
+        return recordTypeCode;
+    }
+
+    /**
+     * Describes why the last call to {@link #parse} failed.
+     *
+     * @return the reason, or {@code null} if the last record was valid
+     */
+    public String getError() {
+        return error;
+    }
+
+    private boolean parseField(int field, CharSequence text, int start, int end) {
+        switch (field) {
+            case PATIENT_ID:
+                if (!parseLong(text, start, end) || parsedLong < Integer.MIN_VALUE || parsedLong > Integer.MAX_VALUE) {
+                    return fail("Invalid patient ID");
+                }
+                patientId = (int) parsedLong;
+                return true;
+            case TIMESTAMP:
+                if (!parseLong(text, start, end)) {
+                    return fail("Invalid timestamp");
+                }
+                timestamp = parsedLong;
+                return true;
+            case LABEL:
+                if (start == end) {
+                    return fail("Empty label");
+                }
+                recordTypeCode = labelCode(text, start, end);
+                labelStart = start;
+                labelEnd = end;
+                return true;
+            default:
+                if (!parseValue(text, start, end)) {
+                    return fail("Invalid value");
+                }
+                value = parsedDouble;
+                return true;
+        }
+    }
+
+    private boolean fail(String reason) {
+        error = reason;
+        return false;
+    }
+
+    private boolean parseValue(CharSequence text, int start, int end) {
+        if (end > start && text.charAt(end - 1) == '%') {
+            end--;
+        }
+        if (startsWith(text, start, end, "triggered") && end - start == 9) {
+            parsedDouble = 1;
+            return true;
+        }
+        if (startsWith(text, start, end, "resolved") && end - start == 8) {
+            parsedDouble = 0;
+            return true;
+        }
+        return parseDouble(text, start, end);
+    }
+
+    /**
+     * Returns the code of a label the registry already knows, or
+     * {@link RecordTypeRegistry#UNKNOWN}. Nothing is registered here, so a
+     * record that turns out to be malformed leaves no label behind.
+     */
+    private int labelCode(CharSequence text, int start, int end) {
+        // Sources use a handful of labels, so a linear search over characters beats building strings.
+        for (int l = 0; l < labels.length; l++) {
+            if (equals(labels[l], text, start, end)) {
+                return labelCodes[l];
+            }
+        }
+        String label = text.subSequence(start, end).toString();
+        int code = RecordTypeRegistry.lookup(label);
+        if (code != RecordTypeRegistry.UNKNOWN) {
+            cacheLabel(label, code);
+        }
+        return code;
+    }
+
+    /**
+     * Registers the label of a record that parsed completely, if this codec
+     * registers labels.
+     *
+     * @return {@code false} if the label stays unknown
+     */
+    private boolean registerLabel(CharSequence text) {
+        if (!registerLabels) {
+            return fail("Unknown record type");
+        }
+        String label = text.subSequence(labelStart, labelEnd).toString();
+        try {
+            recordTypeCode = RecordTypeRegistry.codeOf(label);
+        } catch (IllegalStateException e) {
+            return fail("Too many record types");
+        }
+        cacheLabel(label, recordTypeCode);
+        return true;
+    }
+
+    private void cacheLabel(String label, int code) {
+        if (labels.length < MAX_CACHED_LABELS) {
+            labels = Arrays.copyOf(labels, labels.length + 1);
+            labelCodes = Arrays.copyOf(labelCodes, labelCodes.length + 1);
+            labels[labels.length - 1] = label.toCharArray();
+            labelCodes[labelCodes.length - 1] = code;
+        }
+    }
+
+    /**
+     * Parses a decimal integer with an optional sign into {@link #parsedLong}.
+     *
+     * @return {@code false} if the characters are not a valid long
+     */
+    private boolean parseLong(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            return false;
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            // Accumulate negatively so that Long.MIN_VALUE parses too.
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                return false;
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative && result == Long.MIN_VALUE) {
+            return false;
+        }
+        parsedLong = negative ? result : -result;
+        return true;
+    }
+
+    /**
+     * Parses a double into {@link #parsedDouble}.
+     *
+     * @return {@code false} if the characters are not a valid double
+     */
+    private boolean parseDouble(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        int firstDigit = i;
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        boolean simple = i < end;
+        for (; i < end && simple; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (point) {
+                    fractionDigits++;
+                }
+                simple = digits <= 15 && fractionDigits < POWERS_OF_TEN.length;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                simple = false;
+            }
+        }
+        if (simple && end - firstDigit > (point ? 1 : 0)) {
+            // Both operands are exact doubles, so the quotient is correctly rounded.
+            double result = mantissa / POWERS_OF_TEN[fractionDigits];
+            parsedDouble = negative ? -result : result;
+            return true;
+        }
+        if (start == end) {
+            return false;
+        }
+        try {
+            parsedDouble = Double.parseDouble(text.subSequence(start, end).toString());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean startsWith(CharSequence text, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equals(char[] label, CharSequence text, int start, int end) {
+        if (label.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < label.length; i++) {
+            if (label[i] != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reusable view of a range of bytes as ASCII characters.
+     */
+    private static final class ByteChars implements CharSequence {
+        private ByteBuffer buffer;
+        private int start;
+        private int length;
+
+        void reset(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = end - start;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            char[] chars = new char[to - from];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = charAt(from + i);
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+}
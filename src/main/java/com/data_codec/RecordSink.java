@@ -0,0 +1,20 @@
+package com.data_codec;
+
+/**
+ * Receives the records decoded by {@link BinaryRecordCodec#decode}, one call
+ * per record, as primitives, so decoding a frame creates no object per
+ * record.
+ */
+@FunctionalInterface
+public interface RecordSink {
+
+    /**
+     * Accepts one decoded record.
+     *
+     * @param patientId      the unique identifier of the patient
+     * @param recordTypeCode the {@link RecordTypeRegistry} code of the record type
+     * @param value          the measured value
+     * @param timestamp      the time of the measurement, in milliseconds since the Unix epoch
+     */
+    void accept(int patientId, int recordTypeCode, double value, long timestamp);
+}
@@ -0,0 +1,137 @@
+package com.data_codec;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary that maps record type labels such as "ECG" or "SystolicPressure"
+ * to small integer codes. Labels are interned once at ingest; storage and
+ * alert rules then work on the codes, so a record no longer carries its own
+ * label string and type dispatch becomes an integer comparison or an array
+ * index.
+ *
+ * <p>The labels produced by the simulator are registered up front with fixed
+ * codes. Any other label receives the next free code the first time it is
+ * passed to {@link #codeOf(String)}. Codes are never reused during the
+ * lifetime of the JVM, so readers of untrusted input resolve labels with
+ * {@link #lookup(String)} and reject unknown ones instead of registering
+ * them; labels such feeds may carry are registered up front with
+ * {@link #codeOf(String)}.
+ */
+public final class RecordTypeRegistry {
+    public static final int ECG = 0;
+    public static final int SATURATION = 1;
+    public static final int SYSTOLIC_PRESSURE = 2;
+    public static final int DIASTOLIC_PRESSURE = 3;
+    public static final int CHOLESTEROL = 4;
+    public static final int WHITE_BLOOD_CELLS = 5;
+    public static final int RED_BLOOD_CELLS = 6;
+    public static final int ALERT = 7;
+    public static final int BLOOD_PRESSURE = 8;
+    public static final int OXYGEN_SATURATION = 9;
+    public static final int HEART_RATE = 10;
+
+    /** Returned by {@link #lookup(String)} for labels that were never interned. */
+    public static final int UNKNOWN = -1;
+
+    /** Upper bound on the number of distinct labels, so codes always fit in a short. */
+    public static final int MAX_TYPES = Short.MAX_VALUE;
+
+    private static final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private static volatile String[] labels = new String[16]; // Grows by doubling; only [0, count) is assigned.
+    private static volatile int count;
+
+    static {
+        register("ECG", ECG);
+        register("Saturation", SATURATION);
+        register("SystolicPressure", SYSTOLIC_PRESSURE);
+        register("DiastolicPressure", DIASTOLIC_PRESSURE);
+        register("Cholesterol", CHOLESTEROL);
+        register("WhiteBloodCells", WHITE_BLOOD_CELLS);
+        register("RedBloodCells", RED_BLOOD_CELLS);
+        register("Alert", ALERT);
+        register("BloodPressure", BLOOD_PRESSURE);
+        register("OxygenSaturation", OXYGEN_SATURATION);
+        register("HeartRate", HEART_RATE);
+    }
+
+    private RecordTypeRegistry() {
+    }
+
+    /**
+     * Returns the code of a label, assigning a new code if the label has not
+     * been seen before.
+     *
+     * @param label the record type label, e.g. "ECG"
+     * @return the code of the label
+     * @throws IllegalStateException if more than {@link #MAX_TYPES} labels are interned
+     */
+    public static int codeOf(String label) {
+        Integer code = codes.get(label);
+        if (code != null) {
+            return code;
+        }
+        synchronized (RecordTypeRegistry.class) {
+            code = codes.get(label);
+            if (code != null) {
+                return code;
+            }
+            int next = count;
+            if (next >= MAX_TYPES) {
+                throw new IllegalStateException("Too many record types, cannot intern " + label);
+            }
+            register(label, next);
+            return next;
+        }
+    }
+
+    /**
+     * Returns the code of a label without interning it.
+     *
+     * @param label the record type label
+     * @return the code, or {@link #UNKNOWN} if the label was never interned
+     */
+    public static int lookup(String label) {
+        Integer code = codes.get(label);
+        return code == null ? UNKNOWN : code;
+    }
+
+    /**
+     * Returns the label of a code.
+     *
+     * @param code a code returned by {@link #codeOf(String)}
+     * @return the label
+     * @throws IllegalArgumentException if the code was never assigned
+     */
+    public static String labelOf(int code) {
+        // Read the count first: a label is stored before the count that covers it is published.
+        int assigned = count;
+        String[] current = labels;
+        if (code < 0 || code >= assigned) {
+            throw new IllegalArgumentException("Unknown record type code: " + code);
+        }
+        return current[code];
+    }
+
+    /**
+     * Returns the number of codes assigned so far. Every code is smaller than
+     * this value, so it can be used to size arrays indexed by code.
+     *
+     * @return the number of interned labels
+     */
+    public static int size() {
+        return count;
+    }
+
+    /** Appends a label with the next code, {@code code}. */
+    private static synchronized void register(String label, int code) {
+        String[] current = labels;
+        if (code == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[code] = label;
+        labels = current;
+        count = code + 1;
+        codes.put(label, code); // Last, so a code found in the map always has its label published.
+    }
+}
@@ -0,0 +1,85 @@
+package com.data_management;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of chunks read back from the {@link ColdTier},
+ * bounded by the number of bytes their samples take on the heap. Lookups and
+ * insertions take a short lock; loading a missing chunk happens outside it, so
+ * two readers missing the same chunk at once may both load it.
+ */
+final class ChunkCache {
+    private static final int BYTES_PER_SAMPLE = Long.BYTES + Double.BYTES;
+
+    private final long capacityBytes;
+    private final LinkedHashMap<Object, TimeSeriesChunk> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacityBytes the maximum number of sample bytes to keep
+     */
+    ChunkCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Returns the cached chunk for {@code key} and marks it as most recently
+     * used.
+     *
+     * @return the chunk, or {@code null} if it is not cached
+     */
+    synchronized TimeSeriesChunk get(Object key) {
+        TimeSeriesChunk chunk = entries.get(key);
+        if (chunk == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return chunk;
+    }
+
+    /**
+     * Caches a loaded chunk and evicts the least recently used chunks until
+     * the cache fits its capacity again. The newest chunk is always kept, even
+     * if it alone exceeds the capacity.
+     */
+    synchronized void put(Object key, TimeSeriesChunk chunk) {
+        TimeSeriesChunk previous = entries.put(key, chunk);
+        if (previous != null) {
+            usedBytes -= bytes(previous);
+        }
+        usedBytes += bytes(chunk);
+        Iterator<Map.Entry<Object, TimeSeriesChunk>> eldest = entries.entrySet().iterator();
+        while (usedBytes > capacityBytes && entries.size() > 1) {
+            usedBytes -= bytes(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    private static long bytes(TimeSeriesChunk chunk) {
+        return (long) chunk.size() * BYTES_PER_SAMPLE;
+    }
+}
@@ -0,0 +1,117 @@
+package com.data_management;
+
+/**
+ * Segment tree over the per-chunk statistics of one {@link TimeSeries}
+ * snapshot. Each leaf holds the count, min, max and sum of a sealed chunk, and
+ * each inner node combines its two children, so the statistics of any run of
+ * whole chunks are answered from O(log n) nodes.
+ *
+ * <p>An index is immutable and belongs to the chunk array it was built for.
+ * The series builds a new one whenever it replaces its chunk array, which
+ * already copies the array, so the index adds no asymptotic cost to ingest.
+ * The tail chunk is still being appended to and is not part of the tree.
+ */
+final class ChunkStatsIndex {
+    static final ChunkStatsIndex EMPTY = new ChunkStatsIndex(new SampleChunk[0]);
+
+    final SampleChunk[] chunks;
+    private final int leaves;
+    private final long[] counts;
+    private final double[] mins;
+    private final double[] maxs;
+    private final double[] sums;
+
+    /**
+     * Builds the index for a chunk array. Every chunk but the last must be
+     * sealed.
+     *
+     * @param chunks the chunks of the series
+     */
+    ChunkStatsIndex(SampleChunk[] chunks) {
+        this.chunks = chunks;
+        this.leaves = Math.max(chunks.length - 1, 0);
+        this.counts = new long[2 * leaves];
+        this.mins = new double[2 * leaves];
+        this.maxs = new double[2 * leaves];
+        this.sums = new double[2 * leaves];
+        for (int i = 0; i < leaves; i++) {
+            RecordStats stats = chunks[i].stats();
+            int node = leaves + i;
+            counts[node] = stats.getCount();
+            mins[node] = stats.getMin();
+            maxs[node] = stats.getMax();
+            sums[node] = stats.getSum();
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            int left = 2 * node;
+            int right = left + 1;
+            counts[node] = counts[left] + counts[right];
+            mins[node] = Math.min(mins[left], mins[right]);
+            maxs[node] = Math.max(maxs[left], maxs[right]);
+            sums[node] = sums[left] + sums[right];
+        }
+    }
+
+    /**
+     * Returns whether the chunk at {@code index} is sealed and covered by the
+     * tree.
+     */
+    boolean isSealed(int index) {
+        return index < leaves;
+    }
+
+    /**
+     * Adds the statistics of the sealed chunks {@code [from, to)} to
+     * {@code out}.
+     */
+    void accumulate(int from, int to, Accumulator out) {
+        int low = from + leaves;
+        int high = to + leaves;
+        while (low < high) {
+            if ((low & 1) == 1) {
+                out.add(counts[low], mins[low], maxs[low], sums[low]);
+                low++;
+            }
+            if ((high & 1) == 1) {
+                high--;
+                out.add(counts[high], mins[high], maxs[high], sums[high]);
+            }
+            low >>= 1;
+            high >>= 1;
+        }
+    }
+
+    /**
+     * Running count, min, max and sum, fed with single samples or with the
+     * statistics of whole chunks.
+     */
+    static final class Accumulator implements RecordVisitor {
+        private long count;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double sum;
+
+        @Override
+        public void visit(long timestamp, double value) {
+            add(1, value, value, value);
+        }
+
+        void add(RecordStats stats) {
+            add(stats.getCount(), stats.getMin(), stats.getMax(), stats.getSum());
+        }
+
+        void add(long count, double min, double max, double sum) {
+            if (count == 0) {
+                return;
+            }
+            this.count += count;
+            this.min = Math.min(this.min, min);
+            this.max = Math.max(this.max, max);
+            this.sum += sum;
+        }
+
+        RecordStats toStats() {
+            return count == 0 ? RecordStats.EMPTY : new RecordStats(count, min, max, sum);
+        }
+    }
+}
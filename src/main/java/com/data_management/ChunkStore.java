@@ -0,0 +1,33 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Backend that takes over full chunks of a {@link DataStorage}. Every series
+ * writes new samples into an on-heap chunk; when that chunk is full it is
+ * passed to {@link #seal}, and the chunk returned by the store replaces it in
+ * the series. Sealed chunks are never modified again, so a store is free to
+ * move their samples off the Java heap.
+ *
+ * <p>Install a store with {@link DataStorage#setChunkStore(ChunkStore)}.
+ */
+public abstract class ChunkStore implements Closeable {
+
+    /**
+     * Seals a full chunk. May be called by several writers at once.
+     *
+     * @param chunk the chunk to seal; it is not modified afterwards
+     * @return the chunk that replaces {@code chunk} in its series
+     */
+    abstract SampleChunk seal(TimeSeriesChunk chunk);
+
+    /**
+     * Releases the resources held by the store. Chunks sealed by the store must
+     * no longer be read afterwards.
+     *
+     * @throws IOException if the resources cannot be released
+     */
+    @Override
+    public abstract void close() throws IOException;
+}
@@ -0,0 +1,482 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Disk tier for old samples. Sealed chunks whose newest sample is older than
+ * the hot window, measured back from the newest sample of their series, are
+ * written to segment files in a local directory and dropped from memory; only
+ * their time range and statistics stay on the heap. Queries that reach into
+ * such a chunk read it back through a {@link ChunkCache} bounded in bytes, so
+ * the heap used by samples depends on the hot window and the cache size
+ * rather than on the length of the stored history.
+ *
+ * <p>Chunks are written by a background thread, so writers of a series never
+ * wait for the disk: a series hands over the chunks that aged out and swaps
+ * in the written copies the next time it starts a chunk or is expired. The
+ * chunks are written back to back, timestamps first and values second, to
+ * segment files of a fixed size that are rolled when full. Like the files of
+ * a {@link MappedChunkStore}, segments are scratch space: they are not read
+ * back after a restart, and a segment is unlinked as soon as none of its
+ * chunks is part of a series any more. Its channel stays open until no chunk
+ * of the segment is reachable, so readers still working on an older view of
+ * a series can read the unlinked file.
+ *
+ * <pre>
+ * DataStorage storage = DataStorage.getInstance();
+ * storage.setColdTier(new ColdTier(Paths.get("cold"), 1, TimeUnit.HOURS));
+ * </pre>
+ */
+public class ColdTier implements Closeable {
+    /** Default number of sample bytes the read cache holds. */
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+    /** Default size of one segment file, in bytes. */
+    public static final long DEFAULT_SEGMENT_SIZE = 256L * 1024 * 1024;
+
+    private static final int BYTES_PER_SAMPLE = Long.BYTES + Double.BYTES;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Path directory;
+    private final long hotWindowMillis;
+    private final long segmentSize;
+    private final ChunkCache cache;
+    private final ExecutorService spiller = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cold-tier-spiller");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Segment> segments = new ArrayList<>();
+    private long nextSegmentNumber;
+    private Segment current;
+    private boolean closed;
+
+    /**
+     * Creates a cold tier in {@code directory} with a read cache of
+     * {@link #DEFAULT_CACHE_BYTES}.
+     *
+     * @param directory the directory for segment files, created if missing
+     * @param hotWindow how much recent data of each series stays in memory
+     * @param unit      the unit of {@code hotWindow}
+     * @throws IOException if the directory cannot be created
+     */
+    public ColdTier(Path directory, long hotWindow, TimeUnit unit) throws IOException {
+        this(directory, hotWindow, unit, DEFAULT_CACHE_BYTES, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a cold tier in {@code directory}.
+     *
+     * @param directory   the directory for segment files, created if missing
+     * @param hotWindow   how much recent data of each series stays in memory
+     * @param unit        the unit of {@code hotWindow}
+     * @param cacheBytes  the number of sample bytes the read cache may hold
+     * @param segmentSize the size at which segment files are rolled, in bytes
+     * @throws IOException if the directory cannot be created
+     */
+    public ColdTier(Path directory, long hotWindow, TimeUnit unit, long cacheBytes, long segmentSize)
+            throws IOException {
+        if (hotWindow < 0 || cacheBytes < 0 || segmentSize < BYTES_PER_SAMPLE) {
+            throw new IllegalArgumentException("Invalid cold tier settings");
+        }
+        this.directory = directory;
+        this.hotWindowMillis = unit.toMillis(hotWindow);
+        this.segmentSize = segmentSize;
+        this.cache = new ChunkCache(cacheBytes);
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Returns how much recent data of each series stays in memory.
+     *
+     * @return the hot window, in milliseconds
+     */
+    public long getHotWindowMillis() {
+        return hotWindowMillis;
+    }
+
+    /**
+     * Returns the number of segment files currently in use.
+     *
+     * @return the segment count
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the heap currently used by cached cold samples.
+     *
+     * @return the size of the cached samples, in bytes
+     */
+    public long getCachedBytes() {
+        return cache.usedBytes();
+    }
+
+    /**
+     * Returns how many cold chunk reads were answered from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getCacheHits() {
+        return cache.hits();
+    }
+
+    /**
+     * Returns how many cold chunk reads had to go to disk.
+     *
+     * @return the number of cache misses
+     */
+    public long getCacheMisses() {
+        return cache.misses();
+    }
+
+    /**
+     * Waits until every chunk handed to the tier so far has been written.
+     * Series swap the written chunks in the next time they start a chunk or
+     * are expired.
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void awaitSpills() throws InterruptedException {
+        try {
+            spiller.submit(() -> { }).get();
+        } catch (RejectedExecutionException e) {
+            // Closed: nothing is written any more.
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Queues a sealed chunk to be written to disk by the background thread.
+     * May be called by several writers at once.
+     *
+     * @param chunk the chunk to move to disk
+     * @return the pending write, whose result replaces {@code chunk} once set
+     */
+    Spill spillLater(SampleChunk chunk) {
+        Spill pending = new Spill(chunk);
+        try {
+            spiller.execute(() -> {
+                SampleChunk result = chunk;
+                try {
+                    result = spill(chunk);
+                } finally {
+                    pending.result = result;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.result = chunk;
+        }
+        return pending;
+    }
+
+    /**
+     * Writes a sealed chunk to the current segment. If the chunk cannot be
+     * written the error is reported and the chunk is returned unchanged, so it
+     * simply stays in memory.
+     *
+     * @param chunk the chunk to move to disk
+     * @return the on-disk chunk replacing {@code chunk}, or {@code chunk} itself
+     */
+    private synchronized SampleChunk spill(SampleChunk chunk) {
+        if (closed) {
+            return chunk;
+        }
+        int count = chunk.size();
+        ByteBuffer buffer = ByteBuffer.allocate(count * BYTES_PER_SAMPLE).order(ByteOrder.nativeOrder());
+        chunk.scan(Long.MIN_VALUE, Long.MAX_VALUE, count, (timestamp, value) -> {
+            int index = buffer.position() / Long.BYTES;
+            buffer.putLong(timestamp);
+            buffer.putDouble(count * Long.BYTES + index * Double.BYTES, value);
+        });
+        buffer.clear();
+        try {
+            if (current == null || current.position + buffer.remaining() > segmentSize) {
+                retire(current);
+                current = openSegment();
+            }
+            long offset = current.position;
+            while (buffer.hasRemaining()) {
+                current.channel.write(buffer, offset + buffer.position());
+            }
+            current.position += buffer.capacity();
+            current.liveChunks.incrementAndGet();
+            return new ColdChunk(current, offset, count, chunk.firstTimestamp(), chunk.lastTimestamp(),
+                    chunk.stats());
+        } catch (IOException e) {
+            System.err.println("Failed to move chunk to the cold tier: " + e.getMessage());
+            return chunk;
+        }
+    }
+
+    /**
+     * Stops writing chunks, deletes all segment files and empties the cache.
+     * Chunks still queued stay in memory. The storage using this tier must not
+     * be read afterwards.
+     *
+     * @throws IOException if a segment file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        spiller.shutdown();
+        try {
+            spiller.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closed = true;
+            current = null;
+            cache.clear();
+            for (Segment segment : segments) {
+                segment.cleanable.clean();
+                if (segment.disposer.failure != null) {
+                    throw segment.disposer.failure;
+                }
+            }
+            segments.clear();
+        }
+    }
+
+    private Segment openSegment() throws IOException {
+        Path path = directory.resolve(String.format("cold-%020d.seg", nextSegmentNumber++));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(path, channel);
+        segments.add(segment);
+        return segment;
+    }
+
+    private void retire(Segment segment) {
+        if (segment != null) {
+            segment.active = false;
+            deleteIfUnused(segment);
+        }
+    }
+
+    private synchronized void released(Segment segment) {
+        if (segment.liveChunks.decrementAndGet() == 0) {
+            deleteIfUnused(segment);
+        }
+    }
+
+    private void deleteIfUnused(Segment segment) {
+        if (segment.active || segment.liveChunks.get() > 0 || !segments.remove(segment)) {
+            return;
+        }
+        // Readers of an older view may still hold chunks of this segment and
+        // miss the cache; the channel keeps the unlinked file readable until
+        // the segment is unreachable. Where an open file cannot be deleted,
+        // the cleaner deletes it after closing the channel.
+        try {
+            Files.deleteIfExists(segment.path);
+            segment.disposer.deleted = true;
+        } catch (IOException e) {
+            // Left to the cleaner.
+        }
+    }
+
+    private TimeSeriesChunk load(ColdChunk chunk) {
+        TimeSeriesChunk cached = cache.get(chunk);
+        if (cached != null) {
+            return cached;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(chunk.size * BYTES_PER_SAMPLE).order(ByteOrder.nativeOrder());
+        try {
+            while (buffer.hasRemaining()) {
+                if (chunk.segment.channel.read(buffer, chunk.offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + chunk.segment.path);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read cold chunk from " + chunk.segment.path, e);
+        }
+        buffer.flip();
+        long[] timestamps = new long[chunk.size];
+        double[] values = new double[chunk.size];
+        buffer.asLongBuffer().get(timestamps);
+        buffer.position(chunk.size * Long.BYTES);
+        buffer.asDoubleBuffer().get(values);
+        TimeSeriesChunk loaded = new TimeSeriesChunk(timestamps, values);
+        cache.put(chunk, loaded);
+        return loaded;
+    }
+
+    /**
+     * A chunk handed to the background thread, see {@link #spillLater}.
+     */
+    static final class Spill {
+        final SampleChunk source;
+        private volatile SampleChunk result;
+
+        private Spill(SampleChunk source) {
+            this.source = source;
+        }
+
+        /**
+         * Returns the chunk replacing the source: an on-disk chunk, or the
+         * source itself if it could not be written.
+         *
+         * @return the replacement, or {@code null} while the write is pending
+         */
+        SampleChunk result() {
+            return result;
+        }
+    }
+
+    /**
+     * One segment file. Appended to only under the tier's lock; read
+     * concurrently through positional reads.
+     */
+    private static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        final AtomicInteger liveChunks = new AtomicInteger();
+        final Disposer disposer;
+        final Cleaner.Cleanable cleanable;
+        long position;
+        boolean active = true;
+
+        Segment(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+            this.disposer = new Disposer(path, channel);
+            this.cleanable = CLEANER.register(this, disposer);
+        }
+    }
+
+    /**
+     * Closes the channel of a segment once neither the tier nor any chunk
+     * refers to the segment, and deletes the file if that has not been done.
+     * Must not refer to the segment itself.
+     */
+    private static final class Disposer implements Runnable {
+        private final Path path;
+        private final FileChannel channel;
+        volatile boolean deleted;
+        volatile IOException failure;
+
+        Disposer(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        @Override
+        public void run() {
+            try {
+                channel.close();
+                if (!deleted) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException e) {
+                failure = e;
+                System.err.println("Failed to delete cold segment " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A chunk whose samples live in a segment file. Its time range and
+     * statistics stay on the heap, so range lookups and whole-chunk
+     * statistics never touch the disk; everything else goes through the
+     * cache.
+     */
+    final class ColdChunk extends SampleChunk {
+        private final Segment segment;
+        private final long offset;
+        private final int size;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+        private final RecordStats stats;
+        private boolean released;
+
+        private ColdChunk(Segment segment, long offset, int size, long firstTimestamp, long lastTimestamp,
+                          RecordStats stats) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+            this.stats = stats;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        long timestampAt(int index) {
+            return load(this).timestampAt(index);
+        }
+
+        @Override
+        double valueAt(int index) {
+            return load(this).valueAt(index);
+        }
+
+        @Override
+        long firstTimestamp() {
+            return firstTimestamp;
+        }
+
+        @Override
+        long lastTimestamp() {
+            return lastTimestamp;
+        }
+
+        @Override
+        void scan(long startTime, long endTime, int limit, RecordVisitor visitor) {
+            if (limit > 0 && startTime <= lastTimestamp && endTime >= firstTimestamp) {
+                load(this).scan(startTime, endTime, limit, visitor);
+            }
+        }
+
+        @Override
+        RecordStats stats() {
+            return stats;
+        }
+
+        @Override
+        TimeSeriesChunk toHeap(int capacity) {
+            return load(this).toHeap(capacity);
+        }
+
+        @Override
+        int lowerBound(long timestamp, int limit) {
+            return load(this).lowerBound(timestamp, limit);
+        }
+
+        @Override
+        int upperBound(long timestamp, int limit) {
+            return load(this).upperBound(timestamp, limit);
+        }
+
+        @Override
+        void release() {
+            // Called by the series' single writer, at most once in practice.
+            if (!released) {
+                released = true;
+                released(segment);
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ChunkStore} that keeps sealed chunks on the heap in the compressed
+ * format of Facebook's Gorilla time series database. Timestamps are stored as
+ * delta-of-deltas, which costs a single bit per sample while samples arrive at
+ * a fixed period, and values are XORed with their predecessor so that
+ * unchanged readings cost one bit and small steps only store the bits that
+ * differ.
+ *
+ * <p>Compressed chunks are decoded on the fly while a range query walks them,
+ * so queries stay sequential scans without temporary arrays.
+ *
+ * <pre>
+ * DataStorage storage = DataStorage.getInstance();
+ * storage.setChunkStore(new CompressedChunkStore());
+ * </pre>
+ */
+public class CompressedChunkStore extends ChunkStore {
+    private final AtomicLong storedSamples = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    @Override
+    SampleChunk seal(TimeSeriesChunk chunk) {
+        CompressedChunk compressed = encode(chunk);
+        storedSamples.addAndGet(compressed.size);
+        storedBytes.addAndGet((long) compressed.words.length * Long.BYTES);
+        return compressed;
+    }
+
+    /**
+     * Returns the number of samples held in compressed chunks.
+     *
+     * @return the sample count
+     */
+    public long getStoredSamples() {
+        return storedSamples.get();
+    }
+
+    /**
+     * Returns the memory used by the encoded samples, excluding object headers.
+     *
+     * @return the size of the compressed data, in bytes
+     */
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    /**
+     * Compressed chunks live on the heap and are reclaimed by the garbage
+     * collector, so there is nothing to close.
+     */
+    @Override
+    public void close() {
+    }
+
+    private CompressedChunk encode(TimeSeriesChunk chunk) {
+        int count = chunk.size();
+        BitWriter out = new BitWriter(count);
+        long previousTimestamp = chunk.timestampAt(0);
+        long previousDelta = 0;
+        long previousBits = Double.doubleToRawLongBits(chunk.valueAt(0));
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        out.write(previousTimestamp, 64);
+        out.write(previousBits, 64);
+
+        for (int i = 1; i < count; i++) {
+            long timestamp = chunk.timestampAt(i);
+            long delta = timestamp - previousTimestamp;
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousTimestamp = timestamp;
+            previousDelta = delta;
+
+            long bits = Double.doubleToRawLongBits(chunk.valueAt(i));
+            long xor = bits ^ previousBits;
+            previousBits = bits;
+            if (xor == 0) {
+                out.write(0, 1);
+                continue;
+            }
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                // The changed bits fit in the previous window.
+                out.write(0b10, 2);
+                out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            } else {
+                int significant = 64 - leading - trailing;
+                out.write(0b11, 2);
+                out.write(leading, 5);
+                out.write(significant - 1, 6);
+                out.write(xor >>> trailing, significant);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+        return new CompressedChunk(out.toArray(), count, chunk.firstTimestamp(), chunk.lastTimestamp());
+    }
+
+    private static void writeDeltaOfDelta(BitWriter out, long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            out.write(0, 1);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta < 64) {
+            out.write(0b10, 2);
+            out.write(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta < 256) {
+            out.write(0b110, 3);
+            out.write(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta < 2048) {
+            out.write(0b1110, 4);
+            out.write(deltaOfDelta, 12);
+        } else {
+            out.write(0b1111, 4);
+            out.write(deltaOfDelta, 64);
+        }
+    }
+
+    /**
+     * Appends bit fields, most significant bit first, to a growing word array.
+     */
+    private static final class BitWriter {
+        private long[] words;
+        private long position;
+
+        BitWriter(int samples) {
+            // Two raw header words plus a few bits per sample covers regular series.
+            this.words = new long[2 + samples / 8 + 1];
+        }
+
+        void write(long value, int bits) {
+            if (bits < 64) {
+                value &= (1L << bits) - 1;
+            }
+            int word = (int) (position >>> 6);
+            int free = 64 - (int) (position & 63);
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            if (bits <= free) {
+                words[word] |= value << (free - bits);
+            } else {
+                int rest = bits - free;
+                words[word] |= value >>> rest;
+                words[word + 1] |= value << (64 - rest);
+            }
+            position += bits;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(words, (int) ((position + 63) >>> 6));
+        }
+    }
+
+    /**
+     * A sealed chunk in compressed form. Samples can only be decoded in order,
+     * so access by index costs a scan from the start of the chunk; the
+     * operations used by range queries and late inserts decode sequentially.
+     */
+    private static final class CompressedChunk extends SampleChunk {
+        private final long[] words;
+        private final int size;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+
+        CompressedChunk(long[] words, int size, long firstTimestamp, long lastTimestamp) {
+            this.words = words;
+            this.size = size;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        long timestampAt(int index) {
+            Decoder decoder = new Decoder(words);
+            for (int i = 0; i < index; i++) {
+                decoder.next();
+            }
+            return decoder.timestamp;
+        }
+
+        @Override
+        double valueAt(int index) {
+            Decoder decoder = new Decoder(words);
+            for (int i = 0; i < index; i++) {
+                decoder.next();
+            }
+            return Double.longBitsToDouble(decoder.bits);
+        }
+
+        @Override
+        long firstTimestamp() {
+            return firstTimestamp;
+        }
+
+        @Override
+        long lastTimestamp() {
+            return lastTimestamp;
+        }
+
+        @Override
+        void scan(long startTime, long endTime, int limit, RecordVisitor visitor) {
+            if (limit == 0 || startTime > lastTimestamp || endTime < firstTimestamp) {
+                return;
+            }
+            Decoder decoder = new Decoder(words);
+            for (int i = 0; i < limit; i++) {
+                if (i > 0) {
+                    decoder.next();
+                }
+                if (decoder.timestamp > endTime) {
+                    return;
+                }
+                if (decoder.timestamp >= startTime) {
+                    visitor.visit(decoder.timestamp, Double.longBitsToDouble(decoder.bits));
+                }
+            }
+        }
+
+        @Override
+        TimeSeriesChunk toHeap(int capacity) {
+            TimeSeriesChunk copy = new TimeSeriesChunk(capacity);
+            scan(Long.MIN_VALUE, Long.MAX_VALUE, size, copy::append);
+            return copy;
+        }
+    }
+
+    /**
+     * Decodes the samples of a compressed chunk one after the other. After
+     * construction the decoder holds the first sample.
+     */
+    private static final class Decoder {
+        private final long[] words;
+        private long position;
+        private long delta;
+        private int leading;
+        private int trailing;
+        long timestamp;
+        long bits;
+
+        Decoder(long[] words) {
+            this.words = words;
+            this.timestamp = read(64);
+            this.bits = read(64);
+        }
+
+        void next() {
+            delta += readDeltaOfDelta();
+            timestamp += delta;
+            if (read(1) == 0) {
+                return;
+            }
+            if (read(1) == 1) {
+                leading = (int) read(5);
+                int significant = (int) read(6) + 1;
+                trailing = 64 - leading - significant;
+            }
+            bits ^= read(64 - leading - trailing) << trailing;
+        }
+
+        private long readDeltaOfDelta() {
+            if (read(1) == 0) {
+                return 0;
+            }
+            if (read(1) == 0) {
+                return signed(read(7), 7);
+            }
+            if (read(1) == 0) {
+                return signed(read(9), 9);
+            }
+            if (read(1) == 0) {
+                return signed(read(12), 12);
+            }
+            return read(64);
+        }
+
+        private static long signed(long value, int bits) {
+            return (value << (64 - bits)) >> (64 - bits);
+        }
+
+        private long read(int count) {
+            int word = (int) (position >>> 6);
+            int offset = (int) (position & 63);
+            int free = 64 - offset;
+            long result;
+            if (count <= free) {
+                result = (words[word] << offset) >>> (64 - count);
+            } else {
+                int rest = count - free;
+                result = ((words[word] << offset) >>> (64 - count)) | (words[word + 1] >>> (64 - rest));
+            }
+            position += count;
+            return result;
+        }
+    }
+}
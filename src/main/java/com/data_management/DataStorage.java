@@ -1,27 +1,71 @@
 package com.data_management;
 
 import com.alerts.AlertGeneratorWeek7Task;
+import com.data_codec.RecordTypeRegistry;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Singleton class for managing storage and retrieval of patient data within a healthcare monitoring
  * system.
  * This class serves as a repository for all patient records, organized by patient IDs.
+ *
+ * <p>The storage is safe for concurrent use without a global lock. Writes lock
+ * only the patient being written, so ingest threads working on different
+ * patients run in parallel, and reads never lock.
  */
 public class DataStorage {
     private static DataStorage instance;
-    private Map<Integer, Patient> patientMap; // Stores patient objects indexed by their unique patient ID.
+    private final StorageOptions options; // Settings shared by every patient of this storage.
+    private final PatientIndex patientIndex; // Stores patient objects indexed by their unique patient ID.
+    private final boolean readOnly; // Set on the views returned by readOnlyView().
 
     /**
      * Private constructor to prevent instantiation from other classes.
      * Initializes the underlying storage structure.
      */
     public DataStorage() {
-        this.patientMap = new HashMap<>();
+        this(false);
+    }
+
+    /**
+     * Creates a storage whose batches are all added by one owner thread, as
+     * the shards of {@link PartitionedDataStorage} are. {@link #addBatch}
+     * then writes patients without taking their locks, so every other write
+     * and {@link #evictExpired(long)} must run on the owner thread as well.
+     *
+     * @param singleWriter whether batches come from a single owner thread
+     */
+    DataStorage(boolean singleWriter) {
+        this.options = new StorageOptions(singleWriter);
+        this.patientIndex = new PatientIndex(options);
+        this.readOnly = false;
+    }
+
+    private DataStorage(DataStorage storage) {
+        this.options = storage.options;
+        this.patientIndex = storage.patientIndex;
+        this.readOnly = true;
+    }
+
+    /**
+     * Returns a view of this storage that shares its patients and settings
+     * but rejects writes and evictions with an
+     * {@link UnsupportedOperationException}, so a single-writer storage can
+     * be handed out without letting other threads write to it.
+     *
+     * @return the read-only view
+     */
+    DataStorage readOnlyView() {
+        return new DataStorage(this);
     }
 
     /**
@@ -48,22 +92,213 @@ public class DataStorage {
  * @param timestamp        the time at which the measurement was taken, in
  *                         milliseconds since the Unix epoch
  */
-public synchronized void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
-    Patient patient = patientMap.get(patientId);
-    if (patient == null) {
-        patient = new Patient(patientId);
-        patientMap.put(patientId, patient);
-    }
-    patient.addRecord(measurementValue, recordType, timestamp);
+public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+    addPatientData(patientId, measurementValue, RecordTypeRegistry.codeOf(recordType), timestamp);
 }
 
+    /**
+     * Adds patient data whose record type is already interned in the
+     * {@link RecordTypeRegistry}. Readers that resolve the type once per label
+     * should prefer this overload.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health
+     * @param recordTypeCode   the code of the record type
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    public void addPatientData(int patientId, double measurementValue, int recordTypeCode, long timestamp) {
+        checkWritable();
+        patientIndex.getOrCreate(patientId).addRecord(measurementValue, recordTypeCode, timestamp);
+    }
+
+    /**
+     * Sets how long samples of each record type are kept. The policy applies to
+     * existing patients as well; old chunks are dropped as new data arrives or
+     * when {@link #evictExpired(long)} is called.
+     *
+     * @param retentionPolicy the retention policy to apply
+     */
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        options.retentionPolicy = retentionPolicy;
+    }
+
+    /**
+     * Returns the retention policy of this storage.
+     *
+     * @return the current retention policy
+     */
+    public RetentionPolicy getRetentionPolicy() {
+        return options.retentionPolicy;
+    }
+
+    /**
+     * Sets how far behind the newest sample of a series a sample may arrive
+     * and still be buffered. Records from several sources arrive interleaved;
+     * those within the bound are collected in a small per-series buffer and
+     * merged into storage in batches, while records lagging further are
+     * merged one by one. Queries see all records in time order either way.
+     * A bound of zero disables the buffer.
+     *
+     * @param duration the lateness bound
+     * @param unit     the unit of {@code duration}
+     */
+    public void setLatenessBound(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Lateness bound must not be negative: " + duration);
+        }
+        options.latenessMillis = unit.toMillis(duration);
+    }
+
+    /**
+     * Returns the lateness bound of this storage.
+     *
+     * @return the lateness bound, in milliseconds
+     */
+    public long getLatenessBoundMillis() {
+        return options.latenessMillis;
+    }
+
+    /**
+     * Enables or disables duplicate suppression at ingest. When enabled, a
+     * record whose patient, record type and timestamp match a recently stored
+     * record is dropped, so sources that resend data after a reconnect do not
+     * store it twice. The first record received wins even if the values
+     * differ. Records at or after the newest timestamp of their series cost
+     * one comparison; older records are compared with the timestamps of the
+     * last {@value TimeSeries#DEDUP_WINDOW} records of the series, so the
+     * check never reads stored chunks. Older resent records are stored again.
+     * Records older than what retention has already dropped are dropped too,
+     * and counted by {@link #getExpiredDropCount()}.
+     *
+     * @param enabled {@code true} to drop duplicate records
+     */
+    public void setDeduplication(boolean enabled) {
+        options.deduplicate = enabled;
+    }
+
+    /**
+     * Returns whether duplicate records are dropped at ingest.
+     *
+     * @return {@code true} if deduplication is enabled
+     */
+    public boolean isDeduplicating() {
+        return options.deduplicate;
+    }
+
+    /**
+     * Returns the number of duplicate records dropped since the storage was
+     * created.
+     *
+     * @return the number of dropped records
+     */
+    public long getDuplicateCount() {
+        return options.duplicatesDropped.sum();
+    }
+
+    /**
+     * Returns the number of records dropped since the storage was created
+     * because, while deduplicating, they were older than the samples
+     * retention had already dropped from their series.
+     *
+     * @return the number of dropped records
+     */
+    public long getExpiredDropCount() {
+        return options.expiredDropped.sum();
+    }
+
+    /**
+     * Sets the store that takes over chunks of samples once they are full, for
+     * example a {@link MappedChunkStore} that keeps history off the Java heap.
+     * Chunks sealed earlier stay where they are. Passing {@code null} keeps new
+     * chunks on the heap.
+     *
+     * @param chunkStore the chunk store to use, or {@code null}
+     */
+    public void setChunkStore(ChunkStore chunkStore) {
+        options.chunkStore = chunkStore;
+    }
+
+    /**
+     * Returns the chunk store of this storage.
+     *
+     * @return the current chunk store, or {@code null} if chunks stay on the heap
+     */
+    public ChunkStore getChunkStore() {
+        return options.chunkStore;
+    }
+
+    /**
+     * Sets the disk tier that takes over chunks once they fall out of its hot
+     * window, so that the heap used by samples is bounded by the hot window
+     * instead of the whole history. Chunks are handed to the tier as new data
+     * arrives or when {@link #evictExpired(long)} is called, written in the
+     * background, and swapped in at the series' next chunk or expiry pass;
+     * queries over older ranges read them back through the tier's cache. Passing {@code null} stops
+     * moving chunks; chunks already on disk stay there.
+     *
+     * @param coldTier the cold tier to use, or {@code null}
+     */
+    public void setColdTier(ColdTier coldTier) {
+        options.coldTier = coldTier;
+    }
+
+    /**
+     * Returns the cold tier of this storage.
+     *
+     * @return the current cold tier, or {@code null} if all data stays in memory
+     */
+    public ColdTier getColdTier() {
+        return options.coldTier;
+    }
+
+    /**
+     * Drops all samples that fell out of their retention window, measured back
+     * from {@code now}. Series that keep receiving data expire old chunks on
+     * their own; this sweep also covers series that went quiet.
+     *
+     * @param now the reference time, in milliseconds since the Unix epoch
+     * @return the number of samples that were dropped
+     */
+    public long evictExpired(long now) {
+        checkWritable();
+        long dropped = 0;
+        for (Patient patient : patientIndex.values()) {
+            dropped += patient.evictExpired(now);
+        }
+        return dropped;
+    }
+
+    /**
+     * Adds a batch of records. The batch is grouped by patient and each
+     * patient's records are added under a single acquisition of that
+     * patient's lock, with no {@link PatientRecord} created per record.
+     * Readers should prefer this over adding records one by one. The batch
+     * is not cleared.
+     *
+     * @param batch the records to add
+     */
+    public void addBatch(RecordBatch batch) {
+        checkWritable();
+        batch.groupByPatient();
+        int size = batch.size;
+        int runStart = 0;
+        for (int i = 1; i <= size; i++) {
+            if (i == size || batch.patientIds[i] != batch.patientIds[runStart]) {
+                patientIndex.getOrCreate(batch.patientIds[runStart])
+                        .addRecords(batch.recordTypeCodes, batch.timestamps, batch.values, runStart, i);
+                runStart = i;
+            }
+        }
+    }
+
     /**
      * Adds a PatientRecord to the storage.
      *
      * @param record the PatientRecord to add
      */
     public void addPatientRecord(PatientRecord record) {
-        addPatientData(record.getPatientId(), record.getMeasurementValue(), record.getRecordType(), record.getTimestamp());
+        addPatientData(record.getPatientId(), record.getMeasurementValue(), record.getRecordTypeCode(), record.getTimestamp());
     }
 
     /**
@@ -79,21 +314,298 @@ public synchronized void addPatientData(int patientId, double measurementValue,
      * @return a list of PatientRecord objects that fall within the specified time
      *         range
      */
-    public synchronized List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
-        Patient patient = patientMap.get(patientId);
+    public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
+        Patient patient = patientIndex.get(patientId);
         if (patient != null) {
             return patient.getRecords(startTime, endTime);
         }
         return new ArrayList<>(); // return an empty list if no patient is found
     }
 
+    /**
+     * Streams a patient's records of one type within a time range to
+     * {@code visitor}, in time order. Unlike {@link #getRecords} nothing is
+     * copied: the visitor reads timestamps and values straight from storage,
+     * and no list or {@link PatientRecord} is allocated.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the
+     *                   Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param visitor    receives the timestamp and value of each record
+     */
+    public void forEachRecord(int patientId, String recordType, long startTime, long endTime,
+                              RecordVisitor visitor) {
+        forEachRecord(patientId, RecordTypeRegistry.lookup(recordType), startTime, endTime, visitor);
+    }
+
+    /**
+     * Streams a patient's records of one type, given by its
+     * {@link RecordTypeRegistry} code, within a time range to {@code visitor}.
+     *
+     * @param patientId      the unique identifier of the patient
+     * @param recordTypeCode the code of the record type
+     * @param startTime      the start of the time range, in milliseconds since
+     *                       the Unix epoch
+     * @param endTime        the end of the time range, in milliseconds since the
+     *                       Unix epoch
+     * @param visitor        receives the timestamp and value of each record
+     */
+    public void forEachRecord(int patientId, int recordTypeCode, long startTime, long endTime,
+                              RecordVisitor visitor) {
+        Patient patient = patientIndex.get(patientId);
+        if (patient != null) {
+            patient.forEachRecord(recordTypeCode, startTime, endTime, visitor);
+        }
+    }
+
+    /**
+     * Returns the count, min, max, sum and mean of a patient's records of one
+     * type in a time range, without copying the records. Every series keeps
+     * the statistics of its full chunks in a segment tree, so only the chunks
+     * at the two edges of the range are read sample by sample.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the
+     *                   Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @return the statistics; a count of zero if there are no such records
+     */
+    public RecordStats getStats(int patientId, String recordType, long startTime, long endTime) {
+        Patient patient = patientIndex.get(patientId);
+        if (patient != null) {
+            return patient.getStats(RecordTypeRegistry.lookup(recordType), startTime, endTime);
+        }
+        return RecordStats.EMPTY;
+    }
+
+    /**
+     * Summarizes a patient's records of one type in buckets of
+     * {@code resolutionMillis}, aligned to multiples of the resolution since
+     * the epoch. Each bucket holds the min, max, sum and count of its samples;
+     * buckets without samples are left out, and every bucket that overlaps the
+     * range is reported whole.
+     *
+     * <p>The answer is read from the coarsest rollup tier whose bucket width
+     * divides the resolution, so a month of data at one-hour resolution costs
+     * a few hundred buckets however many raw samples it holds. Resolutions
+     * that no tier divides are computed from the raw samples.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param recordType       the type of record, e.g. "ECG"
+     * @param startTime        the start of the time range, in milliseconds since
+     *                         the Unix epoch
+     * @param endTime          the end of the time range, in milliseconds since the
+     *                         Unix epoch
+     * @param resolutionMillis the width of a bucket, in milliseconds
+     * @return the buckets ordered by time, empty if the patient has no such records
+     */
+    public List<RollupBucket> getRollups(int patientId, String recordType, long startTime, long endTime,
+                                         long resolutionMillis) {
+        Patient patient = patientIndex.get(patientId);
+        if (patient != null) {
+            return patient.getRollups(RecordTypeRegistry.lookup(recordType), startTime, endTime, resolutionMillis);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Sets the bucket widths of the rollup tiers kept for every series, by
+     * default one second, one minute and one hour. Each tier costs memory
+     * for every bucket that holds samples, so series sampled about once per
+     * tier width are cheaper without that tier. The setting applies to series
+     * created afterwards.
+     *
+     * @param widthsMillis the bucket widths in milliseconds; none for no rollups
+     */
+    public void setRollupTiers(long... widthsMillis) {
+        for (long width : widthsMillis) {
+            if (width <= 0) {
+                throw new IllegalArgumentException("Rollup width must be positive: " + width);
+            }
+        }
+        options.rollupWidths = widthsMillis.clone();
+    }
+
+    /**
+     * Returns the newest value and timestamp of every record type of every
+     * patient. The view is maintained at ingest and published in epochs by a
+     * background thread, which rebuilds only the rows of patients with new
+     * data, at most every few milliseconds. The call only reads the latest
+     * epoch, so polling it is free; the snapshot it returns is immutable and
+     * may miss records added in the last few milliseconds. The view is only
+     * maintained once this or {@link #refreshLatestVitals()} was called;
+     * the first call builds the first epoch on the calling thread.
+     *
+     * @return the current snapshot of the latest vitals
+     */
+    public LatestVitals getLatestVitals() {
+        return latestVitalsView().snapshot();
+    }
+
+    /**
+     * Publishes a new epoch of the latest vitals on the calling thread and
+     * returns it, so it includes every record added before the call. Unlike
+     * {@link #getLatestVitals()} the caller pays for the rebuild, which is
+     * linear in the number of patients, so this is meant for callers that
+     * must see their own writes rather than for polling.
+     *
+     * @return a snapshot of the latest vitals including all records added so far
+     */
+    public LatestVitals refreshLatestVitals() {
+        return latestVitalsView().publishNow();
+    }
+
+    /**
+     * Returns the view of the latest vitals, creating it on first use.
+     * Patients only queue their changes once the view exists, so creating
+     * it queues every patient and publishes the result.
+     */
+    private LatestVitalsView latestVitalsView() {
+        LatestVitalsView view = options.latestVitals;
+        if (view != null) {
+            return view;
+        }
+        synchronized (options) {
+            view = options.latestVitals;
+            if (view == null) {
+                view = new LatestVitalsView();
+                // Published first, so a patient missed by the loop below queues its next sample itself.
+                options.latestVitals = view;
+                patientIndex.forEach(Patient::vitalsChanged);
+                view.publishNow();
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Retrieves the patient with the given ID without copying any records.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the patient, or {@code null} if no data was stored for it
+     */
+    public Patient getPatient(int patientId) {
+        return patientIndex.get(patientId);
+    }
+
+    /**
+     * Returns the patient with the given ID, creating it if needed. Used by
+     * recovery and bulk loading code inside this package.
+     */
+    Patient patientForWrite(int patientId) {
+        return patientIndex.getOrCreate(patientId);
+    }
+
+    StorageOptions options() {
+        return options;
+    }
+
     /**
      * Retrieves a collection of all patients stored in the data storage.
      *
      * @return a list of all patients
      */
-    public synchronized List<Patient> getAllPatients() {
-        return new ArrayList<>(patientMap.values());
+    public List<Patient> getAllPatients() {
+        return patientIndex.values();
+    }
+
+    /**
+     * Passes every patient to {@code action} without copying the patient
+     * index or taking any lock. Patients added while the iteration runs may
+     * or may not be visited.
+     *
+     * @param action receives the patients
+     */
+    public void forEachPatient(Consumer<? super Patient> action) {
+        patientIndex.forEach(action);
+    }
+
+    /**
+     * Runs a cohort query over all patients in parallel on the common
+     * {@link ForkJoinPool}. {@code mapper} is applied to every patient accepted
+     * by {@code filter}, and the results are combined with {@code combiner},
+     * starting from {@code identity} in every task. The combiner must be
+     * associative and must not modify its arguments; it always receives the
+     * results of lower patient IDs as its left operand.
+     *
+     * <p>No lock is taken for the scan: each patient is read through the
+     * lock-free query methods while ingest continues, so patients added during
+     * the scan may or may not be included.
+     *
+     * <pre>
+     * long ecgSamples = storage.reducePatients(
+     *         p -&gt; true, p -&gt; p.getStats(RecordTypeRegistry.ECG, since, now).getCount(), 0L, Long::sum);
+     * </pre>
+     *
+     * @param filter   selects the patients to include
+     * @param mapper   computes the per-patient result
+     * @param identity the result for no patients; must be an identity of {@code combiner}
+     * @param combiner merges two partial results
+     * @param <R>      the type of the result
+     * @return the combined result
+     */
+    public <R> R reducePatients(Predicate<? super Patient> filter, Function<? super Patient, ? extends R> mapper,
+                                R identity, BinaryOperator<R> combiner) {
+        return reducePatients(ForkJoinPool.commonPool(), filter, mapper, identity, combiner);
+    }
+
+    /**
+     * Runs a cohort query over all patients in parallel on the given pool, see
+     * {@link #reducePatients(Predicate, Function, Object, BinaryOperator)}.
+     *
+     * @param pool     the pool running the scan
+     * @param filter   selects the patients to include
+     * @param mapper   computes the per-patient result
+     * @param identity the result for no patients; must be an identity of {@code combiner}
+     * @param combiner merges two partial results
+     * @param <R>      the type of the result
+     * @return the combined result
+     */
+    public <R> R reducePatients(ForkJoinPool pool, Predicate<? super Patient> filter,
+                                Function<? super Patient, ? extends R> mapper, R identity, BinaryOperator<R> combiner) {
+        return patientIndex.reduce(pool, filter, mapper, identity, combiner);
+    }
+
+    /**
+     * Returns the patients accepted by {@code filter}, evaluated in parallel on
+     * the common {@link ForkJoinPool}, in ascending ID order for the dense IDs.
+     * For example, the patients whose mean saturation in the last hour was
+     * under 93:
+     *
+     * <pre>
+     * storage.findPatients(p -&gt; p.getStats(RecordTypeRegistry.SATURATION, now - 3_600_000L, now).getMean() &lt; 93);
+     * </pre>
+     *
+     * @param filter selects the patients to return
+     * @return a new list of the matching patients
+     */
+    public List<Patient> findPatients(Predicate<? super Patient> filter) {
+        return new ArrayList<>(reducePatients(filter, Collections::singletonList, Collections.emptyList(),
+                DataStorage::concat));
+    }
+
+    private static List<Patient> concat(List<Patient> left, List<Patient> right) {
+        if (left.isEmpty()) {
+            return right;
+        }
+        if (right.isEmpty()) {
+            return left;
+        }
+        List<Patient> joined = new ArrayList<>(left.size() + right.size());
+        joined.addAll(left);
+        joined.addAll(right);
+        return joined;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Read-only view of a storage");
+        }
     }
 
     /**
@@ -119,8 +631,6 @@ public synchronized void addPatientData(int patientId, double measurementValue,
         AlertGeneratorWeek7Task alertGenerator = new AlertGeneratorWeek7Task(storage);
 
         // Evaluate all patients' data to check for conditions that may trigger alerts
-        for (Patient patient : storage.getAllPatients()) {
-            alertGenerator.evaluateData(patient);
-        }
+        storage.forEachPatient(alertGenerator::evaluateData);
     }
 }
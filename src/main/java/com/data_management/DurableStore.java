@@ -0,0 +1,180 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes a {@link DataStorage} crash-safe. Every call to
+ * {@link DataStorage#addPatientData} is appended to a write-ahead log whose
+ * buffered entries are forced to disk together at a fixed sync interval.
+ * Checkpoints write a compact binary snapshot of the whole storage and delete
+ * the log segments it covers.
+ *
+ * <p>On {@link #open}, the latest snapshot is loaded and the log segments
+ * written after it are replayed, so recovery reads binary data only instead
+ * of re-parsing CSV input. Each patient numbers its writes; snapshots store
+ * the last number per patient, which lets checkpoints run without stopping
+ * ingest while replay still applies every logged sample exactly once.
+ *
+ * <pre>
+ * DataStorage storage = DataStorage.getInstance();
+ * DurableStore store = DurableStore.open(storage, Paths.get("data"));
+ * store.scheduleCheckpoints(10, TimeUnit.MINUTES);
+ * </pre>
+ */
+public class DurableStore implements Closeable {
+    /** Default interval between two forced syncs of the write-ahead log. */
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+
+    private final DataStorage storage;
+    private final Path directory;
+    private final WriteAheadLog log;
+    private ScheduledExecutorService checkpointScheduler;
+
+    private DurableStore(DataStorage storage, Path directory, WriteAheadLog log) {
+        this.storage = storage;
+        this.directory = directory;
+        this.log = log;
+    }
+
+    /**
+     * Recovers the contents of {@code directory} into {@code storage} and
+     * starts logging every new write, syncing the log every
+     * {@link #DEFAULT_SYNC_INTERVAL_MILLIS} milliseconds.
+     *
+     * @param storage   the storage to make durable; should be empty
+     * @param directory the directory holding snapshots and log segments, created if missing
+     * @return the durable store attached to {@code storage}
+     * @throws IOException if recovery fails or the log cannot be created
+     */
+    public static DurableStore open(DataStorage storage, Path directory) throws IOException {
+        return open(storage, directory, DEFAULT_SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Recovers the contents of {@code directory} into {@code storage} and
+     * starts logging every new write.
+     *
+     * @param storage      the storage to make durable; should be empty
+     * @param directory    the directory holding snapshots and log segments, created if missing
+     * @param syncInterval how often buffered log entries are forced to disk; samples
+     *                     written within the last interval may be lost in a crash
+     * @param unit         the unit of {@code syncInterval}
+     * @return the durable store attached to {@code storage}
+     * @throws IOException if recovery fails or the log cannot be created
+     */
+    public static synchronized DurableStore open(DataStorage storage, Path directory, long syncInterval,
+                                                 TimeUnit unit) throws IOException {
+        if (storage.options().writeAheadLog != null) {
+            throw new IllegalStateException("Storage is already durable");
+        }
+        Files.createDirectories(directory);
+        long nextSegment = recover(storage, directory);
+        WriteAheadLog log = new WriteAheadLog(directory, nextSegment, Math.max(1, unit.toMillis(syncInterval)));
+        storage.options().writeAheadLog = log;
+        return new DurableStore(storage, directory, log);
+    }
+
+    private static long recover(DataStorage storage, Path directory) throws IOException {
+        long replayFrom = 0;
+        List<Long> snapshots = SnapshotFile.list(directory);
+        if (!snapshots.isEmpty()) {
+            replayFrom = snapshots.get(0);
+            SnapshotFile.load(SnapshotFile.path(directory, replayFrom), storage);
+        }
+        long nextSegment = replayFrom;
+        for (long segment : WriteAheadLog.listSegments(directory)) {
+            if (segment >= replayFrom) {
+                WriteAheadLog.replay(WriteAheadLog.segmentPath(directory, segment),
+                        (patientId, recordTypeCode, timestamp, value, sequence) -> storage.patientForWrite(patientId)
+                                .replayRecord(value, recordTypeCode, timestamp, sequence));
+            }
+            nextSegment = Math.max(nextSegment, segment + 1);
+        }
+        // Never append to a recovered segment: its tail may be torn.
+        return nextSegment;
+    }
+
+    /**
+     * Writes a snapshot of the storage and deletes the log segments and older
+     * snapshots it makes obsolete. Ingest continues while the snapshot is
+     * being written.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        long segment = log.roll();
+        List<Patient.Checkpoint> checkpoints = new ArrayList<>();
+        for (Patient patient : storage.getAllPatients()) {
+            checkpoints.add(patient.checkpoint());
+        }
+        SnapshotFile.write(directory, segment, checkpoints);
+
+        for (long old : WriteAheadLog.listSegments(directory)) {
+            if (old < segment) {
+                Files.deleteIfExists(WriteAheadLog.segmentPath(directory, old));
+            }
+        }
+        for (long old : SnapshotFile.list(directory)) {
+            if (old < segment) {
+                Files.deleteIfExists(SnapshotFile.path(directory, old));
+            }
+        }
+    }
+
+    /**
+     * Takes a checkpoint every {@code period}. Failures are reported on
+     * standard error and retried at the next period.
+     *
+     * @param period the time between two checkpoints
+     * @param unit   the unit of {@code period}
+     */
+    public synchronized void scheduleCheckpoints(long period, TimeUnit unit) {
+        if (checkpointScheduler == null) {
+            checkpointScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "storage-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        checkpointScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.err.println("Checkpoint failed: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Forces every sample logged so far to disk without waiting for the next
+     * sync interval.
+     *
+     * @throws IOException if the log cannot be synced
+     */
+    public void sync() throws IOException {
+        log.sync();
+    }
+
+    /**
+     * Stops logging and closes the write-ahead log after syncing it. The
+     * storage keeps working in memory only.
+     *
+     * @throws IOException if the final sync fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (checkpointScheduler != null) {
+            checkpointScheduler.shutdownNow();
+        }
+        storage.options().writeAheadLog = null;
+        log.close();
+    }
+}
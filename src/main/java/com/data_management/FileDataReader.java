@@ -1,15 +1,48 @@
 package com.data_management;
 
+import com.data_codec.GzipBlockCodec;
+import com.data_codec.RecordCodec;
+
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 
 /**
  * The {@code FileDataReader} class implements the {@code DataReader} interface
  * and is responsible for reading patient data from a file and storing it into
  * a {@link DataStorage} instance.
+ *
+ * <p>Files hold either {@code patientId,value,label,timestamp} lines or the
+ * lines written by the simulator's {@code FileOutputStrategy}; the layout is
+ * taken from the first line. Gzip-compressed files, recognized by their magic
+ * bytes, are decompressed while reading, without a copy on disk.
  */
 public class FileDataReader implements DataReader {
+    /** Largest part of the file a single task maps and parses. */
+    static final int SPLIT_SIZE = 32 * 1024 * 1024;
+    /** Number of records a task parses before inserting them. */
+    private static final int BATCH_SIZE = 64 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<RecordCodec> CODEC =
+            ThreadLocal.withInitial(() -> new RecordCodec(RecordCodec.Layout.FILE_CSV, true));
+
     private String filePath;
 
     /**
@@ -23,28 +56,395 @@ public class FileDataReader implements DataReader {
 
     /**
      * Reads data from the file and adds it to the specified {@link DataStorage}.
+     * Lines are parsed with a {@link RecordCodec} and inserted through
+     * {@link DataStorage#addBatch}; malformed lines are skipped and counted on
+     * standard error. A gzip file is decompressed as a stream, whatever the
+     * number of members it has. If reading fails, the batches inserted before
+     * the failure stay stored and the records parsed since are discarded.
      *
      * @param dataStorage the data storage system that will store the patient data
      * @throws IOException if an I/O error occurs reading from the file
      */
     @Override
     public void readData(DataStorage dataStorage) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
+        readSequential(dataStorage);
+    }
+
+    private long readSequential(DataStorage dataStorage) throws IOException {
+        RecordCodec codec = null;
+        RecordBatch batch = new RecordBatch();
+        long loaded = 0;
+        long malformed = 0;
+        try (BufferedReader br = openReader()) {
             String line;
             while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 4) {
-                    int patientId = Integer.parseInt(parts[0]);
-                    double measurementValue = Double.parseDouble(parts[1]);
-                    String recordType = parts[2];
-                    long timestamp = Long.parseLong(parts[3]);
-                    dataStorage.addPatientData(patientId, measurementValue, recordType, timestamp);
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (codec == null) {
+                    codec = new RecordCodec(layoutOf(line), true);
+                }
+                if (codec.parse(line)) {
+                    batch.add(codec.getPatientId(), codec.getRecordTypeCode(), codec.getValue(),
+                            codec.getTimestamp());
+                    loaded++;
+                    if (batch.isFull()) {
+                        dataStorage.addBatch(batch);
+                        batch.clear();
+                    }
+                } else {
+                    malformed++;
                 }
             }
+            dataStorage.addBatch(batch);
         } catch (IOException e){
             e.printStackTrace();
             throw e;
         }
+        if (malformed > 0) {
+            System.err.println("Skipped " + malformed + " malformed lines in " + filePath);
+        }
+        return loaded;
+    }
+
+    /**
+     * Loads the file in parallel on the common fork-join pool, see
+     * {@link #readDataParallel(DataStorage, ForkJoinPool)}.
+     *
+     * @param dataStorage the data storage system that will store the patient data
+     * @return the number of records loaded
+     * @throws IOException if an I/O error occurs reading from the file
+     */
+    public long readDataParallel(DataStorage dataStorage) throws IOException {
+        return readDataParallel(dataStorage, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Loads the file in parallel, for large historical captures. The file is
+     * cut into parts of at most {@link #SPLIT_SIZE} bytes that end on line
+     * breaks, and each part is memory-mapped and parsed by its own task
+     * straight from the mapped bytes by a {@link RecordCodec}, without
+     * creating a string per line.
+     * Parsed records are inserted through {@link DataStorage#addBatch} in
+     * batches of 64K, so each patient's lock is taken once per batch instead
+     * of once per record.
+     *
+     * <p>A gzip file whose members record their size, as those of
+     * {@code bgzip} and of the simulator's compressed {@code FileOutputStrategy}
+     * do, is cut into runs of members instead, which are inflated and parsed
+     * concurrently; lines crossing the end of a run are joined afterwards.
+     * Other gzip files are read as a stream, like {@link #readData}.
+     *
+     * <p>Records of one patient keep their order within a part, but parts
+     * are loaded concurrently; the storage sorts records by timestamp either
+     * way. Malformed lines are skipped and counted on standard error.
+     *
+     * @param dataStorage the data storage system that will store the patient data
+     * @param pool        the pool running the parse tasks
+     * @return the number of records loaded
+     * @throws IOException if an I/O error occurs reading from the file
+     */
+    public long readDataParallel(DataStorage dataStorage, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            int parallelism = Math.max(pool.getParallelism(), 1);
+            RecordCodec.Layout layout = detectLayout();
+            AtomicLong loaded = new AtomicLong();
+            AtomicLong malformed = new AtomicLong();
+            if (isGzip(channel)) {
+                long[] members = GzipBlockCodec.indexMembers(channel);
+                if (members == null) {
+                    return readSequential(dataStorage);
+                }
+                loadGzipParts(channel, members, parallelism, pool, dataStorage, layout, loaded, malformed);
+            } else {
+                long[] bounds = splitAtLineBreaks(channel, parallelism);
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int i = 0; i + 1 < bounds.length; i++) {
+                    long start = bounds[i];
+                    long length = bounds[i + 1] - start;
+                    tasks.add(pool.submit(() -> {
+                        try {
+                            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                            new SplitLoader(dataStorage, layout, loaded, malformed).load(buffer);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            }
+            if (malformed.get() > 0) {
+                System.err.println("Skipped " + malformed.get() + " malformed lines in " + filePath);
+            }
+            return loaded.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + filePath, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            IOException failure = cause instanceof IOException
+                    ? (IOException) cause : new IOException("Failed to load " + filePath, cause);
+            failure.printStackTrace();
+            throw failure;
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+    /**
+     * Inflates and parses runs of gzip members in parallel, then parses the
+     * lines that cross from one run into the next.
+     */
+    private static void loadGzipParts(FileChannel channel, long[] members, int parallelism, ForkJoinPool pool,
+                                      DataStorage dataStorage, RecordCodec.Layout layout, AtomicLong loaded,
+                                      AtomicLong malformed)
+            throws IOException, InterruptedException, ExecutionException {
+        // Each member inflates to up to 64K of text, so runs can be much smaller than plain text parts.
+        long target = Math.min(SPLIT_SIZE, Math.max(channel.size() / (parallelism * 4L),
+                GzipBlockCodec.MAX_BLOCK_SIZE));
+        List<Future<GzipPartLoader>> tasks = new ArrayList<>();
+        int first = 0;
+        while (first + 1 < members.length) {
+            int last = first + 1;
+            while (last + 1 < members.length && members[last + 1] - members[first] <= target) {
+                last++;
+            }
+            int from = first;
+            int to = last;
+            tasks.add(pool.submit(() -> {
+                try {
+                    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, members[from],
+                            members[to] - members[from]);
+                    return new GzipPartLoader(dataStorage, layout, loaded, malformed).load(buffer, members, from, to);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+            first = last;
+        }
+        SplitLoader joints = new SplitLoader(dataStorage, layout, loaded, malformed);
+        ByteArrayOutputStream carry = new ByteArrayOutputStream();
+        for (Future<GzipPartLoader> task : tasks) {
+            GzipPartLoader part = task.get();
+            if (part.head != null) {
+                carry.write(part.head, 0, part.head.length);
+                joints.loadLine(ByteBuffer.wrap(carry.toByteArray()), 0, carry.size());
+                carry.reset();
+            }
+            carry.write(part.tail, 0, part.tail.length);
+        }
+        joints.loadLine(ByteBuffer.wrap(carry.toByteArray()), 0, carry.size());
+        joints.flush();
+    }
+
+    private static boolean isGzip(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        channel.read(magic, 0);
+        return magic.position() == 2 && magic.get(0) == (byte) 0x1f && magic.get(1) == (byte) 0x8b;
+    }
+
+    /**
+     * Opens the file for reading lines, decompressing it if it is gzip.
+     */
+    private BufferedReader openReader() throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(filePath)), STREAM_BUFFER_SIZE);
+        in.mark(2);
+        boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+        in.reset();
+        if (gzip) {
+            in = new GZIPInputStream(in, STREAM_BUFFER_SIZE);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the layout of the first non-empty line of the file.
+     */
+    private RecordCodec.Layout detectLayout() throws IOException {
+        try (BufferedReader br = openReader()) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    return layoutOf(line);
+                }
+            }
+        }
+        return RecordCodec.Layout.FILE_CSV;
+    }
+
+    private static RecordCodec.Layout layoutOf(String line) {
+        return line.startsWith("Patient ID: ") ? RecordCodec.Layout.OUTPUT_TEXT : RecordCodec.Layout.FILE_CSV;
+    }
+
+    /**
+     * Returns the offsets at which the parts of the file start, followed by
+     * the file size. Every part but the first starts right after a line break.
+     */
+    private static long[] splitAtLineBreaks(FileChannel channel, int parallelism) throws IOException {
+        long size = channel.size();
+        // A few parts per thread balance uneven parsing speed; SPLIT_SIZE keeps each mapping small.
+        long target = Math.min(SPLIT_SIZE, Math.max(size / (parallelism * 4L), 1L << 20));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = target;
+        while (position < size) {
+            long lineStart = nextLineStart(channel, position, probe);
+            if (lineStart >= size) {
+                break;
+            }
+            if (lineStart - bounds.get(bounds.size() - 1) > Integer.MAX_VALUE) {
+                throw new IOException("Line too long near offset " + position);
+            }
+            bounds.add(lineStart);
+            position = lineStart + target;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        while (true) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Parses one mapped part of the file and inserts its records in batches
+     * of {@link #BATCH_SIZE}.
+     */
+    private static final class SplitLoader {
+        private final DataStorage storage;
+        private final AtomicLong loaded;
+        private final AtomicLong malformed;
+        private final RecordCodec codec;
+        private final RecordBatch batch = new RecordBatch(BATCH_SIZE);
+
+        SplitLoader(DataStorage storage, RecordCodec.Layout layout, AtomicLong loaded, AtomicLong malformed) {
+            this.storage = storage;
+            this.codec = new RecordCodec(layout, true);
+            this.loaded = loaded;
+            this.malformed = malformed;
+        }
+
+        void load(ByteBuffer buffer) {
+            int limit = buffer.limit();
+            loadLine(buffer, loadLines(buffer, 0, limit), limit);
+            flush();
+        }
+
+        /**
+         * Parses the lines between {@code start} and the last line break
+         * before {@code limit}.
+         *
+         * @return the index after the last line break, where the unfinished
+         *         rest starts
+         */
+        int loadLines(ByteBuffer buffer, int start, int limit) {
+            int lineStart = start;
+            for (int i = start; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    loadLine(buffer, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            return lineStart;
+        }
+
+        void loadLine(ByteBuffer buffer, int lineStart, int lineEnd) {
+            if (lineEnd > lineStart) {
+                if (codec.parse(buffer, lineStart, lineEnd)) {
+                    batch.add(codec.getPatientId(), codec.getRecordTypeCode(), codec.getValue(),
+                            codec.getTimestamp());
+                } else if (lineEnd > lineStart + 1 || buffer.get(lineStart) != '\r') {
+                    malformed.incrementAndGet();
+                }
+            }
+            if (batch.isFull()) {
+                flush();
+            }
+        }
+
+        void flush() {
+            storage.addBatch(batch);
+            loaded.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Inflates and parses a run of gzip members. The bytes before the first
+     * line break and after the last one are kept rather than parsed, since
+     * their lines continue in the neighbouring runs.
+     */
+    private static final class GzipPartLoader {
+        private final SplitLoader lines;
+        private final GzipBlockCodec gzip = new GzipBlockCodec();
+        private ByteBuffer text = ByteBuffer.allocate(2 * GzipBlockCodec.MAX_BLOCK_SIZE);
+        /** The bytes before the first line break, or {@code null} if the run has none. */
+        byte[] head;
+        /** The bytes after the last line break, or the whole run if it has none. */
+        byte[] tail;
+
+        GzipPartLoader(DataStorage storage, RecordCodec.Layout layout, AtomicLong loaded, AtomicLong malformed) {
+            this.lines = new SplitLoader(storage, layout, loaded, malformed);
+        }
+
+        GzipPartLoader load(ByteBuffer buffer, long[] members, int from, int to) throws IOException {
+            for (int m = from; m < to; m++) {
+                ByteBuffer inflated = gzip.inflateMember(buffer, (int) (members[m] - members[from]),
+                        (int) (members[m + 1] - members[from]));
+                if (text.remaining() < inflated.remaining()) {
+                    text.flip();
+                    text = ByteBuffer.allocate(Math.max(text.capacity() * 2, text.limit() + inflated.remaining()))
+                            .put(text);
+                }
+                text.put(inflated);
+                int start = 0;
+                if (head == null) {
+                    int lineBreak = indexOf(text, (byte) '\n', text.position());
+                    if (lineBreak < 0) {
+                        continue;
+                    }
+                    head = new byte[lineBreak];
+                    text.duplicate().position(0).get(head);
+                    start = lineBreak + 1;
+                }
+                int rest = lines.loadLines(text, start, text.position());
+                text.limit(text.position()).position(rest);
+                text.compact();
+            }
+            tail = new byte[text.position()];
+            text.duplicate().position(0).get(tail);
+            lines.flush();
+            return this;
+        }
+
+        private static int indexOf(ByteBuffer buffer, byte value, int limit) {
+            for (int i = 0; i < limit; i++) {
+                if (buffer.get(i) == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
     }
 
     /**
@@ -55,13 +455,12 @@ public class FileDataReader implements DataReader {
      */
     @Override
     public void handleData(String data, DataStorage dataStorage) {
-        String[] parts = data.split(",");
-        if (parts.length == 4) {
-            int patientId = Integer.parseInt(parts[0]);
-            double measurementValue = Double.parseDouble(parts[1]);
-            String recordType = parts[2];
-            long timestamp = Long.parseLong(parts[3]);
-            dataStorage.addPatientData(patientId, measurementValue, recordType, timestamp);
+        RecordCodec codec = CODEC.get();
+        if (codec.parse(data)) {
+            dataStorage.addPatientData(codec.getPatientId(), codec.getValue(), codec.getRecordTypeCode(),
+                    codec.getTimestamp());
+        } else {
+            System.err.println("Invalid data format (" + codec.getError() + "): " + data);
         }
     }
 }
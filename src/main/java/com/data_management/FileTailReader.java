@@ -0,0 +1,240 @@
+package com.data_management;
+
+import com.data_codec.RecordCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the output directory of the simulator's {@code FileOutputStrategy},
+ * which appends one line per sample, in the
+ * {@code Patient ID: %d, Timestamp: %d, Label: %s, Data: %s} format, to one
+ * {@code <label>.txt} file per label.
+ *
+ * <p>{@link #readData} reads what the files already hold and then starts a
+ * background thread that watches the directory with a {@link WatchService}.
+ * The reader remembers a byte offset per file and, when a file is created or
+ * grows, reads only the appended bytes, in blocks of {@link #BLOCK_SIZE}. A
+ * line that is still being written is left for the next read. Lines are
+ * parsed with a {@link RecordCodec} and stored through
+ * {@link DataStorage#addBatch}. Since some platforms deliver watch events
+ * late, the files are also checked for growth once per poll interval.
+ *
+ * <pre>
+ * FileTailReader reader = new FileTailReader(Paths.get("output"));
+ * reader.readData(storage);
+ * ...
+ * reader.close();
+ * </pre>
+ */
+public class FileTailReader implements DataReader, Closeable {
+    /** Number of bytes read from a file at a time. */
+    public static final int BLOCK_SIZE = 1024 * 1024;
+
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+    private static final ThreadLocal<RecordCodec> CODEC =
+            ThreadLocal.withInitial(() -> new RecordCodec(RecordCodec.Layout.OUTPUT_TEXT, true));
+
+    private final Path directory;
+    private final Map<Path, Long> offsets = new HashMap<>(); // Guarded by this.
+    private final ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE); // Guarded by this.
+    private final RecordCodec codec = new RecordCodec(RecordCodec.Layout.OUTPUT_TEXT, true); // Guarded by this.
+    private final RecordBatch batch = new RecordBatch(); // Guarded by this.
+    private long parsedRecords; // Guarded by this.
+    private DataStorage dataStorage;
+    private WatchService watchService;
+    private Thread follower;
+    private volatile boolean closed;
+
+    /**
+     * Creates a reader for a simulator output directory.
+     *
+     * @param directory the directory the simulator writes its label files to
+     */
+    public FileTailReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads the records already written to the directory and starts following
+     * the files in the background. Returns once the existing records are
+     * stored.
+     *
+     * @param dataStorage the storage where data will be stored
+     * @throws IOException if the directory cannot be read or watched
+     */
+    @Override
+    public synchronized void readData(DataStorage dataStorage) throws IOException {
+        if (follower != null) {
+            throw new IllegalStateException("Reader is already following " + directory);
+        }
+        this.dataStorage = dataStorage;
+        Files.createDirectories(directory);
+        // Register before the first read so no append between the two is missed.
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        readAppended();
+        follower = new Thread(this::follow, "file-tail-" + directory.getFileName());
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    /**
+     * Reads whatever was appended to the label files since the last read and
+     * stores it. The background thread calls this on every change; callers
+     * may call it too, for example to catch up before a query.
+     *
+     * @return the number of records stored
+     * @throws IOException if a file cannot be read
+     */
+    public synchronized long readAppended() throws IOException {
+        if (dataStorage == null) {
+            throw new IllegalStateException("readData has not been called");
+        }
+        long records = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.txt")) {
+            for (Path file : files) {
+                records += readFile(file);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Parses a single line in the simulator's output format and stores it.
+     *
+     * @param data        the line to handle
+     * @param dataStorage the storage where data will be stored
+     */
+    @Override
+    public void handleData(String data, DataStorage dataStorage) {
+        RecordCodec lineCodec = CODEC.get();
+        if (lineCodec.parse(data)) {
+            dataStorage.addPatientData(lineCodec.getPatientId(), lineCodec.getValue(),
+                    lineCodec.getRecordTypeCode(), lineCodec.getTimestamp());
+        } else {
+            System.err.println("Invalid data format (" + lineCodec.getError() + "): " + data);
+        }
+    }
+
+    /**
+     * Stops following the directory. Records read so far stay in the storage.
+     *
+     * @throws IOException if the watch service cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Thread thread;
+        synchronized (this) {
+            thread = follower;
+            if (watchService != null) {
+                watchService.close();
+            }
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void follow() {
+        while (!closed) {
+            try {
+                WatchKey key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                // Events only say which file changed; re-checking every file
+                // costs one size lookup each and also covers lost events.
+                readAppended();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error following " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads and stores the complete lines appended to one file.
+     */
+    private long readFile(Path file) throws IOException {
+        long offset = offsets.getOrDefault(file, 0L);
+        long parsedBefore = parsedRecords;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                offset = 0; // The file was truncated or replaced; start over.
+            }
+            while (offset < size) {
+                block.clear();
+                int read = channel.read(block, offset);
+                if (read <= 0) {
+                    break;
+                }
+                int consumed = parseLines(block, read);
+                if (consumed == 0) {
+                    if (read < block.capacity()) {
+                        break; // Only a partial line so far.
+                    }
+                    System.err.println("Skipping oversized line in " + file + " at offset " + offset);
+                    consumed = read;
+                }
+                dataStorage.addBatch(batch);
+                batch.clear();
+                offset += consumed;
+            }
+        } finally {
+            batch.clear();
+            offsets.put(file, offset);
+        }
+        return parsedRecords - parsedBefore;
+    }
+
+    /**
+     * Parses the complete lines among the first {@code length} bytes of the
+     * block into the batch, flushing it to the storage when it fills up.
+     *
+     * @return the number of bytes up to and including the last line break
+     */
+    private int parseLines(ByteBuffer bytes, int length) {
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(i) != '\n') {
+                continue;
+            }
+            if (i > lineStart) {
+                if (codec.parse(bytes, lineStart, i)) {
+                    batch.add(codec.getPatientId(), codec.getRecordTypeCode(), codec.getValue(), codec.getTimestamp());
+                    parsedRecords++;
+                    if (batch.isFull()) {
+                        dataStorage.addBatch(batch);
+                        batch.clear();
+                    }
+                } else {
+                    System.err.println("Invalid data format (" + codec.getError() + ") in " + directory);
+                }
+            }
+            lineStart = i + 1;
+        }
+        return lineStart;
+    }
+}
@@ -0,0 +1,435 @@
+package com.data_management;
+
+import com.data_codec.BinaryRecordCodec;
+import com.data_codec.RecordCodec;
+import com.data_codec.RecordSink;
+import com.data_codec.RecordTypeRegistry;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples receiving raw text frames from parsing and storing them. Network
+ * callbacks such as {@link WebSocketClientImpl#onMessage(String)} only
+ * {@link #submit} the frame, which puts it on a bounded lock-free queue; a
+ * pool of worker threads takes frames off the queue, parses every line with a
+ * {@link RecordCodec} and stores the records through
+ * {@link DataStorage#addBatch}, batching across frames while the queue is
+ * busy. Binary frames of the {@link BinaryRecordCodec} format are accepted
+ * too. Contention in the storage therefore never stalls the I/O thread,
+ * unless the queue fills up and the {@link OverflowPolicy} says to wait.
+ *
+ * <p>The queue is a {@link ConcurrentLinkedQueue} bounded by an atomic depth
+ * counter. Workers that find it empty park until a submitter unparks one of
+ * them, so an idle pipeline costs no CPU; submitters blocked on a full queue
+ * back off by parking briefly instead of waiting on a lock.
+ *
+ * <pre>
+ * IngestPipeline pipeline = new IngestPipeline(storage, RecordCodec.Layout.STREAM_CSV, 65536, 2,
+ *         IngestPipeline.OverflowPolicy.DROP_LOW_PRIORITY, "ECG");
+ * pipeline.submit("1,1714376789050,ECG,0.25");
+ * </pre>
+ */
+public class IngestPipeline implements Closeable {
+    /** Default number of frames the queue holds. */
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private static final long FULL_PARK_NANOS = 50_000;
+    private static final ThreadLocal<RecordCodec> PRIORITY_CODECS = new ThreadLocal<>();
+    private static final ThreadLocal<BinaryRecordCodec> PRIORITY_BINARY_CODECS =
+            ThreadLocal.withInitial(BinaryRecordCodec::new);
+
+    /**
+     * What {@link #submit} does when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait until a worker makes room, pushing back on the sender. */
+        BLOCK,
+        /** Drop the oldest queued frame to make room for the new one. */
+        DROP_OLDEST,
+        /**
+         * Drop the new frame if its record type is one of the low-priority
+         * types given to the pipeline; wait for room otherwise. A binary
+         * frame is dropped only if all of its record types are low-priority.
+         */
+        DROP_LOW_PRIORITY
+    }
+
+    private final DataStorage storage;
+    private final RecordCodec.Layout layout;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final BitSet lowPriorityTypes = new BitSet();
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<>(); // Strings and ByteBuffers.
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final Worker[] workers;
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pipeline with a queue of {@link #DEFAULT_CAPACITY} frames,
+     * one worker and the {@link OverflowPolicy#BLOCK} policy.
+     *
+     * @param storage the storage receiving the records
+     * @param layout  the layout of the records in the frames
+     */
+    public IngestPipeline(DataStorage storage, RecordCodec.Layout layout) {
+        this(storage, layout, DEFAULT_CAPACITY, 1, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Creates a pipeline. Worker threads are started with the first submitted
+     * frame.
+     *
+     * @param storage            the storage receiving the records
+     * @param layout             the layout of the records in the frames
+     * @param capacity           the number of frames the queue holds
+     * @param workerCount        the number of parser and writer threads
+     * @param policy             what to do when the queue is full
+     * @param lowPriorityLabels  the record types dropped first under
+     *                           {@link OverflowPolicy#DROP_LOW_PRIORITY}
+     */
+    public IngestPipeline(DataStorage storage, RecordCodec.Layout layout, int capacity, int workerCount,
+                          OverflowPolicy policy, String... lowPriorityLabels) {
+        if (capacity <= 0 || workerCount <= 0) {
+            throw new IllegalArgumentException("Capacity and worker count must be positive");
+        }
+        this.storage = storage;
+        this.layout = layout;
+        this.capacity = capacity;
+        this.policy = policy;
+        for (String label : lowPriorityLabels) {
+            lowPriorityTypes.set(RecordTypeRegistry.codeOf(label));
+        }
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker("ingest-worker-" + i);
+        }
+    }
+
+    /**
+     * Queues a frame holding one or more records separated by line breaks.
+     * Returns quickly unless the queue is full and the overflow policy waits
+     * for room.
+     *
+     * @param frame the raw frame
+     * @return {@code true} if the frame was queued, {@code false} if it was
+     *         dropped
+     */
+    public boolean submit(String frame) {
+        return enqueue(frame);
+    }
+
+    /**
+     * Queues a binary frame in the {@link BinaryRecordCodec} format. The
+     * buffer is read later by a worker and must not be changed afterwards.
+     *
+     * @param frame the frame, positioned at its first byte
+     * @return {@code true} if the frame was queued, {@code false} if it was
+     *         dropped
+     */
+    public boolean submit(ByteBuffer frame) {
+        return enqueue(frame);
+    }
+
+    /**
+     * Returns the number of frames waiting in the queue.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the number of frames passed to {@link #submit} while the
+     * pipeline was open.
+     *
+     * @return the submitted frame count
+     */
+    public long getSubmittedFrames() {
+        return submitted.sum();
+    }
+
+    /**
+     * Returns the number of frames dropped by the overflow policy or because
+     * the pipeline was closed.
+     *
+     * @return the dropped frame count
+     */
+    public long getDroppedFrames() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of frames the workers have parsed and stored.
+     *
+     * @return the processed frame count
+     */
+    public long getProcessedFrames() {
+        return processed.sum();
+    }
+
+    /**
+     * Returns the number of lines and binary frames that could not be
+     * parsed, including lines with labels the
+     * {@link com.data_codec.RecordTypeRegistry} does not know.
+     *
+     * @return the malformed record count
+     */
+    public long getMalformedRecords() {
+        return malformed.sum();
+    }
+
+    /**
+     * Stops accepting frames, waits until the workers have stored every
+     * queued frame and stops them.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        boolean interrupted = false;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+            while (worker.thread.isAlive()) {
+                try {
+                    worker.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void start() {
+        if (!started && !closed) {
+            for (Worker worker : workers) {
+                worker.thread.start();
+            }
+            started = true;
+        }
+    }
+
+    private boolean enqueue(Object frame) {
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        if (!started) {
+            start();
+        }
+        submitted.increment();
+        while (!tryReserve()) {
+            if (policy == OverflowPolicy.DROP_OLDEST) {
+                if (queue.poll() != null) {
+                    // The new frame takes the dropped frame's slot, so the depth stays the same.
+                    dropped.increment();
+                    queue.offer(frame);
+                    wakeWorker();
+                    return true;
+                }
+                continue;
+            }
+            if (policy == OverflowPolicy.DROP_LOW_PRIORITY && isLowPriority(frame)) {
+                dropped.increment();
+                return false;
+            }
+            if (closed || Thread.currentThread().isInterrupted()) {
+                dropped.increment();
+                return false;
+            }
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        queue.offer(frame);
+        wakeWorker();
+        return true;
+    }
+
+    /**
+     * Unparks one parked worker, if any. A worker announces itself as idle
+     * before checking the queue a last time and parking, and submitters check
+     * for idle workers after queuing, so a frame never waits for a worker that
+     * stays parked.
+     */
+    private void wakeWorker() {
+        if (idleWorkers.get() == 0) {
+            return;
+        }
+        for (Worker worker : workers) {
+            if (worker.idle.compareAndSet(true, false)) {
+                idleWorkers.decrementAndGet();
+                LockSupport.unpark(worker.thread);
+                return;
+            }
+        }
+    }
+
+    private boolean tryReserve() {
+        while (true) {
+            int current = depth.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (depth.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Classifies a frame by the record type of its first line, or by all the
+     * record types of a binary frame. Only called while the queue is full, so
+     * the I/O thread normally does not parse.
+     */
+    private boolean isLowPriority(Object frame) {
+        if (frame instanceof ByteBuffer) {
+            int[] codes = PRIORITY_BINARY_CODECS.get().labelCodes((ByteBuffer) frame);
+            if (codes == null) {
+                return false;
+            }
+            for (int code : codes) {
+                if (!lowPriorityTypes.get(code)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return isLowPriority((String) frame);
+    }
+
+    private boolean isLowPriority(String frame) {
+        RecordCodec codec = PRIORITY_CODECS.get();
+        if (codec == null || codec.getLayout() != layout) {
+            codec = new RecordCodec(layout);
+            PRIORITY_CODECS.set(codec);
+        }
+        int lineEnd = frame.indexOf('\n');
+        return codec.parse(frame, 0, lineEnd < 0 ? frame.length() : lineEnd)
+                && lowPriorityTypes.get(codec.getRecordTypeCode());
+    }
+
+    /**
+     * Takes frames off the queue and stores their records, flushing the batch
+     * whenever it is full or the queue runs empty.
+     */
+    private final class Worker implements Runnable, RecordSink {
+        final Thread thread;
+        final AtomicBoolean idle = new AtomicBoolean();
+        private final RecordCodec codec = new RecordCodec(layout);
+        private final BinaryRecordCodec binaryCodec = new BinaryRecordCodec();
+        private final RecordBatch batch = new RecordBatch();
+
+        Worker(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Object frame = queue.poll();
+                if (frame == null) {
+                    flush();
+                    if (closed && queue.isEmpty()) {
+                        return;
+                    }
+                    idleWorkers.incrementAndGet();
+                    idle.set(true);
+                    if (queue.isEmpty() && !closed) {
+                        LockSupport.park(this);
+                    }
+                    if (idle.compareAndSet(true, false)) {
+                        idleWorkers.decrementAndGet();
+                    }
+                    continue;
+                }
+                depth.decrementAndGet();
+                try {
+                    if (frame instanceof ByteBuffer) {
+                        decode((ByteBuffer) frame);
+                    } else {
+                        parse((String) frame);
+                    }
+                } catch (RuntimeException e) {
+                    // A frame the codecs cannot handle must not stop the worker, or the queue never drains.
+                    malformed.increment();
+                    System.err.println("Failed to process frame: " + e);
+                }
+                processed.increment();
+            }
+        }
+
+        private void parse(String frame) {
+            int lineStart = 0;
+            while (lineStart <= frame.length()) {
+                int lineEnd = frame.indexOf('\n', lineStart);
+                if (lineEnd < 0) {
+                    lineEnd = frame.length();
+                }
+                if (codec.parse(frame, lineStart, lineEnd)) {
+                    batch.add(codec.getPatientId(), codec.getRecordTypeCode(), codec.getValue(),
+                            codec.getTimestamp());
+                    if (batch.isFull()) {
+                        flush();
+                    }
+                } else if (lineEnd > lineStart) {
+                    malformed.increment();
+                    System.err.println("Failed to parse data (" + codec.getError() + "): "
+                            + frame.substring(lineStart, lineEnd));
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        private void decode(ByteBuffer frame) {
+            if (!binaryCodec.decode(frame, this)) {
+                malformed.increment();
+                System.err.println("Failed to decode binary frame: " + binaryCodec.getError());
+            }
+        }
+
+        @Override
+        public void accept(int patientId, int recordTypeCode, double value, long timestamp) {
+            batch.add(patientId, recordTypeCode, value, timestamp);
+            if (batch.isFull()) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                storage.addBatch(batch);
+            } catch (RuntimeException e) {
+                System.err.println("Failed to store " + batch.size() + " records: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+}
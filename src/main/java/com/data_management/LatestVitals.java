@@ -0,0 +1,172 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the newest sample of every record type of every
+ * patient, as returned by {@link DataStorage#getLatestVitals()}. Patients are
+ * kept in rows sorted by patient ID, and each row holds one timestamp and
+ * value per record type the patient has, so a dashboard reads every current
+ * vital with plain array accesses and no locking.
+ *
+ * <pre>
+ * LatestVitals vitals = storage.getLatestVitals();
+ * for (int row = 0; row &lt; vitals.size(); row++) {
+ *     if (vitals.has(row, RecordTypeRegistry.HEART_RATE)) {
+ *         show(vitals.getPatientId(row), vitals.getValue(row, RecordTypeRegistry.HEART_RATE));
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>Each snapshot carries the epoch it was published in. A new snapshot is
+ * only published when data has arrived since the previous one, and rows of
+ * patients without new data are shared between snapshots.
+ */
+public final class LatestVitals {
+    static final LatestVitals EMPTY = new LatestVitals(0, new Row[0]);
+
+    private final long epoch;
+    private final Row[] rows;
+
+    LatestVitals(long epoch, Row[] rows) {
+        this.epoch = epoch;
+        this.rows = rows;
+    }
+
+    /**
+     * Returns the number of the publication this snapshot belongs to. Epochs
+     * increase by one with every snapshot that contains new data.
+     *
+     * @return the epoch
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the number of patients in the snapshot.
+     *
+     * @return the row count
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Returns the ID of the patient in a row.
+     *
+     * @param row the row, between 0 and {@link #size()} exclusive
+     * @return the patient ID
+     */
+    public int getPatientId(int row) {
+        return rows[row].patientId;
+    }
+
+    Row row(int row) {
+        return rows[row];
+    }
+
+    /**
+     * Finds the row of a patient.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the row, or -1 if the snapshot has no data for the patient
+     */
+    public int indexOf(int patientId) {
+        int low = 0;
+        int high = rows.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = rows[mid].patientId;
+            if (id < patientId) {
+                low = mid + 1;
+            } else if (id > patientId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether the patient in a row has a sample of a record type.
+     *
+     * @param row            the row
+     * @param recordTypeCode the code of the record type
+     * @return {@code true} if a latest sample is known
+     */
+    public boolean has(int row, int recordTypeCode) {
+        Row current = rows[row];
+        int index = current.indexOf(recordTypeCode);
+        return index >= 0 && current.timestamps[index] != Long.MIN_VALUE;
+    }
+
+    /**
+     * Returns the timestamp of the newest sample of a record type.
+     *
+     * @param row            the row
+     * @param recordTypeCode the code of the record type
+     * @return the timestamp, or {@link Long#MIN_VALUE} if there is none
+     */
+    public long getTimestamp(int row, int recordTypeCode) {
+        int index = rows[row].indexOf(recordTypeCode);
+        return index >= 0 ? rows[row].timestamps[index] : Long.MIN_VALUE;
+    }
+
+    /**
+     * Returns the value of the newest sample of a record type.
+     *
+     * @param row            the row
+     * @param recordTypeCode the code of the record type
+     * @return the value, or {@link Double#NaN} if there is none
+     */
+    public double getValue(int row, int recordTypeCode) {
+        int index = rows[row].indexOf(recordTypeCode);
+        return index >= 0 ? rows[row].values[index] : Double.NaN;
+    }
+
+    /**
+     * Returns the newest sample of one record type of one patient as a
+     * record. Convenient for single lookups; loops over many patients should
+     * use the row accessors, which allocate nothing.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g., "HeartRate"
+     * @return the newest record, or {@code null} if there is none
+     */
+    public PatientRecord getLatest(int patientId, String recordType) {
+        int row = indexOf(patientId);
+        int code = RecordTypeRegistry.lookup(recordType);
+        if (row < 0 || !has(row, code)) {
+            return null;
+        }
+        return new PatientRecord(patientId, getValue(row, code), code, getTimestamp(row, code));
+    }
+
+    /**
+     * The newest sample per record type of one patient, parallel to the
+     * sorted type codes of the patient's series. Types without samples have
+     * the timestamp {@link Long#MIN_VALUE} and the value {@link Double#NaN}.
+     */
+    static final class Row {
+        final int patientId;
+        final int[] codes;
+        final long[] timestamps;
+        final double[] values;
+
+        Row(int patientId, int[] codes, long[] timestamps, double[] values) {
+            this.patientId = patientId;
+            this.codes = codes;
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+
+        /** Returns the index of a record type code, or a negative number if the patient has no such series. */
+        int indexOf(int recordTypeCode) {
+            return Arrays.binarySearch(codes, recordTypeCode);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Maintains the {@link LatestVitals} of one {@link DataStorage}. Ingest only
+ * flags a patient as changed, once until the next publication, and queues
+ * it. The first change after a publication schedules the next epoch on a
+ * shared publisher thread, {@link #EPOCH_MILLIS} later; the publisher
+ * rebuilds the rows of the queued patients, shares all other rows with the
+ * previous snapshot, and publishes the result through a volatile field.
+ *
+ * <p>Readers only read that field, so polling the view costs nothing, and
+ * neither readers nor writers pay for the rebuild, which is linear in the
+ * number of patients. A snapshot lags the writes by at most one epoch plus
+ * the time to build it; {@link #publishNow()} publishes on the calling thread
+ * for callers that must see their own writes.
+ */
+final class LatestVitalsView {
+    /** How long changes are collected before the publisher builds the next epoch. */
+    static final long EPOCH_MILLIS = 10L;
+
+    private static final ScheduledExecutorService PUBLISHER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "latest-vitals-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Comparator<LatestVitals.Row> BY_PATIENT = Comparator.comparingInt(row -> row.patientId);
+
+    private final Queue<Patient> changed = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private LatestVitals.Row[] updates = new LatestVitals.Row[16]; // Guarded by publishLock, reused across epochs.
+    private volatile LatestVitals current = LatestVitals.EMPTY;
+
+    /**
+     * Queues a patient whose latest samples changed and schedules the next
+     * epoch unless one is scheduled already. Called by the patient's writer
+     * after it set its changed flag.
+     */
+    void markChanged(Patient patient) {
+        changed.add(patient);
+        // The publisher clears the flag before draining, so this patient is either drained or rescheduled.
+        if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+            PUBLISHER.schedule(this::publishScheduled, EPOCH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the newest published snapshot without building one.
+     *
+     * @return the latest vitals
+     */
+    LatestVitals snapshot() {
+        return current;
+    }
+
+    /**
+     * Publishes the changes queued so far on the calling thread, waiting for
+     * a publication already in progress, and returns the resulting snapshot.
+     *
+     * @return the latest vitals, including every change queued before the call
+     */
+    LatestVitals publishNow() {
+        publishLock.lock();
+        try {
+            publish();
+        } finally {
+            publishLock.unlock();
+        }
+        return current;
+    }
+
+    private void publishScheduled() {
+        scheduled.set(false);
+        try {
+            publishNow();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to publish latest vitals: " + e.getMessage());
+        }
+    }
+
+    private void publish() {
+        int pending = 0;
+        Patient patient;
+        while ((patient = changed.poll()) != null) {
+            if (pending == updates.length) {
+                updates = Arrays.copyOf(updates, pending * 2);
+            }
+            updates[pending++] = patient.latestVitals();
+        }
+        if (pending == 0) {
+            return;
+        }
+        // Stable, so of a patient queued twice in one epoch the later row comes last.
+        Arrays.sort(updates, 0, pending, BY_PATIENT);
+        LatestVitals previous = current;
+        int oldSize = previous.size();
+        LatestVitals.Row[] rows = new LatestVitals.Row[oldSize + pending];
+        int next = 0;
+        int count = 0;
+        for (int row = 0; row < oldSize; row++) {
+            int patientId = previous.getPatientId(row);
+            while (next < pending && updates[next].patientId < patientId) {
+                next = takeLatest(next, pending);
+                rows[count++] = updates[next++];
+            }
+            if (next < pending && updates[next].patientId == patientId) {
+                next = takeLatest(next, pending);
+                rows[count++] = updates[next++];
+            } else {
+                rows[count++] = previous.row(row);
+            }
+        }
+        while (next < pending) {
+            next = takeLatest(next, pending);
+            rows[count++] = updates[next++];
+        }
+        Arrays.fill(updates, 0, pending, null);
+        current = new LatestVitals(previous.getEpoch() + 1,
+                count == rows.length ? rows : Arrays.copyOf(rows, count));
+    }
+
+    /** Skips to the last of the sorted updates with the same patient as {@code updates[index]}. */
+    private int takeLatest(int index, int pending) {
+        while (index + 1 < pending && updates[index + 1].patientId == updates[index].patientId) {
+            index++;
+        }
+        return index;
+    }
+}
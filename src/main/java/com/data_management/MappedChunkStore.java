@@ -0,0 +1,247 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ChunkStore} that moves sealed chunks into memory-mapped segment files.
+ * Each segment is a file of fixed size mapped with {@link FileChannel#map};
+ * sealed chunks are copied into it back to back, timestamps first and values
+ * second, and range queries read them in place. The samples then live in the
+ * operating system's page cache instead of the Java heap, and cold history is
+ * paged out under memory pressure.
+ *
+ * <p>The segment files are scratch space, not a durable format: they are not
+ * read back after a restart, and a segment is deleted as soon as none of its
+ * chunks is part of a series any more. Use {@link DurableStore} to survive
+ * crashes.
+ *
+ * <pre>
+ * DataStorage storage = DataStorage.getInstance();
+ * storage.setChunkStore(new MappedChunkStore(Paths.get("history")));
+ * </pre>
+ */
+public class MappedChunkStore extends ChunkStore {
+    /** Default size of one segment file, in bytes. */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int BYTES_PER_SAMPLE = Long.BYTES + Double.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<Segment> segments = new ArrayList<>();
+    private long nextSegmentNumber;
+    private Segment current;
+    private boolean closed;
+
+    /**
+     * Creates a store writing {@link #DEFAULT_SEGMENT_SIZE} byte segments to
+     * {@code directory}.
+     *
+     * @param directory the directory for segment files, created if missing
+     * @throws IOException if the directory cannot be created
+     */
+    public MappedChunkStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a store writing segments of the given size to {@code directory}.
+     *
+     * @param directory   the directory for segment files, created if missing
+     * @param segmentSize the size of one segment file, in bytes
+     * @throws IOException if the directory cannot be created
+     */
+    public MappedChunkStore(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < BYTES_PER_SAMPLE) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    synchronized SampleChunk seal(TimeSeriesChunk chunk) {
+        if (closed) {
+            throw new IllegalStateException("Chunk store is closed");
+        }
+        int count = chunk.size();
+        int bytes = count * BYTES_PER_SAMPLE;
+        try {
+            if (current == null || current.remaining() < bytes) {
+                retire(current);
+                current = openSegment(Math.max(segmentSize, bytes));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create chunk segment", e);
+        }
+        int offset = current.position;
+        chunk.copyTo(slice(current.buffer, offset, count * Long.BYTES).asLongBuffer(),
+                slice(current.buffer, offset + count * Long.BYTES, count * Double.BYTES).asDoubleBuffer());
+        current.position += bytes;
+        current.liveChunks.incrementAndGet();
+        return new MappedChunk(current, offset, count);
+    }
+
+    /**
+     * Returns the number of segment files currently in use.
+     *
+     * @return the segment count
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Deletes all segment files. The storage using this store must not be read
+     * afterwards.
+     *
+     * @throws IOException if a segment file cannot be deleted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        current = null;
+        for (Segment segment : segments) {
+            Files.deleteIfExists(segment.path);
+        }
+        segments.clear();
+    }
+
+    private Segment openSegment(int size) throws IOException {
+        Path path = directory.resolve(String.format("chunks-%020d.seg", nextSegmentNumber++));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            Segment segment = new Segment(path, buffer);
+            segments.add(segment);
+            return segment;
+        }
+    }
+
+    private void retire(Segment segment) {
+        if (segment != null) {
+            segment.active = false;
+            deleteIfUnused(segment);
+        }
+    }
+
+    private synchronized void released(Segment segment) {
+        if (segment.liveChunks.decrementAndGet() == 0) {
+            deleteIfUnused(segment);
+        }
+    }
+
+    private void deleteIfUnused(Segment segment) {
+        if (segment.active || segment.liveChunks.get() > 0 || !segments.remove(segment)) {
+            return;
+        }
+        // Readers may still hold chunks of this segment; the mapping keeps
+        // their pages alive after the file is unlinked.
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            System.err.println("Failed to delete chunk segment " + segment.path + ": " + e.getMessage());
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * One mapped segment file. Written only under the store's lock; the
+     * buffer is read concurrently through absolute gets only.
+     */
+    private static final class Segment {
+        final Path path;
+        final ByteBuffer buffer;
+        final AtomicInteger liveChunks = new AtomicInteger();
+        int position;
+        boolean active = true;
+
+        Segment(Path path, ByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return buffer.capacity() - position;
+        }
+    }
+
+    /**
+     * A sealed chunk stored in a segment. The first and last timestamps are
+     * kept on the heap because every range query reads them.
+     */
+    private final class MappedChunk extends SampleChunk {
+        private final Segment segment;
+        private final ByteBuffer buffer;
+        private final int timestampOffset;
+        private final int valueOffset;
+        private final int size;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+        private boolean released;
+
+        MappedChunk(Segment segment, int offset, int size) {
+            this.segment = segment;
+            this.buffer = segment.buffer;
+            this.timestampOffset = offset;
+            this.valueOffset = offset + size * Long.BYTES;
+            this.size = size;
+            this.firstTimestamp = timestampAt(0);
+            this.lastTimestamp = timestampAt(size - 1);
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        long timestampAt(int index) {
+            return buffer.getLong(timestampOffset + index * Long.BYTES);
+        }
+
+        @Override
+        double valueAt(int index) {
+            return buffer.getDouble(valueOffset + index * Double.BYTES);
+        }
+
+        @Override
+        long firstTimestamp() {
+            return firstTimestamp;
+        }
+
+        @Override
+        long lastTimestamp() {
+            return lastTimestamp;
+        }
+
+        @Override
+        void release() {
+            // Called by the series' single writer, at most once in practice.
+            if (!released) {
+                released = true;
+                released(segment);
+            }
+        }
+    }
+}
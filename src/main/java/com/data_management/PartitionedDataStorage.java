@@ -0,0 +1,456 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Patient storage split into a fixed number of shards, each owned by a
+ * single writer thread. Patient IDs are hashed to shards; every
+ * {@link #addPatientData} call only copies the record into its shard's ring
+ * buffer, and the shard's writer drains the ring in batches into its own
+ * {@link DataStorage}. All writes to a patient therefore happen on one
+ * thread: the writer takes no patient locks, and each shard's data stays in
+ * the cache of the core running its writer.
+ *
+ * <p>The ring holds records as primitive columns, so queueing a record
+ * allocates nothing. Producers claim a slot with a single atomic increment
+ * and never lock; when the ring is full they wait for the writer to free
+ * slots.
+ *
+ * <p>Reads go straight to the shard's {@code DataStorage} and never lock.
+ * Each query sees a consistent point-in-time view of the series it reads,
+ * but records still waiting in a ring are not visible; call {@link #flush()}
+ * to wait until everything submitted so far has been applied. If a writer
+ * thread dies, writes to its shard, {@link #flush()} and {@link #close()}
+ * fail with an {@link IllegalStateException} instead of waiting for it.
+ *
+ * <pre>
+ * PartitionedDataStorage storage = new PartitionedDataStorage(4);
+ * storage.addPatientData(1, 97.0, "Saturation", System.currentTimeMillis());
+ * storage.flush();
+ * List&lt;PatientRecord&gt; records = storage.getRecords(1, 0, Long.MAX_VALUE);
+ * </pre>
+ */
+public class PartitionedDataStorage implements Closeable {
+    /** Default number of records each shard ring holds before writers block. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024;
+
+    private static final int BATCH_SIZE = 1024;
+    private static final long FULL_PARK_NANOS = 50_000L; // How long a producer waits before rechecking a full ring.
+    private static final long CLOSE_PARK_NANOS = 1_000_000L; // How long a closing writer waits for racing producers.
+    private static final long TASK_POLL_MILLIS = 10L; // How often a caller waiting for a writer task checks the writer.
+
+    private final Shard[] shards;
+    private volatile boolean closed;
+
+    /**
+     * Creates a storage with {@code shardCount} shards and starts their writer
+     * threads.
+     *
+     * @param shardCount the number of shards, usually the number of ingest cores
+     */
+    public PartitionedDataStorage(int shardCount) {
+        this(shardCount, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a storage with {@code shardCount} shards whose rings hold at
+     * least {@code queueCapacity} records, rounded up to a power of two, and
+     * starts their writer threads.
+     *
+     * @param shardCount    the number of shards
+     * @param queueCapacity the capacity of each shard's ring buffer
+     */
+    public PartitionedDataStorage(int shardCount, int queueCapacity) {
+        if (shardCount <= 0 || queueCapacity <= 0 || queueCapacity > 1 << 30) {
+            throw new IllegalArgumentException("Shard count and queue capacity must be positive");
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, queueCapacity);
+            shards[i].writer.start();
+        }
+    }
+
+    /**
+     * Queues patient data for the shard owning the patient. Blocks while that
+     * shard's ring is full.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health
+     * @param recordType       the type of record, e.g., "HeartRate"
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        addPatientData(patientId, measurementValue, RecordTypeRegistry.codeOf(recordType), timestamp);
+    }
+
+    /**
+     * Queues patient data whose record type is already interned in the
+     * {@link RecordTypeRegistry}. Blocks while the shard's ring is full.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health
+     * @param recordTypeCode   the code of the record type
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     * @throws IllegalStateException if the storage is closed or the shard's writer died
+     */
+    public void addPatientData(int patientId, double measurementValue, int recordTypeCode, long timestamp) {
+        shards[shardIndex(patientId)].offer(patientId, recordTypeCode, measurementValue, timestamp);
+    }
+
+    /**
+     * Waits until every record queued before this call has been applied to
+     * its shard.
+     *
+     * @throws InterruptedException  if the calling thread is interrupted while waiting
+     * @throws IllegalStateException if a shard's writer died
+     */
+    public void flush() throws InterruptedException {
+        for (Shard shard : shards) {
+            shard.awaitApplied(shard.claimed.get());
+        }
+    }
+
+    /**
+     * Drops samples that fell out of the retention window of every shard,
+     * see {@link DataStorage#evictExpired(long)}. The eviction runs on each
+     * shard's writer thread, between batches, since only the writer may
+     * modify its shard.
+     *
+     * @param now the reference time, in milliseconds since the Unix epoch
+     * @return the number of samples that were dropped
+     * @throws IllegalStateException if a shard's writer died
+     */
+    public long evictExpired(long now) {
+        List<FutureTask<Long>> tasks = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            tasks.add(shard.execute(() -> shard.storage.evictExpired(now)));
+        }
+        long dropped = 0;
+        for (int i = 0; i < shards.length; i++) {
+            dropped += shards[i].await(tasks.get(i));
+        }
+        return dropped;
+    }
+
+    /**
+     * Retrieves a patient's records in a time range from the owning shard.
+     * Records still queued are not included.
+     *
+     * @param patientId the unique identifier of the patient
+     * @param startTime the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime   the end of the time range, in milliseconds since the Unix epoch
+     * @return the records ordered by timestamp
+     */
+    public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
+        return shardOf(patientId).getRecords(patientId, startTime, endTime);
+    }
+
+    /**
+     * Retrieves the patient with the given ID from the owning shard.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the patient, or {@code null} if no data was applied for it yet
+     */
+    public Patient getPatient(int patientId) {
+        return shardOf(patientId).getPatient(patientId);
+    }
+
+    /**
+     * Returns a read-only view of the storage of the shard that owns a
+     * patient, for the read APIs of {@link DataStorage} such as statistics
+     * and rollups. Writes and evictions through the view throw an
+     * {@link UnsupportedOperationException}; they must go through this class
+     * so they stay on the shard's writer thread, which writes without locks.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return a read-only view of the owning shard's storage
+     */
+    public DataStorage shardOf(int patientId) {
+        return shards[shardIndex(patientId)].view;
+    }
+
+    /**
+     * Returns read-only views of the storage of every shard, in shard order,
+     * for example to set a retention policy on each of them. As with
+     * {@link #shardOf(int)}, the views can be read and their settings
+     * changed, but writes through them are rejected.
+     *
+     * @return a new list of the shard views
+     */
+    public List<DataStorage> getShards() {
+        List<DataStorage> views = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            views.add(shard.view);
+        }
+        return views;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Stops accepting writes, applies everything still queued and stops the
+     * writer threads. The shards stay readable.
+     *
+     * @throws IllegalStateException if a shard's writer died, so some queued
+     *                               records were not applied
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Shard shard : shards) {
+            shard.closed = true;
+            LockSupport.unpark(shard.writer);
+        }
+        boolean interrupted = false;
+        for (Shard shard : shards) {
+            while (true) {
+                try {
+                    shard.writer.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        for (Shard shard : shards) {
+            shard.checkWriter();
+        }
+    }
+
+    private int shardIndex(int patientId) {
+        // Spread consecutive IDs evenly and avoid patterns in the low bits.
+        int hash = patientId * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * One partition: its storage, its ring buffer and the thread that owns
+     * all writes to it.
+     *
+     * <p>The ring is multi-producer, single-consumer. A producer claims the
+     * next sequence number, waits until the writer has copied out the record
+     * one lap earlier, fills the slot's columns and then publishes the slot
+     * by storing the sequence number plus one in {@code published}. The
+     * writer reads slots in sequence order and stops at the first one not
+     * published yet.
+     */
+    private static final class Shard implements Runnable {
+        final DataStorage storage = new DataStorage(true);
+        final DataStorage view = storage.readOnlyView();
+        final Thread writer;
+        final AtomicLong claimed = new AtomicLong(); // Next sequence number a producer claims.
+        volatile boolean closed;
+
+        private final int index;
+        private final int mask;
+        private final int[] patientIds;
+        private final int[] recordTypeCodes;
+        private final double[] values;
+        private final long[] timestamps;
+        private final AtomicLongArray published; // Sequence number plus one of the record each slot holds.
+        private final AtomicInteger producers = new AtomicInteger(); // Producers that passed the closed check.
+        private final AtomicInteger waiters = new AtomicInteger(); // Threads waiting in awaitApplied.
+        private final ConcurrentLinkedQueue<FutureTask<?>> tasks = new ConcurrentLinkedQueue<>();
+        private volatile long consumed; // Records before this sequence were copied out; their slots are free.
+        private volatile long applied; // Records before this sequence are visible in the storage.
+        private volatile boolean writerParked;
+        private volatile Throwable failure; // Set if the writer died.
+
+        Shard(int index, int queueCapacity) {
+            int capacity = queueCapacity == 1 ? 1 : Integer.highestOneBit(queueCapacity - 1) << 1;
+            this.index = index;
+            this.mask = capacity - 1;
+            this.patientIds = new int[capacity];
+            this.recordTypeCodes = new int[capacity];
+            this.values = new double[capacity];
+            this.timestamps = new long[capacity];
+            this.published = new AtomicLongArray(capacity);
+            this.writer = new Thread(this, "storage-shard-" + index);
+            writer.setDaemon(true);
+        }
+
+        void offer(int patientId, int recordTypeCode, double value, long timestamp) {
+            producers.incrementAndGet();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Storage is closed");
+                }
+                checkWriter();
+                long sequence = claimed.getAndIncrement();
+                while (sequence - consumed > mask) {
+                    checkWriter();
+                    LockSupport.parkNanos(this, FULL_PARK_NANOS);
+                }
+                int slot = (int) sequence & mask;
+                patientIds[slot] = patientId;
+                recordTypeCodes[slot] = recordTypeCode;
+                values[slot] = value;
+                timestamps[slot] = timestamp;
+                published.set(slot, sequence + 1);
+            } finally {
+                producers.decrementAndGet();
+            }
+            // Pairs with the recheck in idle(): either the writer sees the slot or we see it parked.
+            if (writerParked) {
+                LockSupport.unpark(writer);
+            }
+        }
+
+        @Override
+        public void run() {
+            RecordBatch batch = new RecordBatch(BATCH_SIZE);
+            long next = 0;
+            try {
+                while (true) {
+                    boolean ranTasks = runTasks();
+                    while (!batch.isFull() && published.get((int) next & mask) == next + 1) {
+                        int slot = (int) next & mask;
+                        batch.add(patientIds[slot], recordTypeCodes[slot], values[slot], timestamps[slot]);
+                        next++;
+                    }
+                    if (!batch.isEmpty()) {
+                        consumed = next;
+                        apply(batch);
+                        applied = next;
+                        if (waiters.get() > 0) {
+                            synchronized (this) {
+                                notifyAll();
+                            }
+                        }
+                    } else if (!ranTasks) {
+                        // Records claimed by producers that raced with close() are still applied.
+                        if (closed && producers.get() == 0 && claimed.get() == next) {
+                            return;
+                        }
+                        idle(next);
+                    }
+                }
+            } catch (Throwable t) {
+                failure = t;
+                System.err.println("Writer of shard " + index + " died: " + t);
+                t.printStackTrace();
+            } finally {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private void apply(RecordBatch batch) {
+            try {
+                storage.addBatch(batch);
+            } catch (RuntimeException e) {
+                System.err.println("Failed to store " + batch.size() + " records in shard " + index
+                        + ": " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+
+        private void idle(long next) {
+            writerParked = true;
+            if (published.get((int) next & mask) != next + 1 && tasks.isEmpty()) {
+                if (closed) {
+                    LockSupport.parkNanos(this, CLOSE_PARK_NANOS);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            writerParked = false;
+        }
+
+        private boolean runTasks() {
+            boolean ran = false;
+            FutureTask<?> task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+                ran = true;
+            }
+            return ran;
+        }
+
+        <T> FutureTask<T> execute(Callable<T> callable) {
+            checkWriter();
+            FutureTask<T> task = new FutureTask<>(callable);
+            tasks.add(task);
+            LockSupport.unpark(writer);
+            return task;
+        }
+
+        <T> T await(FutureTask<T> task) {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return task.get(TASK_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        checkWriter();
+                        if (!writer.isAlive()) {
+                            task.run(); // The writer stopped after close(), so the shard has no other writer.
+                        }
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof RuntimeException) {
+                            throw (RuntimeException) e.getCause();
+                        }
+                        throw new IllegalStateException(e.getCause());
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        void awaitApplied(long target) throws InterruptedException {
+            if (applied >= target) {
+                return;
+            }
+            waiters.incrementAndGet();
+            try {
+                synchronized (this) {
+                    while (applied < target) {
+                        checkWriter();
+                        wait();
+                    }
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+
+        void checkWriter() {
+            Throwable cause = failure;
+            if (cause != null) {
+                throw new IllegalStateException("Writer of shard " + index + " died", cause);
+            }
+        }
+    }
+}
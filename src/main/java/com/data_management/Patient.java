@@ -1,6 +1,10 @@
 package com.data_management;
 
+import com.data_codec.RecordTypeRegistry;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -8,20 +12,40 @@ import java.util.List;
  * This class stores patient-specific data, allowing for the addition and
  * retrieval
  * of medical records based on specified criteria.
+ *
+ * <p>Writes to a patient are serialized on the patient itself, so different
+ * patients can be written in parallel. Reads do not lock and may run while
+ * records are being added.
  */
 public class Patient {
-    private int patientId;
-    private List<PatientRecord> patientRecords;
+    private final int patientId;
+    private final StorageOptions options;
+    private volatile SeriesTable patientSeries; // One columnar series per record type, sorted by type code.
+    private long writeSequence; // Number of the last record written, used to replay the write-ahead log exactly once.
+    private long snapshotSequence; // Number of the last record the restored snapshot holds.
+    private volatile boolean vitalsChanged; // Set once per publication of the storage's LatestVitals.
 
     /**
      * Constructs a new Patient with a specified ID.
-     * Initializes an empty list of patient records.
+     * Initializes an empty set of record series.
      *
      * @param patientId the unique identifier for the patient
      */
     public Patient(int patientId) {
+        this(patientId, new StorageOptions());
+    }
+
+    /**
+     * Constructs a new Patient whose series follow the settings of a
+     * {@link DataStorage}.
+     *
+     * @param patientId the unique identifier for the patient
+     * @param options   the settings of the owning storage
+     */
+    Patient(int patientId, StorageOptions options) {
         this.patientId = patientId;
-        this.patientRecords = new ArrayList<>();
+        this.options = options;
+        this.patientSeries = SeriesTable.EMPTY;
     }
 
     /**
@@ -36,8 +60,163 @@ public class Patient {
      *                         milliseconds since UNIX epoch
      */
     public void addRecord(double measurementValue, String recordType, long timestamp) {
-        PatientRecord record = new PatientRecord(this.patientId, measurementValue, recordType, timestamp);
-        this.patientRecords.add(record);
+        addRecord(measurementValue, RecordTypeRegistry.codeOf(recordType), timestamp);
+    }
+
+    /**
+     * Adds a new record whose type is already interned in the
+     * {@link RecordTypeRegistry}. If the owning storage deduplicates records
+     * and a record of this type with the same timestamp was stored recently,
+     * or the record is older than what retention dropped, the record is
+     * dropped, see {@link DataStorage#setDeduplication(boolean)}.
+     *
+     * @param measurementValue the measurement value to store in the record
+     * @param recordTypeCode   the code of the record type
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since UNIX epoch
+     */
+    public synchronized void addRecord(double measurementValue, int recordTypeCode, long timestamp) {
+        append(measurementValue, recordTypeCode, timestamp);
+    }
+
+    /**
+     * Adds the records {@code [from, to)} of the given parallel arrays under a
+     * single acquisition of the patient's lock, see
+     * {@link DataStorage#addBatch(RecordBatch)}. A single-writer storage is
+     * only written by its owner thread, so no lock is taken at all.
+     */
+    void addRecords(int[] recordTypeCodes, long[] timestamps, double[] values, int from, int to) {
+        if (options.singleWriter) {
+            appendAll(recordTypeCodes, timestamps, values, from, to);
+            return;
+        }
+        synchronized (this) {
+            appendAll(recordTypeCodes, timestamps, values, from, to);
+        }
+    }
+
+    private void appendAll(int[] recordTypeCodes, long[] timestamps, double[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            append(values[i], recordTypeCodes[i], timestamps[i]);
+        }
+    }
+
+    private void append(double measurementValue, int recordTypeCode, long timestamp) {
+        TimeSeries series = seriesForWrite(recordTypeCode);
+        if (options.deduplicate) {
+            if (series.isExpired(timestamp)) {
+                options.expiredDropped.increment();
+                return;
+            }
+            if (series.isDuplicate(timestamp)) {
+                options.duplicatesDropped.increment();
+                return;
+            }
+        }
+        writeSequence++;
+        WriteAheadLog log = options.writeAheadLog;
+        if (log != null) {
+            log.append(patientId, recordTypeCode, timestamp, measurementValue, writeSequence);
+        }
+        series.add(timestamp, measurementValue);
+        vitalsChanged();
+    }
+
+    /**
+     * Re-applies a record read back from the write-ahead log. Records the
+     * patient already holds, because a snapshot taken after they were logged
+     * included them, are skipped. The log may hold a patient's records out
+     * of sequence order, so each record is judged against the snapshot alone.
+     *
+     * @param measurementValue the measurement value
+     * @param recordTypeCode   the code of the record type
+     * @param timestamp        the time at which the measurement was taken
+     * @param sequence         the write sequence number stored in the log
+     */
+    synchronized void replayRecord(double measurementValue, int recordTypeCode, long timestamp, long sequence) {
+        if (sequence <= snapshotSequence) {
+            return;
+        }
+        writeSequence = Math.max(writeSequence, sequence);
+        seriesForWrite(recordTypeCode).add(timestamp, measurementValue);
+        vitalsChanged();
+    }
+
+    /**
+     * Adds a record loaded from a snapshot, without logging it.
+     */
+    synchronized void restoreRecord(double measurementValue, int recordTypeCode, long timestamp) {
+        seriesForWrite(recordTypeCode).add(timestamp, measurementValue);
+        vitalsChanged();
+    }
+
+    synchronized void restoreWriteSequence(long sequence) {
+        writeSequence = sequence;
+        snapshotSequence = sequence;
+    }
+
+    /**
+     * Captures the write sequence and the contents of every series at one
+     * point in time, for writing a snapshot.
+     *
+     * @return the captured state
+     */
+    synchronized Checkpoint checkpoint() {
+        List<TimeSeries.Frozen> frozen = new ArrayList<>();
+        for (TimeSeries series : patientSeries.series) {
+            frozen.add(series.freeze());
+        }
+        return new Checkpoint(patientId, writeSequence, frozen);
+    }
+
+    /**
+     * Queues this patient for the next {@link LatestVitals} publication,
+     * unless it is queued already. Called by the writer after adding or
+     * evicting samples, and for every patient when the storage creates its
+     * view of the latest vitals. Does nothing while no view exists.
+     */
+    void vitalsChanged() {
+        LatestVitalsView view = options.latestVitals;
+        if (view != null && !vitalsChanged) {
+            vitalsChanged = true;
+            view.markChanged(this);
+        }
+    }
+
+    /**
+     * Builds the row of this patient for a {@link LatestVitals} snapshot. The
+     * changed flag is cleared before the series are read, so a sample added
+     * concurrently either is part of the row or queues the patient again.
+     */
+    LatestVitals.Row latestVitals() {
+        vitalsChanged = false;
+        SeriesTable current = patientSeries;
+        int count = current.codes.length;
+        long[] timestamps = new long[count];
+        double[] values = new double[count];
+        Arrays.fill(timestamps, Long.MIN_VALUE);
+        Arrays.fill(values, Double.NaN);
+        for (int i = 0; i < count; i++) {
+            current.series[i].copyLatest(timestamps, values, i);
+        }
+        return new LatestVitals.Row(patientId, current.codes, timestamps, values);
+    }
+
+    private TimeSeries seriesForWrite(int recordTypeCode) {
+        SeriesTable current = patientSeries;
+        int index = current.indexOf(recordTypeCode);
+        if (index >= 0) {
+            return current.series[index];
+        }
+        TimeSeries series = new TimeSeries(recordTypeCode, TimeSeriesChunk.DEFAULT_CAPACITY, options);
+        patientSeries = current.with(-index - 1, recordTypeCode, series);
+        return series;
+    }
+
+    private TimeSeries series(int recordTypeCode) {
+        SeriesTable current = patientSeries;
+        int index = current.indexOf(recordTypeCode);
+        return index >= 0 ? current.series[index] : null;
     }
 
     /**
@@ -49,26 +228,168 @@ public class Patient {
      *                  epoch
      * @param endTime   the end of the time range, in milliseconds since UNIX epoch
      * @return a list of PatientRecord objects that fall within the specified time
-     *         range
+     *         range, ordered by timestamp
      */
     public List<PatientRecord> getRecords(long startTime, long endTime) {
-        // TODO Implement and test this method
         List<PatientRecord> filteredRecords = new ArrayList<>();
-        for (PatientRecord record : patientRecords) {
-            if (record.getTimestamp() >= startTime && record.getTimestamp() <= endTime) {
-                filteredRecords.add(record);
-            }
+        TimeSeries[] current = patientSeries.series;
+        for (TimeSeries series : current) {
+            series.collect(patientId, startTime, endTime, filteredRecords);
+        }
+        if (current.length > 1) {
+            filteredRecords.sort(Comparator.comparingLong(PatientRecord::getTimestamp));
         }
         return filteredRecords;
     }
 
     /**
-     * Returns the list of all patient records.
+     * Retrieves the records of a single type that fall within a specified time
+     * range. Only the series of that type is searched.
+     *
+     * @param recordType the type of record, e.g., "ECG"
+     * @param startTime  the start of the time range, in milliseconds since UNIX
+     *                   epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @return a list of PatientRecord objects of the given type, ordered by
+     *         timestamp
+     */
+    public List<PatientRecord> getRecords(String recordType, long startTime, long endTime) {
+        return getRecords(RecordTypeRegistry.lookup(recordType), startTime, endTime);
+    }
+
+    /**
+     * Retrieves the records of a single type, given by its
+     * {@link RecordTypeRegistry} code, that fall within a specified time range.
+     *
+     * @param recordTypeCode the code of the record type
+     * @param startTime      the start of the time range, in milliseconds since
+     *                       UNIX epoch
+     * @param endTime        the end of the time range, in milliseconds since UNIX
+     *                       epoch
+     * @return a list of PatientRecord objects of the given type, ordered by
+     *         timestamp
+     */
+    public List<PatientRecord> getRecords(int recordTypeCode, long startTime, long endTime) {
+        List<PatientRecord> filteredRecords = new ArrayList<>();
+        TimeSeries series = series(recordTypeCode);
+        if (series != null) {
+            series.collect(patientId, startTime, endTime, filteredRecords);
+        }
+        return filteredRecords;
+    }
+
+    /**
+     * Passes the records of one type within a time range to {@code visitor},
+     * in time order, without creating {@link PatientRecord} objects. Safe to
+     * call while records are being added.
+     *
+     * @param recordType the type of record, e.g., "ECG"
+     * @param startTime  the start of the time range, in milliseconds since UNIX
+     *                   epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @param visitor    receives the timestamp and value of each record
+     */
+    public void forEachRecord(String recordType, long startTime, long endTime, RecordVisitor visitor) {
+        forEachRecord(RecordTypeRegistry.lookup(recordType), startTime, endTime, visitor);
+    }
+
+    /**
+     * Passes the records of one type, given by its {@link RecordTypeRegistry}
+     * code, within a time range to {@code visitor}, in time order.
+     *
+     * @param recordTypeCode the code of the record type
+     * @param startTime      the start of the time range, in milliseconds since
+     *                       UNIX epoch
+     * @param endTime        the end of the time range, in milliseconds since UNIX
+     *                       epoch
+     * @param visitor        receives the timestamp and value of each record
+     */
+    public void forEachRecord(int recordTypeCode, long startTime, long endTime, RecordVisitor visitor) {
+        TimeSeries series = series(recordTypeCode);
+        if (series != null) {
+            series.scan(startTime, endTime, visitor);
+        }
+    }
+
+    /**
+     * Returns the count, min, max, sum and mean of the records of one type in
+     * a time range, see {@link DataStorage#getStats}.
+     *
+     * @param recordTypeCode the code of the record type
+     * @param startTime      the start of the time range, in milliseconds since
+     *                       UNIX epoch
+     * @param endTime        the end of the time range, in milliseconds since UNIX
+     *                       epoch
+     * @return the statistics of the range
+     */
+    public RecordStats getStats(int recordTypeCode, long startTime, long endTime) {
+        TimeSeries series = series(recordTypeCode);
+        return series == null ? RecordStats.EMPTY : series.stats(startTime, endTime);
+    }
+
+    /**
+     * Summarizes the records of one type in buckets of a fixed resolution, see
+     * {@link DataStorage#getRollups}.
+     *
+     * @param recordTypeCode   the code of the record type
+     * @param startTime        the start of the time range, in milliseconds since
+     *                         UNIX epoch
+     * @param endTime          the end of the time range, in milliseconds since
+     *                         UNIX epoch
+     * @param resolutionMillis the width of a bucket, in milliseconds
+     * @return the non-empty buckets overlapping the range, ordered by time
+     */
+    public List<RollupBucket> getRollups(int recordTypeCode, long startTime, long endTime, long resolutionMillis) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive: " + resolutionMillis);
+        }
+        List<RollupBucket> buckets = new ArrayList<>();
+        TimeSeries series = series(recordTypeCode);
+        if (series != null) {
+            series.rollup(startTime, endTime, resolutionMillis, buckets);
+        }
+        return buckets;
+    }
+
+    /**
+     * Returns all patient records, ordered by timestamp. The records are built
+     * from the underlying series on every call, so the returned list is a copy.
      *
      * @return the list of patient records
      */
     public List<PatientRecord> getRecords() {
-        return patientRecords;
+        return getRecords(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the number of records stored for this patient.
+     *
+     * @return the record count
+     */
+    public long getRecordCount() {
+        long count = 0;
+        for (TimeSeries series : patientSeries.series) {
+            count += series.size();
+        }
+        return count;
+    }
+
+    /**
+     * Drops samples that fell out of the retention window of their record
+     * type, measured back from {@code now}.
+     *
+     * @param now the reference time, in milliseconds since UNIX epoch
+     * @return the number of samples that were dropped
+     */
+    synchronized long evictExpired(long now) {
+        long dropped = 0;
+        for (TimeSeries series : patientSeries.series) {
+            dropped += series.evictExpired(now);
+        }
+        if (dropped > 0) {
+            vitalsChanged();
+        }
+        return dropped;
     }
 
     /**
@@ -80,4 +401,54 @@ public class Patient {
         return patientId;
     }
 
+    /**
+     * The series of a patient, sorted by record type code. A patient only
+     * sees a handful of types, so the table stays as small as that however
+     * large the codes grow. It is never changed; adding a type publishes a
+     * new table.
+     */
+    private static final class SeriesTable {
+        static final SeriesTable EMPTY = new SeriesTable(new int[0], new TimeSeries[0]);
+
+        final int[] codes;
+        final TimeSeries[] series;
+
+        SeriesTable(int[] codes, TimeSeries[] series) {
+            this.codes = codes;
+            this.series = series;
+        }
+
+        /** Returns the index of a code, or {@code -(insertion point) - 1} if it has no series. */
+        int indexOf(int recordTypeCode) {
+            return Arrays.binarySearch(codes, recordTypeCode);
+        }
+
+        SeriesTable with(int index, int recordTypeCode, TimeSeries added) {
+            int[] grownCodes = new int[codes.length + 1];
+            TimeSeries[] grownSeries = new TimeSeries[series.length + 1];
+            System.arraycopy(codes, 0, grownCodes, 0, index);
+            System.arraycopy(series, 0, grownSeries, 0, index);
+            grownCodes[index] = recordTypeCode;
+            grownSeries[index] = added;
+            System.arraycopy(codes, index, grownCodes, index + 1, codes.length - index);
+            System.arraycopy(series, index, grownSeries, index + 1, series.length - index);
+            return new SeriesTable(grownCodes, grownSeries);
+        }
+    }
+
+    /**
+     * State of a patient captured by {@link #checkpoint()}.
+     */
+    static final class Checkpoint {
+        final int patientId;
+        final long writeSequence;
+        final List<TimeSeries.Frozen> series;
+
+        Checkpoint(int patientId, long writeSequence, List<TimeSeries.Frozen> series) {
+            this.patientId = patientId;
+            this.writeSequence = writeSequence;
+            this.series = series;
+        }
+    }
+
 }
@@ -0,0 +1,217 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Maps patient IDs to {@link Patient} objects without boxing the IDs.
+ * Patient IDs handed out by the simulator are small dense integers, so they
+ * index straight into an array that grows on demand. IDs that are negative or
+ * too large for the dense table fall back to a {@link ConcurrentHashMap}.
+ *
+ * <p>Lookups never lock: each slot is written once with a volatile store and
+ * the table is replaced by a larger copy when it grows, so a reader either
+ * sees the patient or {@code null}. Only the creation of a new patient takes
+ * the index lock.
+ */
+final class PatientIndex {
+    static final int MAX_DENSE_ID = 1 << 20;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile AtomicReferenceArray<Patient> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    private final ConcurrentHashMap<Integer, Patient> overflow = new ConcurrentHashMap<>();
+    private volatile int count;
+    private final StorageOptions options;
+
+    /**
+     * Creates an empty index whose patients use the given settings.
+     *
+     * @param options the settings of the owning storage
+     */
+    PatientIndex(StorageOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Returns the patient with the given ID, or {@code null} if there is none.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the patient or {@code null}
+     */
+    Patient get(int patientId) {
+        if (patientId >= 0 && patientId < MAX_DENSE_ID) {
+            AtomicReferenceArray<Patient> current = table;
+            return patientId < current.length() ? current.get(patientId) : null;
+        }
+        return overflow.get(patientId);
+    }
+
+    /**
+     * Returns the patient with the given ID, creating and registering it first
+     * if it does not exist yet.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the existing or newly created patient
+     */
+    Patient getOrCreate(int patientId) {
+        Patient patient = get(patientId);
+        if (patient != null) {
+            return patient;
+        }
+        synchronized (this) {
+            patient = get(patientId);
+            if (patient != null) {
+                return patient;
+            }
+            patient = new Patient(patientId, options);
+            if (patientId >= 0 && patientId < MAX_DENSE_ID) {
+                AtomicReferenceArray<Patient> current = table;
+                if (patientId >= current.length()) {
+                    current = grow(current, patientId);
+                }
+                current.set(patientId, patient);
+            } else {
+                overflow.put(patientId, patient);
+            }
+            count++;
+            return patient;
+        }
+    }
+
+    private AtomicReferenceArray<Patient> grow(AtomicReferenceArray<Patient> current, int patientId) {
+        int capacity = current.length();
+        while (capacity <= patientId) {
+            capacity <<= 1;
+        }
+        AtomicReferenceArray<Patient> grown = new AtomicReferenceArray<>(Math.min(capacity, MAX_DENSE_ID));
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        table = grown;
+        return grown;
+    }
+
+    /**
+     * Returns the number of patients in the index.
+     *
+     * @return the patient count
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns a point-in-time list of all patients, in ascending ID order for
+     * the dense IDs followed by the overflow IDs.
+     *
+     * @return a new list of patients
+     */
+    List<Patient> values() {
+        AtomicReferenceArray<Patient> current = table;
+        List<Patient> patients = new ArrayList<>(count);
+        for (int i = 0; i < current.length(); i++) {
+            Patient patient = current.get(i);
+            if (patient != null) {
+                patients.add(patient);
+            }
+        }
+        patients.addAll(overflow.values());
+        return patients;
+    }
+
+    /**
+     * Passes every patient to {@code action} without copying the index, in
+     * the same order as {@link #values()}. Patients created during the
+     * iteration may or may not be visited.
+     *
+     * @param action receives the patients
+     */
+    void forEach(Consumer<? super Patient> action) {
+        AtomicReferenceArray<Patient> current = table;
+        for (int i = 0; i < current.length(); i++) {
+            Patient patient = current.get(i);
+            if (patient != null) {
+                action.accept(patient);
+            }
+        }
+        overflow.values().forEach(action);
+    }
+
+    /**
+     * Applies {@code mapper} to every patient accepted by {@code filter} in
+     * parallel on {@code pool} and combines the results with
+     * {@code combiner}. The dense table is split into ranges that are
+     * processed as fork/join tasks; results of lower IDs are always the left
+     * operand, so an order-preserving combiner yields ID order.
+     *
+     * @return the combined result, or {@code identity} if no patient matched
+     */
+    <R> R reduce(ForkJoinPool pool, Predicate<? super Patient> filter, Function<? super Patient, ? extends R> mapper,
+                 R identity, BinaryOperator<R> combiner) {
+        AtomicReferenceArray<Patient> current = table;
+        R result = pool.invoke(new ReduceTask<>(current, 0, current.length(), filter, mapper, identity, combiner));
+        for (Patient patient : overflow.values()) {
+            if (filter.test(patient)) {
+                result = combiner.apply(result, mapper.apply(patient));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reduces the patients in one range of the dense table, splitting the
+     * range in halves until it is small enough to scan directly.
+     */
+    private static final class ReduceTask<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+        private static final int SEQUENTIAL_SLOTS = 256;
+
+        private final AtomicReferenceArray<Patient> table;
+        private final int from;
+        private final int to;
+        private final Predicate<? super Patient> filter;
+        private final Function<? super Patient, ? extends R> mapper;
+        private final R identity;
+        private final BinaryOperator<R> combiner;
+
+        ReduceTask(AtomicReferenceArray<Patient> table, int from, int to, Predicate<? super Patient> filter,
+                   Function<? super Patient, ? extends R> mapper, R identity, BinaryOperator<R> combiner) {
+            this.table = table;
+            this.from = from;
+            this.to = to;
+            this.filter = filter;
+            this.mapper = mapper;
+            this.identity = identity;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from <= SEQUENTIAL_SLOTS) {
+                R result = identity;
+                for (int i = from; i < to; i++) {
+                    Patient patient = table.get(i);
+                    if (patient != null && filter.test(patient)) {
+                        result = combiner.apply(result, mapper.apply(patient));
+                    }
+                }
+                return result;
+            }
+            int mid = (from + to) >>> 1;
+            ReduceTask<R> left = new ReduceTask<>(table, from, mid, filter, mapper, identity, combiner);
+            ReduceTask<R> right = new ReduceTask<>(table, mid, to, filter, mapper, identity, combiner);
+            left.fork();
+            R rightResult = right.compute();
+            return combiner.apply(left.join(), rightResult);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.data_management;
 
+import com.data_codec.RecordTypeRegistry;
+
 /**
  * Represents a single record of patient data at a specific point in time.
  * This class stores all necessary details for a single observation or
@@ -11,7 +13,7 @@ package com.data_management;
  */
 public class PatientRecord {
     private int patientId;
-    private String recordType; // Example: ECG, blood pressure, etc.
+    private int recordTypeCode; // Code of the record type in the RecordTypeRegistry, e.g. ECG
     private double measurementValue; // Example: heart rate
     private long timestamp;
 
@@ -21,14 +23,30 @@ public class PatientRecord {
      * @param patientId        the unique identifier for the patient
      * @param measurementValue the numerical value of the recorded measurement
      * @param recordType       the type of measurement (e.g., "ECG", "Blood
-     *                         Pressure")
+     *                         Pressure"), or {@code null} for a record without
+     *                         type
      * @param timestamp        the time at which the measurement was recorded, in
      *                         milliseconds since epoch
      */
     public PatientRecord(int patientId, double measurementValue, String recordType, long timestamp) {
+        this(patientId, measurementValue,
+                recordType == null ? RecordTypeRegistry.UNKNOWN : RecordTypeRegistry.codeOf(recordType), timestamp);
+    }
+
+    /**
+     * Constructs a new patient record whose type is already interned.
+     *
+     * @param patientId        the unique identifier for the patient
+     * @param measurementValue the numerical value of the recorded measurement
+     * @param recordTypeCode   the code of the record type in the
+     *                         {@link RecordTypeRegistry}
+     * @param timestamp        the time at which the measurement was recorded, in
+     *                         milliseconds since epoch
+     */
+    public PatientRecord(int patientId, double measurementValue, int recordTypeCode, long timestamp) {
         this.patientId = patientId;
         this.measurementValue = measurementValue;
-        this.recordType = recordType;
+        this.recordTypeCode = recordTypeCode;
         this.timestamp = timestamp;
     }
 
@@ -62,9 +80,20 @@ public class PatientRecord {
     /**
      * Returns the type of record (e.g., "ECG", "Blood Pressure").
      * 
-     * @return the record type
+     * @return the record type, or {@code null} if the record was created without one
      */
     public String getRecordType() {
-        return recordType;
+        return recordTypeCode == RecordTypeRegistry.UNKNOWN ? null : RecordTypeRegistry.labelOf(recordTypeCode);
+    }
+
+    /**
+     * Returns the code of the record type in the {@link RecordTypeRegistry}.
+     * Comparing codes is cheaper than comparing labels.
+     * 
+     * @return the record type code, or {@link RecordTypeRegistry#UNKNOWN} for a
+     *         record without type
+     */
+    public int getRecordTypeCode() {
+        return recordTypeCode;
     }
 }
@@ -0,0 +1,192 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+
+import java.util.Arrays;
+
+/**
+ * A batch of records held in parallel primitive arrays, for
+ * {@link DataStorage#addBatch(RecordBatch)}. Readers fill a batch with
+ * {@link #add} and hand it to the storage once it is full, so that no
+ * {@link PatientRecord} is allocated per record and each patient's lock is
+ * taken once per batch.
+ *
+ * <pre>
+ * RecordBatch batch = new RecordBatch();
+ * while (reader.next()) {
+ *     batch.add(reader.patientId(), reader.recordTypeCode(), reader.value(), reader.timestamp());
+ *     if (batch.isFull()) {
+ *         storage.addBatch(batch);
+ *         batch.clear();
+ *     }
+ * }
+ * storage.addBatch(batch);
+ * </pre>
+ *
+ * <p>A batch is not thread-safe.
+ */
+public final class RecordBatch {
+    /** Number of records a batch holds unless another capacity is given. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    int[] patientIds;
+    int[] recordTypeCodes;
+    double[] values;
+    long[] timestamps;
+    int size;
+    private boolean callerArrays; // The columns were passed in by the caller and must not be written.
+    // Scratch of groupByPatient, kept so that sorting a reused batch allocates nothing.
+    private long[] order;
+    private int[] sparePatientIds;
+    private int[] spareRecordTypeCodes;
+    private double[] spareValues;
+    private long[] spareTimestamps;
+
+    /**
+     * Creates an empty batch of {@link #DEFAULT_CAPACITY} records.
+     */
+    public RecordBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param capacity the number of records the batch holds
+     */
+    public RecordBatch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.patientIds = new int[capacity];
+        this.recordTypeCodes = new int[capacity];
+        this.values = new double[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * Creates a full batch over existing arrays, which are not copied unless
+     * the storage has to reorder them.
+     *
+     * @param patientIds      the patient ID of each record
+     * @param recordTypeCodes the {@link RecordTypeRegistry} code of each record
+     * @param values          the measurement value of each record
+     * @param timestamps      the timestamp of each record, in milliseconds since the Unix epoch
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    public RecordBatch(int[] patientIds, int[] recordTypeCodes, double[] values, long[] timestamps) {
+        int length = patientIds.length;
+        if (recordTypeCodes.length != length || values.length != length || timestamps.length != length) {
+            throw new IllegalArgumentException("Batch arrays must have the same length");
+        }
+        this.patientIds = patientIds;
+        this.recordTypeCodes = recordTypeCodes;
+        this.values = values;
+        this.timestamps = timestamps;
+        this.size = length;
+        this.callerArrays = true;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param patientId      the unique identifier of the patient
+     * @param recordTypeCode the code of the record type
+     * @param value          the measurement value
+     * @param timestamp      the time of the measurement, in milliseconds since the Unix epoch
+     * @throws IllegalStateException if the batch is full
+     */
+    public void add(int patientId, int recordTypeCode, double value, long timestamp) {
+        if (size == patientIds.length) {
+            throw new IllegalStateException("Batch is full");
+        }
+        patientIds[size] = patientId;
+        recordTypeCodes[size] = recordTypeCode;
+        values[size] = value;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return patientIds.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == patientIds.length;
+    }
+
+    /**
+     * Removes all records, keeping the capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Orders the records by patient ID, keeping the order of each patient's
+     * records, so every patient's records form one run. Batches whose IDs
+     * are already in order are left alone; otherwise the records are sorted
+     * into a second set of arrays, which then swaps places with the first.
+     * Both sets are kept, so a batch that is cleared and refilled sorts
+     * without allocating. Arrays passed in by the caller are never written.
+     */
+    void groupByPatient() {
+        boolean grouped = true;
+        for (int i = 1; i < size && grouped; i++) {
+            grouped = patientIds[i - 1] <= patientIds[i];
+        }
+        if (grouped) {
+            return;
+        }
+        int capacity = patientIds.length;
+        if (order == null || order.length < size) {
+            order = new long[capacity];
+        }
+        for (int i = 0; i < size; i++) {
+            // The ID in the high half orders the records; the index in the low half keeps them stable.
+            order[i] = ((long) patientIds[i] << 32) | i;
+        }
+        Arrays.sort(order, 0, size);
+        if (sparePatientIds == null) {
+            sparePatientIds = new int[capacity];
+            spareRecordTypeCodes = new int[capacity];
+            spareValues = new double[capacity];
+            spareTimestamps = new long[capacity];
+        }
+        for (int i = 0; i < size; i++) {
+            int index = (int) order[i];
+            sparePatientIds[i] = patientIds[index];
+            spareRecordTypeCodes[i] = recordTypeCodes[index];
+            spareValues[i] = values[index];
+            spareTimestamps[i] = timestamps[index];
+        }
+        int[] oldIds = patientIds;
+        int[] oldCodes = recordTypeCodes;
+        double[] oldValues = values;
+        long[] oldTimestamps = timestamps;
+        patientIds = sparePatientIds;
+        recordTypeCodes = spareRecordTypeCodes;
+        values = spareValues;
+        timestamps = spareTimestamps;
+        if (callerArrays) {
+            sparePatientIds = null; // Allocated on the next sort instead of overwriting the caller's arrays.
+            spareRecordTypeCodes = null;
+            spareValues = null;
+            spareTimestamps = null;
+            callerArrays = false;
+        } else {
+            sparePatientIds = oldIds;
+            spareRecordTypeCodes = oldCodes;
+            spareValues = oldValues;
+            spareTimestamps = oldTimestamps;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.data_management;
+
+/**
+ * Summary statistics of the records of one type in a time range, as returned
+ * by {@link DataStorage#getStats}. For an empty range the count and sum are
+ * zero and min, max and mean are {@code NaN}.
+ */
+public final class RecordStats {
+    static final RecordStats EMPTY = new RecordStats(0, Double.NaN, Double.NaN, 0);
+
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double sum;
+
+    /**
+     * Creates a summary.
+     *
+     * @param count the number of records
+     * @param min   the smallest value
+     * @param max   the largest value
+     * @param sum   the sum of the values
+     */
+    public RecordStats(long count, double min, double max, double sum) {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the mean of the values.
+     *
+     * @return the mean, or {@code NaN} if there are no records
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordStats{count=" + count + ", min=" + min + ", max=" + max + ", mean=" + getMean() + "}";
+    }
+}
@@ -0,0 +1,24 @@
+package com.data_management;
+
+/**
+ * Receives the samples of one record type of one patient, in time order,
+ * from {@link DataStorage#forEachRecord} and {@link Patient#forEachRecord}.
+ * Samples are passed as primitives straight from storage, so no
+ * {@link PatientRecord} objects or lists are allocated.
+ *
+ * <pre>
+ * double[] peak = {Double.NEGATIVE_INFINITY};
+ * storage.forEachRecord(1, "ECG", start, end, (timestamp, value) -&gt; peak[0] = Math.max(peak[0], value));
+ * </pre>
+ */
+@FunctionalInterface
+public interface RecordVisitor {
+
+    /**
+     * Called once per sample.
+     *
+     * @param timestamp the time of the measurement, in milliseconds since UNIX epoch
+     * @param value     the measurement value
+     */
+    void visit(long timestamp, double value);
+}
@@ -0,0 +1,89 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures how long samples of each record type are kept in a
+ * {@link DataStorage}. Retention is enforced by dropping whole chunks of a
+ * series once their newest sample is older than the retention window, so
+ * memory stays flat under a steady load without shifting or copying samples.
+ *
+ * <p>Example: keep one hour of ECG, seven days of blood pressure and thirty
+ * days of blood levels.
+ * <pre>
+ * RetentionPolicy policy = new RetentionPolicy();
+ * policy.setRetention("ECG", 1, TimeUnit.HOURS);
+ * policy.setRetention("SystolicPressure", 7, TimeUnit.DAYS);
+ * policy.setRetention("Cholesterol", 30, TimeUnit.DAYS);
+ * dataStorage.setRetentionPolicy(policy);
+ * </pre>
+ */
+public class RetentionPolicy {
+    /** Retention value meaning that samples are never evicted. */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private volatile long defaultRetentionMillis = UNLIMITED;
+    private volatile long[] retentionMillisByType = new long[0];
+
+    /**
+     * Sets the retention window for one record type.
+     *
+     * @param recordType the type of record, e.g. "ECG"
+     * @param duration   how long samples are kept, must be positive
+     * @param unit       the unit of {@code duration}
+     */
+    public void setRetention(String recordType, long duration, TimeUnit unit) {
+        setRetention(RecordTypeRegistry.codeOf(recordType), duration, unit);
+    }
+
+    /**
+     * Sets the retention window for one record type given by its
+     * {@link RecordTypeRegistry} code.
+     *
+     * @param recordTypeCode the code of the record type
+     * @param duration       how long samples are kept, must be positive
+     * @param unit           the unit of {@code duration}
+     */
+    public synchronized void setRetention(int recordTypeCode, long duration, TimeUnit unit) {
+        long millis = toMillis(duration, unit);
+        long[] current = retentionMillisByType;
+        long[] updated = Arrays.copyOf(current, Math.max(current.length, recordTypeCode + 1)); // 0 means "use the default"
+        updated[recordTypeCode] = millis;
+        retentionMillisByType = updated;
+    }
+
+    /**
+     * Sets the retention window used for record types without an explicit
+     * setting. Unless changed, samples are kept forever.
+     *
+     * @param duration how long samples are kept, must be positive
+     * @param unit     the unit of {@code duration}
+     */
+    public void setDefaultRetention(long duration, TimeUnit unit) {
+        defaultRetentionMillis = toMillis(duration, unit);
+    }
+
+    /**
+     * Returns the retention window of a record type in milliseconds.
+     *
+     * @param recordTypeCode the code of the record type
+     * @return the retention in milliseconds, or {@link #UNLIMITED}
+     */
+    public long getRetentionMillis(int recordTypeCode) {
+        long[] current = retentionMillisByType;
+        if (recordTypeCode < current.length && current[recordTypeCode] != 0) {
+            return current[recordTypeCode];
+        }
+        return defaultRetentionMillis;
+    }
+
+    private static long toMillis(long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Retention must be positive: " + duration);
+        }
+        return unit.toMillis(duration);
+    }
+}
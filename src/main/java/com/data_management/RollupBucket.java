@@ -0,0 +1,73 @@
+package com.data_management;
+
+/**
+ * Summary of the samples of one record type that fall into a fixed time
+ * bucket, as returned by {@link DataStorage#getRollups}. A bucket covers
+ * {@code [startTime, startTime + duration)}.
+ */
+public final class RollupBucket {
+    private final long startTime;
+    private final long duration;
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double sum;
+
+    /**
+     * Creates a bucket summary.
+     *
+     * @param startTime the start of the bucket, in milliseconds since UNIX epoch
+     * @param duration  the length of the bucket, in milliseconds
+     * @param count     the number of samples in the bucket
+     * @param min       the smallest sample value
+     * @param max       the largest sample value
+     * @param sum       the sum of the sample values
+     */
+    public RollupBucket(long startTime, long duration, long count, double min, double max, double sum) {
+        this.startTime = startTime;
+        this.duration = duration;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the mean of the sample values in the bucket.
+     *
+     * @return the mean value
+     */
+    public double getMean() {
+        return sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return "RollupBucket{start=" + startTime + ", duration=" + duration + ", count=" + count
+                + ", min=" + min + ", max=" + max + ", mean=" + getMean() + "}";
+    }
+}
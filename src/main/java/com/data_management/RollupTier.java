@@ -0,0 +1,342 @@
+package com.data_management;
+
+import java.util.List;
+
+/**
+ * Downsampled copy of one {@link TimeSeries}: the min, max, sum and count of
+ * the samples in consecutive buckets of a fixed width, aligned to multiples
+ * of the width since the epoch. A series keeps one tier per configured width
+ * and updates all of them on every sample, so long range queries can read
+ * one bucket per interval instead of every raw sample.
+ *
+ * <p>Buckets are stored in blocks of parallel arrays, like the chunks of the
+ * series itself. The first block starts at {@link #INITIAL_BLOCK_CAPACITY}
+ * buckets and is copied into blocks of twice the size as it fills, up to
+ * {@link #BLOCK_CAPACITY}, so a tier of a sparse series stays small. Writers must be serialized by the caller. Readers do not
+ * lock; a reader racing with a write may see the newest sample reflected in
+ * some of a bucket's fields but not yet in the others.
+ */
+final class RollupTier {
+    static final int BLOCK_CAPACITY = 256;
+    static final int INITIAL_BLOCK_CAPACITY = 8;
+    private static final Block[] NO_BLOCKS = new Block[0];
+
+    private final long width;
+    private volatile Block[] blocks = NO_BLOCKS;
+
+    /**
+     * Creates an empty tier.
+     *
+     * @param width the width of a bucket, in milliseconds
+     */
+    RollupTier(long width) {
+        this.width = width;
+    }
+
+    long width() {
+        return width;
+    }
+
+    /**
+     * Adds a sample to the bucket covering its timestamp.
+     *
+     * @param timestamp the time of the sample, in milliseconds since UNIX epoch
+     * @param value     the sample value
+     */
+    void add(long timestamp, double value) {
+        long start = bucketStart(timestamp, width);
+        Block[] current = blocks;
+        Block tail = current.length == 0 ? null : current[current.length - 1];
+        if (tail != null) {
+            int last = tail.size - 1;
+            long lastStart = tail.starts[last];
+            if (start == lastStart) {
+                tail.merge(last, value);
+                return;
+            }
+            if (start < lastStart) {
+                addLate(current, start, value);
+                return;
+            }
+            if (!tail.isFull()) {
+                tail.append(start, value);
+                return;
+            }
+            if (tail.starts.length < BLOCK_CAPACITY) {
+                Block grown = tail.withCapacity(Math.min(tail.starts.length * 2, BLOCK_CAPACITY));
+                grown.append(start, value);
+                Block[] updated = current.clone();
+                updated[current.length - 1] = grown;
+                blocks = updated;
+                return;
+            }
+        }
+        Block fresh = new Block(current.length == 0 ? INITIAL_BLOCK_CAPACITY : BLOCK_CAPACITY);
+        fresh.append(start, value);
+        Block[] grown = new Block[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = fresh;
+        blocks = grown;
+    }
+
+    private void addLate(Block[] current, long start, double value) {
+        int blockIndex = 0;
+        int high = current.length;
+        while (blockIndex < high) {
+            int mid = (blockIndex + high) >>> 1;
+            if (current[mid].starts[0] <= start) {
+                blockIndex = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        blockIndex = Math.max(blockIndex - 1, 0);
+        Block block = current[blockIndex];
+        int index = block.lowerBound(start);
+        if (index < block.size && block.starts[index] == start) {
+            block.merge(index, value);
+            return;
+        }
+        if (block.size < BLOCK_CAPACITY) {
+            Block[] updated = current.clone();
+            updated[blockIndex] = block.withInsertion(index, start, value);
+            blocks = updated;
+            return;
+        }
+        // A full block is split in two halves, so blocks never grow past BLOCK_CAPACITY.
+        int half = block.size / 2;
+        Block left = block.slice(0, half);
+        Block right = block.slice(half, block.size);
+        if (index <= half) {
+            left.insert(index, start, value);
+        } else {
+            right.insert(index - half, start, value);
+        }
+        Block[] updated = new Block[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, blockIndex);
+        updated[blockIndex] = left;
+        updated[blockIndex + 1] = right;
+        System.arraycopy(current, blockIndex + 1, updated, blockIndex + 2, current.length - blockIndex - 1);
+        blocks = updated;
+    }
+
+    /**
+     * Drops leading blocks whose buckets all end before {@code cutoff}.
+     *
+     * @param cutoff the oldest timestamp that must be kept
+     */
+    void evict(long cutoff) {
+        Block[] current = blocks;
+        int keepFrom = 0;
+        while (keepFrom < current.length && current[keepFrom].lastBucketEnd(width) < cutoff) {
+            keepFrom++;
+        }
+        if (keepFrom > 0) {
+            Block[] kept = new Block[current.length - keepFrom];
+            System.arraycopy(current, keepFrom, kept, 0, kept.length);
+            blocks = kept;
+        }
+    }
+
+    /**
+     * Passes every bucket starting in {@code [from, to]} to {@code out}, in
+     * time order.
+     *
+     * @param from the earliest bucket start, inclusive
+     * @param to   the latest bucket start, inclusive
+     * @param out  receives the buckets
+     */
+    void scan(long from, long to, Resampler out) {
+        Block[] snapshot = blocks;
+        for (Block block : snapshot) {
+            int size = block.size;
+            if (block.starts[size - 1] < from) {
+                continue;
+            }
+            for (int i = block.lowerBound(from); i < size; i++) {
+                if (block.starts[i] > to) {
+                    return;
+                }
+                out.accept(block.starts[i], block.counts[i], block.mins[i], block.maxs[i], block.sums[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the start of the bucket of the given width that covers
+     * {@code timestamp}.
+     */
+    static long bucketStart(long timestamp, long width) {
+        long start = timestamp - Math.floorMod(timestamp, width);
+        return start > timestamp ? Long.MIN_VALUE : start;
+    }
+
+    /**
+     * A block of consecutive buckets. Buckets are appended in order; samples
+     * are merged into existing buckets in place.
+     */
+    private static final class Block {
+        final long[] starts;
+        final int[] counts;
+        final double[] mins;
+        final double[] maxs;
+        final double[] sums;
+        volatile int size;
+
+        Block(int capacity) {
+            starts = new long[capacity];
+            counts = new int[capacity];
+            mins = new double[capacity];
+            maxs = new double[capacity];
+            sums = new double[capacity];
+        }
+
+        boolean isFull() {
+            return size == starts.length;
+        }
+
+        void append(long start, double value) {
+            int count = size;
+            set(count, start, 1, value, value, value);
+            size = count + 1;
+        }
+
+        void merge(int index, double value) {
+            counts[index]++;
+            mins[index] = Math.min(mins[index], value);
+            maxs[index] = Math.max(maxs[index], value);
+            sums[index] += value;
+            // Republish the size so readers that load it afterwards see the update.
+            size = size;
+        }
+
+        Block withCapacity(int capacity) {
+            int count = size;
+            Block copy = new Block(capacity);
+            System.arraycopy(starts, 0, copy.starts, 0, count);
+            System.arraycopy(counts, 0, copy.counts, 0, count);
+            System.arraycopy(mins, 0, copy.mins, 0, count);
+            System.arraycopy(maxs, 0, copy.maxs, 0, count);
+            System.arraycopy(sums, 0, copy.sums, 0, count);
+            copy.size = count;
+            return copy;
+        }
+
+        /**
+         * Returns a copy with one more bucket at {@code index}. The copy keeps
+         * this block's capacity while there is room and doubles it, up to
+         * {@link #BLOCK_CAPACITY}, when there is none.
+         */
+        Block withInsertion(int index, long start, double value) {
+            int count = size;
+            int capacity = count < starts.length ? starts.length : Math.min(starts.length * 2, BLOCK_CAPACITY);
+            Block copy = withCapacity(capacity);
+            copy.insert(index, start, value);
+            return copy;
+        }
+
+        /**
+         * Returns a copy of the buckets {@code [from, to)} in a block of
+         * {@link #BLOCK_CAPACITY}.
+         */
+        Block slice(int from, int to) {
+            Block copy = new Block(BLOCK_CAPACITY);
+            int count = to - from;
+            System.arraycopy(starts, from, copy.starts, 0, count);
+            System.arraycopy(counts, from, copy.counts, 0, count);
+            System.arraycopy(mins, from, copy.mins, 0, count);
+            System.arraycopy(maxs, from, copy.maxs, 0, count);
+            System.arraycopy(sums, from, copy.sums, 0, count);
+            copy.size = count;
+            return copy;
+        }
+
+        /**
+         * Inserts a bucket in place. Only used on blocks that are not
+         * published yet and have room.
+         */
+        void insert(int index, long start, double value) {
+            int count = size;
+            System.arraycopy(starts, index, starts, index + 1, count - index);
+            System.arraycopy(counts, index, counts, index + 1, count - index);
+            System.arraycopy(mins, index, mins, index + 1, count - index);
+            System.arraycopy(maxs, index, maxs, index + 1, count - index);
+            System.arraycopy(sums, index, sums, index + 1, count - index);
+            set(index, start, 1, value, value, value);
+            size = count + 1;
+        }
+
+        long lastBucketEnd(long width) {
+            long lastStart = starts[size - 1];
+            return lastStart > Long.MAX_VALUE - width ? Long.MAX_VALUE : lastStart + width - 1;
+        }
+
+        int lowerBound(long start) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] < start) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void set(int index, long start, int count, double min, double max, double sum) {
+            starts[index] = start;
+            counts[index] = count;
+            mins[index] = min;
+            maxs[index] = max;
+            sums[index] = sum;
+        }
+    }
+
+    /**
+     * Merges buckets or single samples, given in time order, into
+     * {@link RollupBucket}s of a coarser resolution.
+     */
+    static final class Resampler {
+        private final long resolution;
+        private final List<RollupBucket> out;
+        private boolean open;
+        private long bucketStart;
+        private long count;
+        private double min;
+        private double max;
+        private double sum;
+
+        Resampler(long resolution, List<RollupBucket> out) {
+            this.resolution = resolution;
+            this.out = out;
+        }
+
+        void accept(long start, long count, double min, double max, double sum) {
+            long target = bucketStart(start, resolution);
+            if (open && target != bucketStart) {
+                finish();
+            }
+            if (!open) {
+                open = true;
+                bucketStart = target;
+                this.count = 0;
+                this.min = Double.POSITIVE_INFINITY;
+                this.max = Double.NEGATIVE_INFINITY;
+                this.sum = 0;
+            }
+            this.count += count;
+            this.min = Math.min(this.min, min);
+            this.max = Math.max(this.max, max);
+            this.sum += sum;
+        }
+
+        void finish() {
+            if (open) {
+                out.add(new RollupBucket(bucketStart, resolution, count, min, max, sum));
+                open = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.data_management;
+
+/**
+ * A block of samples of one series, sorted by timestamp. The newest chunk of a
+ * series is a mutable on-heap {@link TimeSeriesChunk}; once it is full it is
+ * sealed by the storage's {@link ChunkStore}, which may move the samples to
+ * another representation such as a memory-mapped file. Sealed chunks never
+ * change.
+ *
+ * <p>The default implementations use random access through
+ * {@link #timestampAt(int)} and {@link #valueAt(int)}; chunks that cannot
+ * access samples cheaply by index override {@link #scan}.
+ */
+abstract class SampleChunk {
+
+    private RecordStats stats; // Cached by stats(); immutable, so a racy publication is safe.
+
+    abstract int size();
+
+    abstract long timestampAt(int index);
+
+    abstract double valueAt(int index);
+
+    long firstTimestamp() {
+        return timestampAt(0);
+    }
+
+    long lastTimestamp() {
+        return timestampAt(size() - 1);
+    }
+
+    /**
+     * Visits, in time order, the samples among the first {@code limit} whose
+     * timestamps lie in {@code [startTime, endTime]}.
+     *
+     * @param startTime the start of the time range, inclusive
+     * @param endTime   the end of the time range, inclusive
+     * @param limit     the number of leading samples to consider
+     * @param visitor   receives the samples
+     */
+    void scan(long startTime, long endTime, int limit, RecordVisitor visitor) {
+        int to = upperBound(endTime, limit);
+        for (int i = lowerBound(startTime, limit); i < to; i++) {
+            visitor.visit(timestampAt(i), valueAt(i));
+        }
+    }
+
+    /**
+     * Returns the count, min, max and sum of the samples. The result is
+     * computed once and cached, so this must only be called once the chunk is
+     * sealed and no longer appended to.
+     *
+     * @return the statistics of the whole chunk
+     */
+    RecordStats stats() {
+        RecordStats cached = stats;
+        if (cached == null) {
+            ChunkStatsIndex.Accumulator accumulator = new ChunkStatsIndex.Accumulator();
+            scan(Long.MIN_VALUE, Long.MAX_VALUE, size(), accumulator);
+            cached = accumulator.toStats();
+            stats = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * Returns a mutable on-heap copy of this chunk, used when a late sample has
+     * to be inserted into it.
+     *
+     * @param capacity the capacity of the copy, at least {@link #size()}
+     * @return the copy
+     */
+    TimeSeriesChunk toHeap(int capacity) {
+        TimeSeriesChunk copy = new TimeSeriesChunk(capacity);
+        int count = size();
+        for (int i = 0; i < count; i++) {
+            copy.append(timestampAt(i), valueAt(i));
+        }
+        return copy;
+    }
+
+    /**
+     * Tells the chunk it is no longer part of its series, so any external
+     * resources can be reclaimed once no reader uses them.
+     */
+    void release() {
+    }
+
+    /**
+     * Returns the index of the first sample among the first {@code limit}
+     * whose timestamp is greater than or equal to {@code timestamp}.
+     */
+    int lowerBound(long timestamp, int limit) {
+        int low = 0;
+        int high = limit;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampAt(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first sample among the first {@code limit}
+     * whose timestamp is strictly greater than {@code timestamp}.
+     */
+    int upperBound(long timestamp, int limit) {
+        int low = 0;
+        int high = limit;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampAt(mid) <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
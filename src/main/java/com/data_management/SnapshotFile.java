@@ -0,0 +1,245 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compact binary snapshot of a {@link DataStorage}. A snapshot file
+ * ({@code snapshot-<n>.bin}) records that it covers every write-ahead log
+ * segment below {@code n}, so recovery loads the snapshot and replays only
+ * segments {@code n} and above.
+ *
+ * <p>Timestamps are stored as zig-zag varint deltas and values as raw
+ * doubles. The file starts and ends with a magic number. Snapshots are
+ * renamed into place only once complete, so a file without the trailing
+ * magic is damaged and is rejected.
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x43445353; // "CDSS"
+    private static final int END_MAGIC = 0x454E4421; // "END!"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private SnapshotFile() {
+    }
+
+    static Path path(Path directory, long segment) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, segment, SUFFIX));
+    }
+
+    /**
+     * Lists the segment numbers of all snapshots in {@code directory}, newest
+     * first.
+     *
+     * @param directory the storage directory
+     * @return the snapshot numbers
+     * @throws IOException if the directory cannot be listed
+     */
+    static List<Long> list(Path directory) throws IOException {
+        List<Long> snapshots = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .forEach(name -> snapshots.add(Long.parseLong(
+                            name.substring(PREFIX.length(), name.length() - SUFFIX.length()))));
+        }
+        snapshots.sort((a, b) -> Long.compare(b, a));
+        return snapshots;
+    }
+
+    /**
+     * Writes a snapshot of the given patients. The file is written under a
+     * temporary name, forced to disk and then renamed, so a crash never leaves
+     * a half-written snapshot under the final name.
+     *
+     * @param directory   the storage directory
+     * @param segment     the first log segment not covered by this snapshot
+     * @param checkpoints the captured patients
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(Path directory, long segment, List<Patient.Checkpoint> checkpoints) throws IOException {
+        Path target = path(directory, segment);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(segment);
+            writeTypes(out, checkpoints);
+            out.writeInt(checkpoints.size());
+            for (Patient.Checkpoint checkpoint : checkpoints) {
+                out.writeInt(checkpoint.patientId);
+                out.writeLong(checkpoint.writeSequence);
+                out.writeInt(checkpoint.series.size());
+                for (TimeSeries.Frozen series : checkpoint.series) {
+                    writeSeries(out, series);
+                }
+            }
+            out.writeInt(END_MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(directory);
+    }
+
+    /**
+     * Forces a directory's entries to disk, so a rename in it survives a
+     * crash. Platforms that cannot open a directory for reading leave the
+     * rename to the file system.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (FileChannel dir = channel) {
+            dir.force(true);
+        }
+    }
+
+    private static void writeTypes(DataOutputStream out, List<Patient.Checkpoint> checkpoints) throws IOException {
+        boolean[] used = new boolean[RecordTypeRegistry.size()];
+        for (Patient.Checkpoint checkpoint : checkpoints) {
+            for (TimeSeries.Frozen series : checkpoint.series) {
+                if (series.recordTypeCode >= used.length) {
+                    used = Arrays.copyOf(used, series.recordTypeCode + 1);
+                }
+                used[series.recordTypeCode] = true;
+            }
+        }
+        int count = 0;
+        for (boolean u : used) {
+            count += u ? 1 : 0;
+        }
+        out.writeInt(count);
+        for (int code = 0; code < used.length; code++) {
+            if (used[code]) {
+                out.writeShort(code);
+                out.writeUTF(RecordTypeRegistry.labelOf(code));
+            }
+        }
+    }
+
+    private static void writeSeries(DataOutputStream out, TimeSeries.Frozen series) throws IOException {
+        out.writeShort(series.recordTypeCode);
+        out.writeLong(series.sampleCount());
+        long[] previous = {0};
+        try {
+            series.forEach((timestamp, value) -> {
+                try {
+                    writeVarLong(out, zigZag(timestamp - previous[0]));
+                    out.writeDouble(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                previous[0] = timestamp;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Loads a snapshot into {@code storage}.
+     *
+     * @param file    the snapshot file
+     * @param storage the storage receiving the data, normally empty
+     * @return the number of samples loaded
+     * @throws IOException if the file cannot be read or is incomplete
+     */
+    static long load(Path file, DataStorage storage) throws IOException {
+        long samples = 0;
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            in.readLong();
+            int[] codeMap = new int[0];
+            int typeCount = in.readInt();
+            for (int i = 0; i < typeCount; i++) {
+                int fileCode = in.readShort();
+                if (fileCode >= codeMap.length) {
+                    codeMap = Arrays.copyOf(codeMap, fileCode + 1);
+                }
+                codeMap[fileCode] = RecordTypeRegistry.codeOf(in.readUTF());
+            }
+            int patientCount = in.readInt();
+            for (int p = 0; p < patientCount; p++) {
+                Patient patient = storage.patientForWrite(in.readInt());
+                patient.restoreWriteSequence(in.readLong());
+                int seriesCount = in.readInt();
+                for (int s = 0; s < seriesCount; s++) {
+                    int code = codeMap[in.readShort()];
+                    long count = in.readLong();
+                    long timestamp = 0;
+                    for (long i = 0; i < count; i++) {
+                        timestamp += unZigZag(readVarLong(in));
+                        patient.restoreRecord(in.readDouble(), code, timestamp);
+                    }
+                    samples += count;
+                }
+            }
+            if (in.readInt() != END_MAGIC) {
+                throw new IOException("Snapshot is incomplete: " + file);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Snapshot is truncated: " + file, e);
+        }
+        return samples;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in snapshot");
+    }
+}
@@ -0,0 +1,36 @@
+package com.data_management;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Settings shared by all patients and series of one {@link DataStorage}.
+ * Series keep a reference to this object and read the current settings
+ * whenever they need them, so changes made through {@code DataStorage}
+ * setters apply to existing patients too.
+ */
+final class StorageOptions {
+    /** Bucket widths of the rollup tiers kept for every series: one second, one minute and one hour. */
+    static final long[] DEFAULT_ROLLUP_WIDTHS = {1000L, 60_000L, 3_600_000L};
+    /** How far behind the newest sample of a series a sample may be and still be buffered. */
+    static final long DEFAULT_LATENESS_MILLIS = 10_000L;
+
+    volatile RetentionPolicy retentionPolicy = new RetentionPolicy();
+    volatile WriteAheadLog writeAheadLog; // null unless durability is enabled
+    volatile ChunkStore chunkStore; // null keeps sealed chunks on the heap
+    volatile ColdTier coldTier; // null keeps all chunks where the chunk store put them
+    volatile long latenessMillis = DEFAULT_LATENESS_MILLIS;
+    volatile boolean deduplicate; // drop samples whose timestamp the series already holds
+    final LongAdder duplicatesDropped = new LongAdder(); // maintained at ingest, not a setting
+    final LongAdder expiredDropped = new LongAdder(); // likewise
+    volatile LatestVitalsView latestVitals; // null until the latest vitals are first read, not a setting
+    volatile long[] rollupWidths = DEFAULT_ROLLUP_WIDTHS; // read at the first sample of a series, never modified
+    final boolean singleWriter; // batches come from one owner thread and skip the patient lock
+
+    StorageOptions() {
+        this(false);
+    }
+
+    StorageOptions(boolean singleWriter) {
+        this.singleWriter = singleWriter;
+    }
+}
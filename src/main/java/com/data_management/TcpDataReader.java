@@ -0,0 +1,410 @@
+package com.data_management;
+
+import com.data_codec.RecordCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads the {@code patientId,timestamp,label,data} lines sent by the
+ * simulator's {@code TcpOutputStrategy} from one or more producers. A single
+ * thread drives all connections through a {@link Selector}, so dozens of
+ * feeds cost one thread.
+ *
+ * <p>Bytes are read into direct buffers of {@link #BUFFER_SIZE} taken from a
+ * pool. Complete lines are parsed in place by a {@link RecordCodec}, without
+ * creating strings, into one {@link RecordBatch} that is stored after every
+ * round of reads or when it fills up. A feed keeps its buffer only while it
+ * holds an incomplete line, so idle feeds hold no buffer at all. A line
+ * longer than a buffer is skipped, and so is a line whose label is not in the
+ * {@link com.data_codec.RecordTypeRegistry}.
+ *
+ * <p>Producers that cannot be reached or close the connection are retried
+ * after the reconnect delay.
+ *
+ * <pre>
+ * TcpDataReader reader = new TcpDataReader(Arrays.asList(
+ *         new InetSocketAddress("ward-a", 9000), new InetSocketAddress("ward-b", 9000)));
+ * reader.readData(storage);
+ * ...
+ * reader.close();
+ * </pre>
+ */
+public class TcpDataReader implements DataReader, Closeable {
+    /** Size of the pooled read buffers, in bytes. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+    /** Default delay before a lost producer is reconnected, in milliseconds. */
+    public static final long DEFAULT_RECONNECT_DELAY_MILLIS = 1000;
+
+    private final List<Feed> feeds = new ArrayList<>();
+    private final long reconnectDelayMillis;
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>(); // Only used by the selector thread.
+    private final RecordCodec codec = new RecordCodec(RecordCodec.Layout.STREAM_CSV); // Likewise.
+    private final RecordBatch batch = new RecordBatch(); // Likewise.
+    private final LongAdder records = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private DataStorage dataStorage;
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean closed;
+
+    /**
+     * Creates a reader for the given producers with the default reconnect
+     * delay.
+     *
+     * @param producers the addresses the producers listen on
+     */
+    public TcpDataReader(Collection<InetSocketAddress> producers) {
+        this(producers, DEFAULT_RECONNECT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a reader for the given producers.
+     *
+     * @param producers      the addresses the producers listen on
+     * @param reconnectDelay the delay before a lost producer is reconnected
+     * @param unit           the unit of {@code reconnectDelay}
+     */
+    public TcpDataReader(Collection<InetSocketAddress> producers, long reconnectDelay, TimeUnit unit) {
+        if (producers.isEmpty() || reconnectDelay < 0) {
+            throw new IllegalArgumentException("Invalid producers or reconnect delay");
+        }
+        for (InetSocketAddress producer : producers) {
+            feeds.add(new Feed(producer));
+        }
+        this.reconnectDelayMillis = unit.toMillis(reconnectDelay);
+    }
+
+    /**
+     * Starts connecting to every producer and reading in the background.
+     * Returns without waiting for the connections.
+     *
+     * @param dataStorage the storage where data will be stored
+     * @throws IOException if the selector cannot be opened
+     */
+    @Override
+    public synchronized void readData(DataStorage dataStorage) throws IOException {
+        if (selectorThread != null || closed) {
+            throw new IllegalStateException("Reader is already started or closed");
+        }
+        this.dataStorage = dataStorage;
+        selector = Selector.open();
+        selectorThread = new Thread(this::run, "tcp-reader");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * Parses a single line in the {@code patientId,timestamp,label,data}
+     * layout and stores it.
+     *
+     * @param data        the line to handle
+     * @param dataStorage the storage where data will be stored
+     */
+    @Override
+    public void handleData(String data, DataStorage dataStorage) {
+        WebSocketClientImpl.store(data, dataStorage);
+    }
+
+    /**
+     * Returns the number of records stored so far.
+     *
+     * @return the record count
+     */
+    public long getRecordsRead() {
+        return records.sum();
+    }
+
+    /**
+     * Returns the number of lines that could not be parsed or were too long.
+     *
+     * @return the malformed line count
+     */
+    public long getMalformedRecords() {
+        return malformed.sum();
+    }
+
+    /**
+     * Returns the number of producers currently connected.
+     *
+     * @return the connected feed count
+     */
+    public int getConnectedFeeds() {
+        int connected = 0;
+        for (Feed feed : feeds) {
+            if (feed.connected) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    /**
+     * Closes every connection and stops the reader thread. Records read so
+     * far stay in the storage.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = selectorThread;
+            if (selector != null) {
+                selector.wakeup();
+            }
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            for (Feed feed : feeds) {
+                connect(feed);
+            }
+            while (!closed) {
+                selector.select(nextReconnectDelay());
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                flush();
+                reconnectDue();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            System.err.println("TCP reader stopped: " + e.getMessage());
+        } finally {
+            flush();
+            for (Feed feed : feeds) {
+                disconnect(feed, false);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close selector: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Feed feed = (Feed) key.attachment();
+        if (!key.isValid()) {
+            return;
+        }
+        try {
+            if (key.isConnectable()) {
+                feed.channel.finishConnect();
+                feed.connected = true;
+                key.interestOps(SelectionKey.OP_READ);
+                System.out.println("Connected to TCP producer " + feed.address);
+            } else if (key.isReadable()) {
+                read(feed);
+            }
+        } catch (IOException e) {
+            System.err.println("TCP producer " + feed.address + " failed: " + e.getMessage());
+            disconnect(feed, true);
+        } catch (RuntimeException e) {
+            // Drop only this feed; the others share the selector thread.
+            System.err.println("TCP producer " + feed.address + " failed: " + e);
+            disconnect(feed, true);
+        }
+    }
+
+    /**
+     * Reads what the channel has, parses the complete lines and keeps an
+     * incomplete last line in the feed's buffer.
+     */
+    private void read(Feed feed) throws IOException {
+        while (true) {
+            if (feed.buffer == null) {
+                ByteBuffer pooled = bufferPool.poll();
+                feed.buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+            }
+            ByteBuffer buffer = feed.buffer;
+            int read = feed.channel.read(buffer);
+            if (read > 0) {
+                parseLines(feed);
+            }
+            if (buffer.position() == 0) {
+                feed.buffer = null;
+                bufferPool.push(buffer);
+            }
+            if (read < 0) {
+                System.out.println("TCP producer " + feed.address + " closed the connection");
+                disconnect(feed, true);
+                return;
+            }
+            if (read == 0 || buffer.hasRemaining()) {
+                return; // Drained; a partly filled buffer means no more bytes are waiting.
+            }
+        }
+    }
+
+    /**
+     * Parses the complete lines among the bytes before the buffer's position
+     * and moves the rest to its start.
+     */
+    private void parseLines(Feed feed) {
+        ByteBuffer buffer = feed.buffer;
+        int end = buffer.position();
+        int lineStart = 0;
+        for (int i = 0; i < end; i++) {
+            if (buffer.get(i) != '\n') {
+                continue;
+            }
+            if (feed.skipping) {
+                feed.skipping = false;
+            } else if (i > lineStart) {
+                parseLine(feed, lineStart, i);
+            }
+            lineStart = i + 1;
+        }
+        if (lineStart == 0 && end == buffer.capacity()) {
+            // A full buffer without a line break: drop it and the rest of the line.
+            if (!feed.skipping) {
+                malformed.increment();
+                System.err.println("Skipping oversized line from " + feed.address);
+                feed.skipping = true;
+            }
+            buffer.clear();
+            return;
+        }
+        buffer.limit(end).position(lineStart);
+        buffer.compact();
+    }
+
+    /**
+     * Parses one line. A line the codec throws on counts as malformed like
+     * one it rejects, so a single bad feed cannot stop the selector thread.
+     */
+    private void parseLine(Feed feed, int start, int end) {
+        boolean parsed;
+        try {
+            parsed = codec.parse(feed.buffer, start, end);
+        } catch (RuntimeException e) {
+            malformed.increment();
+            System.err.println("Failed to parse data from " + feed.address + ": " + e);
+            return;
+        }
+        if (parsed) {
+            batch.add(codec.getPatientId(), codec.getRecordTypeCode(), codec.getValue(), codec.getTimestamp());
+            records.increment();
+            if (batch.isFull()) {
+                flush();
+            }
+        } else {
+            malformed.increment();
+            System.err.println("Invalid data format (" + codec.getError() + ") from " + feed.address);
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            dataStorage.addBatch(batch);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to store " + batch.size() + " records: " + e.getMessage());
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void connect(Feed feed) {
+        feed.reconnectAt = 0;
+        try {
+            SocketChannel channel = SocketChannel.open();
+            feed.channel = channel;
+            channel.configureBlocking(false);
+            if (channel.connect(feed.address)) {
+                feed.connected = true;
+                channel.register(selector, SelectionKey.OP_READ, feed);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, feed);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot connect to TCP producer " + feed.address + ": " + e.getMessage());
+            disconnect(feed, true);
+        }
+    }
+
+    private void disconnect(Feed feed, boolean reconnect) {
+        if (feed.channel != null) {
+            try {
+                feed.channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close connection to " + feed.address + ": " + e.getMessage());
+            }
+            feed.channel = null;
+        }
+        feed.connected = false;
+        feed.skipping = false;
+        if (feed.buffer != null) {
+            // An incomplete line cannot be continued on a new connection.
+            feed.buffer.clear();
+            bufferPool.push(feed.buffer);
+            feed.buffer = null;
+        }
+        if (reconnect && !closed) {
+            feed.reconnectAt = System.currentTimeMillis() + reconnectDelayMillis;
+        }
+    }
+
+    private long nextReconnectDelay() {
+        long next = Long.MAX_VALUE;
+        for (Feed feed : feeds) {
+            if (feed.reconnectAt != 0) {
+                next = Math.min(next, feed.reconnectAt);
+            }
+        }
+        // 0 makes select wait without a timeout.
+        return next == Long.MAX_VALUE ? 0 : Math.max(1, next - System.currentTimeMillis());
+    }
+
+    private void reconnectDue() {
+        long now = System.currentTimeMillis();
+        for (Feed feed : feeds) {
+            if (feed.reconnectAt != 0 && feed.reconnectAt <= now) {
+                connect(feed);
+            }
+        }
+    }
+
+    /**
+     * The connection to one producer. Only touched by the selector thread,
+     * except for the connected flag.
+     */
+    private static final class Feed {
+        final InetSocketAddress address;
+        SocketChannel channel;
+        ByteBuffer buffer;
+        boolean skipping;
+        long reconnectAt;
+        volatile boolean connected;
+
+        Feed(InetSocketAddress address) {
+            this.address = address;
+        }
+    }
+}
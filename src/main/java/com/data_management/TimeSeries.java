@@ -0,0 +1,822 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Columnar storage for all samples of one record type of one patient.
+ * Samples are kept sorted by timestamp in an array of {@link SampleChunk}s,
+ * so range lookups use a binary search over the chunks and then inside the
+ * chunks instead of scanning every sample. {@link PatientRecord} objects are
+ * only created when a caller asks for them.
+ *
+ * <p>New samples go into an on-heap {@link TimeSeriesChunk}. When it is full
+ * it is handed to the storage's {@link ChunkStore}, which may keep it or move
+ * it elsewhere, and a new on-heap chunk is started. The first chunk of a
+ * series starts at {@link #INITIAL_CHUNK_CAPACITY} samples and is copied into
+ * chunks of twice the size as it fills, so series holding a few samples do
+ * not pay for a whole chunk.
+ *
+ * <p>Samples older than the newest one are not written into the chunks one
+ * by one. If they lag by no more than the storage's lateness bound they are
+ * kept in a small sorted late buffer, which queries merge with the chunks on
+ * the fly, and the buffer is merged into the chunks in one batch when it
+ * fills up. Each affected chunk is then rewritten once per batch instead of
+ * once per sample. Samples that lag further are merged in on arrival.
+ *
+ * <p>Writers must be serialized by the caller (the owning {@link Patient}
+ * does this with its own lock). Readers never lock: the chunk array and the
+ * late buffer are published together as one immutable {@link View}, replaced
+ * copy-on-write whenever a chunk is added or rewritten or the buffer changes,
+ * and readers work on the view they loaded at the start of the query.
+ *
+ * <p>Whenever a new chunk is started, leading chunks whose newest sample is
+ * older than the retention window of the series' record type are dropped
+ * whole, see {@link RetentionPolicy}.
+ *
+ * <p>Every sample also updates the series' {@link RollupTier}s, one per
+ * rollup width configured in the storage options when the series received
+ * its first sample, so downsampled queries never have to visit raw samples.
+ * The tiers are created with that first sample, not with the series.
+ *
+ * <p>If the storage has a {@link ColdTier}, sealed chunks that fall out of
+ * its hot window as new chunks are started are handed to the tier, which
+ * writes them in the background; the written chunks replace the heap chunks
+ * in the copy-on-write step of a later chunk start or expiry.
+ */
+final class TimeSeries {
+    /** Number of buffered late samples that triggers a merge into the chunks. */
+    static final int LATE_BATCH_SIZE = 64;
+    /** Capacity of the first chunk of a series, which grows up to the full chunk capacity. */
+    static final int INITIAL_CHUNK_CAPACITY = 16;
+    /** Number of recently added timestamps a deduplicating series remembers. */
+    static final int DEDUP_WINDOW = 64;
+    private static final long[] NO_TIMESTAMPS = new long[0];
+    private static final double[] NO_VALUES = new double[0];
+    private static final RollupTier[] NO_ROLLUPS = new RollupTier[0];
+
+    private final int recordTypeCode;
+    private final int chunkCapacity;
+    private final StorageOptions options;
+    private volatile RollupTier[] rollups; // null until the first sample
+    private volatile View view = View.EMPTY;
+    private volatile long size;
+    // Writer only: chunks being written by the cold tier, and the index below
+    // which every chunk is on disk or being written.
+    private final List<ColdTier.Spill> pendingSpills = new ArrayList<>(0);
+    private int spillScanFrom;
+    // Writer only: the newest timestamp of the chunks dropped by retention.
+    private long retentionFloor = Long.MIN_VALUE;
+    // Writer only: the timestamps of the last recentCount samples added, at
+    // most DEDUP_WINDOW, null until the series is first checked for a duplicate.
+    private long[] recentTimestamps;
+    private int recentNext;
+    private int recentCount;
+
+    /**
+     * Creates an empty series for the given record type.
+     *
+     * @param recordTypeCode the code of the record type stored in this series
+     */
+    TimeSeries(int recordTypeCode) {
+        this(recordTypeCode, TimeSeriesChunk.DEFAULT_CAPACITY, new StorageOptions());
+    }
+
+    TimeSeries(int recordTypeCode, int chunkCapacity, StorageOptions options) {
+        this.recordTypeCode = recordTypeCode;
+        this.chunkCapacity = chunkCapacity;
+        this.options = options;
+    }
+
+    int getRecordTypeCode() {
+        return recordTypeCode;
+    }
+
+    /**
+     * Returns the number of samples stored in this series.
+     *
+     * @return the sample count
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returns whether a sample with the given timestamp was added recently.
+     * Timestamps at or after the newest one are decided by comparing with the
+     * newest timestamp alone; older ones are compared with the timestamps of
+     * the last {@link #DEDUP_WINDOW} samples added, so the check never reads
+     * chunk contents, which may be compressed or on disk. A resent sample
+     * older than that window is not recognized. The window is allocated by
+     * the first call, so only samples added after deduplication was enabled
+     * are remembered. Only called by the writer.
+     *
+     * @param timestamp the time of the measurement, in milliseconds since UNIX epoch
+     * @return {@code true} if a sample with this timestamp is known to be stored
+     */
+    boolean isDuplicate(long timestamp) {
+        if (recentTimestamps == null) {
+            recentTimestamps = new long[DEDUP_WINDOW];
+        }
+        SampleChunk[] chunks = view.chunks;
+        if (chunks.length == 0) {
+            return false;
+        }
+        long newest = chunks[chunks.length - 1].lastTimestamp();
+        if (timestamp >= newest) {
+            return timestamp == newest;
+        }
+        long[] recent = recentTimestamps;
+        for (int i = 0; i < recentCount; i++) {
+            if (recent[i] == timestamp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a timestamp is at or below the newest timestamp of the
+     * chunks retention has dropped, so that a sample with it would belong to
+     * data that already expired. Only called by the writer, which owns the
+     * retention floor.
+     *
+     * @param timestamp the time of the measurement, in milliseconds since UNIX epoch
+     * @return {@code true} if the timestamp is older than the retained samples
+     */
+    boolean isExpired(long timestamp) {
+        return timestamp <= retentionFloor;
+    }
+
+    /**
+     * Copies the newest sample of the series into the given arrays at
+     * {@code index}, leaving them unchanged if the series is empty. The
+     * newest sample is always the last one of the tail chunk, since older
+     * samples are buffered or merged in before it. Safe to call while another
+     * thread is adding samples.
+     */
+    void copyLatest(long[] timestamps, double[] values, int index) {
+        SampleChunk[] chunks = view.chunks;
+        if (chunks.length == 0) {
+            return;
+        }
+        SampleChunk tail = chunks[chunks.length - 1];
+        int last = tail.size() - 1;
+        timestamps[index] = tail.timestampAt(last);
+        values[index] = tail.valueAt(last);
+    }
+
+    /**
+     * Adds a sample to the series. Samples arriving in time order are appended
+     * to the last chunk in O(1); older samples go through the late buffer or
+     * are merged at their sorted position. Callers must not invoke this method
+     * concurrently.
+     *
+     * @param timestamp the time of the measurement, in milliseconds since UNIX epoch
+     * @param value     the measurement value
+     */
+    void add(long timestamp, double value) {
+        View current = view;
+        SampleChunk[] chunks = current.chunks;
+        TimeSeriesChunk tail = chunks.length == 0 ? null : (TimeSeriesChunk) chunks[chunks.length - 1];
+        if (tail == null || timestamp >= tail.lastTimestamp()) {
+            if (tail != null && tail.isFull() && tail.capacity() < chunkCapacity) {
+                growTail(chunks, tail, timestamp, value);
+            } else if (tail == null || tail.isFull()) {
+                startChunk(chunks, timestamp, value);
+            } else {
+                tail.append(timestamp, value);
+            }
+        } else {
+            long lag = tail.lastTimestamp() - timestamp;
+            if (lag > 0 && lag <= options.latenessMillis) {
+                bufferLate(current, timestamp, value);
+            } else {
+                mergeLate(chunks, new long[] {timestamp}, new double[] {value},
+                        current.lateTimestamps, current.lateValues);
+            }
+        }
+        size = size + 1;
+        long[] recent = recentTimestamps;
+        if (recent != null) {
+            recent[recentNext] = timestamp;
+            recentNext = (recentNext + 1) % DEDUP_WINDOW;
+            recentCount = Math.min(recentCount + 1, DEDUP_WINDOW);
+        }
+        RollupTier[] tiers = rollups;
+        if (tiers == null) {
+            tiers = createRollups();
+        }
+        for (RollupTier tier : tiers) {
+            tier.add(timestamp, value);
+        }
+    }
+
+    private RollupTier[] createRollups() {
+        long[] widths = options.rollupWidths;
+        RollupTier[] tiers = new RollupTier[widths.length];
+        for (int i = 0; i < widths.length; i++) {
+            tiers[i] = new RollupTier(widths[i]);
+        }
+        rollups = tiers;
+        return tiers;
+    }
+
+    /**
+     * Replaces a full tail chunk below the chunk capacity with a copy of
+     * twice its capacity, published like any other chunk change.
+     */
+    private void growTail(SampleChunk[] current, TimeSeriesChunk tail, long timestamp, double value) {
+        TimeSeriesChunk grown = tail.toHeap(Math.min(tail.capacity() * 2, chunkCapacity));
+        grown.append(timestamp, value);
+        SampleChunk[] updated = current.clone();
+        updated[updated.length - 1] = grown;
+        publish(updated);
+    }
+
+    private void startChunk(SampleChunk[] current, long timestamp, double value) {
+        int capacity = current.length == 0 ? Math.min(INITIAL_CHUNK_CAPACITY, chunkCapacity) : chunkCapacity;
+        TimeSeriesChunk fresh = new TimeSeriesChunk(capacity);
+        fresh.append(timestamp, value);
+        long cutoff = retentionCutoff(timestamp);
+        int keepFrom = firstRetainedChunk(current, cutoff);
+        evictRollups(cutoff);
+        SampleChunk[] grown = new SampleChunk[current.length - keepFrom + 1];
+        System.arraycopy(current, keepFrom, grown, 0, current.length - keepFrom);
+        if (grown.length > 1) {
+            grown[grown.length - 2] = seal(grown[grown.length - 2]);
+        }
+        grown[grown.length - 1] = fresh;
+        raiseRetentionFloor(current, keepFrom);
+        spillScanFrom = Math.max(spillScanFrom - keepFrom, 0);
+        List<SampleChunk> spilled = spillCold(grown, timestamp);
+        publish(grown);
+        size = size - countSamples(current, 0, keepFrom);
+        release(current, 0, keepFrom);
+        spilled.forEach(SampleChunk::release);
+    }
+
+    /**
+     * Replaces the chunks the cold tier has finished writing in
+     * {@code chunks}, then hands the sealed heap chunks that left the hot
+     * window, measured back from {@code newestTimestamp}, to the tier. Only
+     * chunks from {@link #spillScanFrom} on are looked at, so each call
+     * touches the chunks that aged out or were rewritten since the last one.
+     *
+     * @return the replaced chunks, to be released once the array is published
+     */
+    private List<SampleChunk> spillCold(SampleChunk[] chunks, long newestTimestamp) {
+        List<SampleChunk> replaced = swapSpilled(chunks);
+        ColdTier tier = options.coldTier;
+        if (tier == null || newestTimestamp < Long.MIN_VALUE + tier.getHotWindowMillis()) {
+            return replaced;
+        }
+        long hotCutoff = newestTimestamp - tier.getHotWindowMillis();
+        int hotFrom = Math.min(firstChunkEndingAtOrAfter(chunks, hotCutoff), chunks.length - 1);
+        for (int c = spillScanFrom; c < hotFrom; c++) {
+            if (!(chunks[c] instanceof ColdTier.ColdChunk) && !isSpilling(chunks[c])) {
+                pendingSpills.add(tier.spillLater(chunks[c]));
+            }
+        }
+        spillScanFrom = Math.max(spillScanFrom, hotFrom);
+        return replaced;
+    }
+
+    private List<SampleChunk> swapSpilled(SampleChunk[] chunks) {
+        if (pendingSpills.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<SampleChunk> replaced = new ArrayList<>();
+        for (Iterator<ColdTier.Spill> it = pendingSpills.iterator(); it.hasNext(); ) {
+            ColdTier.Spill spill = it.next();
+            SampleChunk cold = spill.result();
+            if (cold == null) {
+                continue;
+            }
+            it.remove();
+            if (cold == spill.source) {
+                continue; // Not written; the chunk stays in memory.
+            }
+            int c = indexOf(chunks, spill.source);
+            if (c < 0) {
+                cold.release(); // Merged or expired while it was written.
+            } else {
+                chunks[c] = cold;
+                replaced.add(spill.source);
+            }
+        }
+        return replaced;
+    }
+
+    private boolean isSpilling(SampleChunk chunk) {
+        for (ColdTier.Spill spill : pendingSpills) {
+            if (spill.source == chunk) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(SampleChunk[] chunks, SampleChunk chunk) {
+        long first = chunk.firstTimestamp();
+        for (int c = lastChunkStartingAtOrBefore(chunks, first); c >= 0 && chunks[c].firstTimestamp() == first; c--) {
+            if (chunks[c] == chunk) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private void bufferLate(View current, long timestamp, double value) {
+        long[] timestamps = current.lateTimestamps;
+        double[] values = current.lateValues;
+        int count = timestamps.length;
+        int index = upperBound(timestamps, timestamp);
+        long[] grownTimestamps = new long[count + 1];
+        double[] grownValues = new double[count + 1];
+        System.arraycopy(timestamps, 0, grownTimestamps, 0, index);
+        System.arraycopy(values, 0, grownValues, 0, index);
+        grownTimestamps[index] = timestamp;
+        grownValues[index] = value;
+        System.arraycopy(timestamps, index, grownTimestamps, index + 1, count - index);
+        System.arraycopy(values, index, grownValues, index + 1, count - index);
+        if (count + 1 >= LATE_BATCH_SIZE) {
+            mergeLate(current.chunks, grownTimestamps, grownValues, NO_TIMESTAMPS, NO_VALUES);
+        } else {
+            view = new View(current.index, grownTimestamps, grownValues);
+        }
+    }
+
+    /**
+     * Merges the buffered late samples into the chunks. Called before
+     * operations that work on the chunks alone.
+     */
+    private void flushLate() {
+        View current = view;
+        if (current.lateTimestamps.length > 0) {
+            mergeLate(current.chunks, current.lateTimestamps, current.lateValues, NO_TIMESTAMPS, NO_VALUES);
+        }
+    }
+
+    /**
+     * Merges sorted late samples into the chunks they belong to and publishes
+     * the result together with the given late buffer. Every affected chunk is
+     * rewritten once, split into evenly filled chunks if it overflows, and
+     * sealed again unless it is the tail.
+     */
+    private void mergeLate(SampleChunk[] current, long[] timestamps, double[] values,
+                           long[] lateTimestamps, double[] lateValues) {
+        int first = Math.max(lastChunkStartingAtOrBefore(current, timestamps[0]), 0);
+        List<SampleChunk> updated = new ArrayList<>(current.length + 2);
+        updated.addAll(Arrays.asList(current).subList(0, first));
+        List<SampleChunk> replaced = new ArrayList<>();
+        int next = 0;
+        for (int c = first; c < current.length; c++) {
+            SampleChunk chunk = current[c];
+            boolean isTail = c == current.length - 1;
+            int end = next;
+            if (isTail) {
+                end = timestamps.length;
+            } else {
+                long nextStart = current[c + 1].firstTimestamp();
+                while (end < timestamps.length && timestamps[end] < nextStart) {
+                    end++;
+                }
+            }
+            if (end == next) {
+                updated.add(chunk);
+                continue;
+            }
+            List<TimeSeriesChunk> pieces = mergeChunk(chunk, timestamps, values, next, end);
+            for (int p = 0; p < pieces.size(); p++) {
+                boolean staysMutable = isTail && p == pieces.size() - 1;
+                updated.add(staysMutable ? pieces.get(p) : seal(pieces.get(p)));
+            }
+            replaced.add(chunk);
+            next = end;
+        }
+        publish(updated.toArray(new SampleChunk[0]), lateTimestamps, lateValues);
+        spillScanFrom = Math.min(spillScanFrom, first); // Rewritten chunks may be old enough to spill again.
+        for (SampleChunk chunk : replaced) {
+            chunk.release();
+        }
+    }
+
+    private List<TimeSeriesChunk> mergeChunk(SampleChunk chunk, long[] timestamps, double[] values,
+                                             int from, int to) {
+        int total = chunk.size() + to - from;
+        int pieceCount = (total + chunkCapacity - 1) / chunkCapacity;
+        PieceBuilder pieces = new PieceBuilder(chunkCapacity, (total + pieceCount - 1) / pieceCount);
+        LateMerger merger = new LateMerger(timestamps, values, from, to, pieces);
+        chunk.scan(Long.MIN_VALUE, Long.MAX_VALUE, chunk.size(), merger);
+        merger.drain();
+        return pieces.pieces;
+    }
+
+    private void publish(SampleChunk[] updated) {
+        View current = view;
+        publish(updated, current.lateTimestamps, current.lateValues);
+    }
+
+    private void publish(SampleChunk[] updated, long[] lateTimestamps, double[] lateValues) {
+        view = new View(new ChunkStatsIndex(updated), lateTimestamps, lateValues);
+    }
+
+    private SampleChunk seal(SampleChunk chunk) {
+        ChunkStore store = options.chunkStore;
+        if (store == null || !(chunk instanceof TimeSeriesChunk)) {
+            return chunk;
+        }
+        return store.seal((TimeSeriesChunk) chunk);
+    }
+
+    /**
+     * Captures the current contents of the series without copying samples.
+     * Chunks never change below their captured size, so the result stays valid
+     * while the series keeps growing. Callers must not invoke this method
+     * concurrently with {@link #add}.
+     *
+     * @return an immutable view of the series
+     */
+    Frozen freeze() {
+        flushLate();
+        SampleChunk[] snapshot = view.chunks;
+        int[] sizes = new int[snapshot.length];
+        for (int c = 0; c < snapshot.length; c++) {
+            sizes[c] = snapshot[c].size();
+        }
+        return new Frozen(recordTypeCode, snapshot, sizes);
+    }
+
+    /**
+     * Point-in-time view of a series, see {@link #freeze()}.
+     */
+    static final class Frozen {
+        final int recordTypeCode;
+        final SampleChunk[] chunks;
+        final int[] sizes;
+
+        private Frozen(int recordTypeCode, SampleChunk[] chunks, int[] sizes) {
+            this.recordTypeCode = recordTypeCode;
+            this.chunks = chunks;
+            this.sizes = sizes;
+        }
+
+        long sampleCount() {
+            long count = 0;
+            for (int size : sizes) {
+                count += size;
+            }
+            return count;
+        }
+
+        void forEach(RecordVisitor visitor) {
+            for (int c = 0; c < chunks.length; c++) {
+                chunks[c].scan(Long.MIN_VALUE, Long.MAX_VALUE, sizes[c], visitor);
+            }
+        }
+    }
+
+    /**
+     * Drops every chunk whose samples are all older than the retention window
+     * measured back from {@code now}, and moves chunks that left the hot
+     * window to the cold tier if there is one. Used to expire series that
+     * stopped receiving data. Callers must not invoke this method concurrently with
+     * {@link #add}.
+     *
+     * @param now the reference time, in milliseconds since UNIX epoch
+     * @return the number of samples that were dropped
+     */
+    long evictExpired(long now) {
+        flushLate();
+        SampleChunk[] current = view.chunks;
+        long cutoff = retentionCutoff(now);
+        int keepFrom = firstRetainedChunk(current, cutoff);
+        evictRollups(cutoff);
+        SampleChunk[] kept = Arrays.copyOfRange(current, keepFrom, current.length);
+        raiseRetentionFloor(current, keepFrom);
+        spillScanFrom = Math.max(spillScanFrom - keepFrom, 0);
+        List<SampleChunk> spilled = spillCold(kept, now);
+        if (keepFrom == 0 && spilled.isEmpty()) {
+            return 0;
+        }
+        long dropped = countSamples(current, 0, keepFrom);
+        publish(kept);
+        size = size - dropped;
+        release(current, 0, keepFrom);
+        spilled.forEach(SampleChunk::release);
+        return dropped;
+    }
+
+    private long retentionCutoff(long newestTimestamp) {
+        long retention = options.retentionPolicy.getRetentionMillis(recordTypeCode);
+        if (retention == RetentionPolicy.UNLIMITED || newestTimestamp < Long.MIN_VALUE + retention) {
+            return Long.MIN_VALUE;
+        }
+        return newestTimestamp - retention;
+    }
+
+    private void evictRollups(long cutoff) {
+        RollupTier[] tiers = rollups;
+        if (cutoff != Long.MIN_VALUE && tiers != null) {
+            for (RollupTier tier : tiers) {
+                tier.evict(cutoff);
+            }
+        }
+    }
+
+    private void raiseRetentionFloor(SampleChunk[] chunks, int keepFrom) {
+        if (keepFrom > 0) {
+            retentionFloor = Math.max(retentionFloor, chunks[keepFrom - 1].lastTimestamp());
+        }
+    }
+
+    private static int firstRetainedChunk(SampleChunk[] chunks, long cutoff) {
+        return cutoff == Long.MIN_VALUE ? 0 : firstChunkEndingAtOrAfter(chunks, cutoff);
+    }
+
+    private static long countSamples(SampleChunk[] chunks, int from, int to) {
+        long count = 0;
+        for (int c = from; c < to; c++) {
+            count += chunks[c].size();
+        }
+        return count;
+    }
+
+    private static void release(SampleChunk[] chunks, int from, int to) {
+        for (int c = from; c < to; c++) {
+            chunks[c].release();
+        }
+    }
+
+    /**
+     * Adds every sample with a timestamp in {@code [startTime, endTime]} to
+     * {@code out} as a {@link PatientRecord}, in time order. Safe to call while
+     * another thread is adding samples.
+     *
+     * @param patientId the patient the records belong to
+     * @param startTime the start of the time range, inclusive
+     * @param endTime   the end of the time range, inclusive
+     * @param out       the list receiving the records
+     */
+    void collect(int patientId, long startTime, long endTime, List<PatientRecord> out) {
+        scan(startTime, endTime,
+                (timestamp, value) -> out.add(new PatientRecord(patientId, value, recordTypeCode, timestamp)));
+    }
+
+    /**
+     * Visits every sample with a timestamp in {@code [startTime, endTime]}, in
+     * time order. Safe to call while another thread is adding samples.
+     *
+     * @param startTime the start of the time range, inclusive
+     * @param endTime   the end of the time range, inclusive
+     * @param visitor   receives the samples
+     */
+    void scan(long startTime, long endTime, RecordVisitor visitor) {
+        if (startTime > endTime) {
+            return;
+        }
+        View snapshot = view;
+        int lateFrom = lowerBound(snapshot.lateTimestamps, startTime);
+        int lateTo = upperBound(snapshot.lateTimestamps, endTime);
+        LateMerger merger = null;
+        if (lateFrom < lateTo) {
+            merger = new LateMerger(snapshot.lateTimestamps, snapshot.lateValues, lateFrom, lateTo, visitor);
+            visitor = merger;
+        }
+        SampleChunk[] chunks = snapshot.chunks;
+        for (int c = firstChunkEndingAtOrAfter(chunks, startTime); c < chunks.length; c++) {
+            SampleChunk chunk = chunks[c];
+            if (chunk.firstTimestamp() > endTime) {
+                break;
+            }
+            chunk.scan(startTime, endTime, chunk.size(), visitor);
+        }
+        if (merger != null) {
+            merger.drain();
+        }
+    }
+
+    /**
+     * Returns the count, min, max and sum of the samples with a timestamp in
+     * {@code [startTime, endTime]}. Chunks lying wholly inside the range are
+     * answered from the {@link ChunkStatsIndex} in O(log n); only the two
+     * chunks at the edges of the range and the late buffer are scanned. Safe
+     * to call while another thread is adding samples.
+     *
+     * @param startTime the start of the time range, inclusive
+     * @param endTime   the end of the time range, inclusive
+     * @return the statistics of the range
+     */
+    RecordStats stats(long startTime, long endTime) {
+        if (startTime > endTime) {
+            return RecordStats.EMPTY;
+        }
+        View snapshot = view;
+        ChunkStatsIndex index = snapshot.index;
+        ChunkStatsIndex.Accumulator accumulator = new ChunkStatsIndex.Accumulator();
+        int first = firstChunkEndingAtOrAfter(snapshot.chunks, startTime);
+        int last = lastChunkStartingAtOrBefore(snapshot.chunks, endTime);
+        if (first <= last) {
+            addEdgeChunk(index, first, startTime, endTime, accumulator);
+            if (last > first) {
+                index.accumulate(first + 1, last, accumulator);
+                addEdgeChunk(index, last, startTime, endTime, accumulator);
+            }
+        }
+        int lateTo = upperBound(snapshot.lateTimestamps, endTime);
+        for (int i = lowerBound(snapshot.lateTimestamps, startTime); i < lateTo; i++) {
+            accumulator.visit(snapshot.lateTimestamps[i], snapshot.lateValues[i]);
+        }
+        return accumulator.toStats();
+    }
+
+    private static void addEdgeChunk(ChunkStatsIndex index, int chunkIndex, long startTime, long endTime,
+                                     ChunkStatsIndex.Accumulator accumulator) {
+        SampleChunk chunk = index.chunks[chunkIndex];
+        if (index.isSealed(chunkIndex) && chunk.firstTimestamp() >= startTime && chunk.lastTimestamp() <= endTime) {
+            accumulator.add(chunk.stats());
+        } else {
+            chunk.scan(startTime, endTime, chunk.size(), accumulator);
+        }
+    }
+
+    /**
+     * Summarizes the samples in buckets of {@code resolution} milliseconds,
+     * aligned to multiples of the resolution since the epoch. Every bucket
+     * overlapping {@code [startTime, endTime]} is reported whole, and empty
+     * buckets are skipped. The coarsest rollup tier whose width divides the
+     * resolution is read; raw samples are only scanned when no tier fits.
+     *
+     * @param startTime  the start of the time range, inclusive
+     * @param endTime    the end of the time range, inclusive
+     * @param resolution the bucket width, in milliseconds
+     * @param out        the list receiving the buckets, in time order
+     */
+    void rollup(long startTime, long endTime, long resolution, List<RollupBucket> out) {
+        if (startTime > endTime) {
+            return;
+        }
+        long from = RollupTier.bucketStart(startTime, resolution);
+        long lastStart = RollupTier.bucketStart(endTime, resolution);
+        long to = lastStart > Long.MAX_VALUE - resolution ? Long.MAX_VALUE : lastStart + resolution - 1;
+        RollupTier tier = null;
+        RollupTier[] tiers = rollups;
+        for (RollupTier candidate : tiers == null ? NO_ROLLUPS : tiers) {
+            if (resolution % candidate.width() == 0
+                    && (tier == null || candidate.width() > tier.width())) {
+                tier = candidate;
+            }
+        }
+        RollupTier.Resampler resampler = new RollupTier.Resampler(resolution, out);
+        if (tier != null) {
+            tier.scan(from, to, resampler);
+        } else {
+            scan(from, to, (timestamp, value) -> resampler.accept(timestamp, 1, value, value, value));
+        }
+        resampler.finish();
+    }
+
+    private static int firstChunkEndingAtOrAfter(SampleChunk[] chunks, long timestamp) {
+        int low = 0;
+        int high = chunks.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunks[mid].lastTimestamp() < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int lastChunkStartingAtOrBefore(SampleChunk[] chunks, long timestamp) {
+        int low = 0;
+        int high = chunks.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunks[mid].firstTimestamp() <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    private static int lowerBound(long[] timestamps, long timestamp) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(long[] timestamps, long timestamp) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The state readers see: the chunks with their statistics index, and the
+     * sorted late samples not merged into the chunks yet. Published through a
+     * single volatile field so both always match.
+     */
+    private static final class View {
+        static final View EMPTY = new View(ChunkStatsIndex.EMPTY, NO_TIMESTAMPS, NO_VALUES);
+
+        final ChunkStatsIndex index;
+        final SampleChunk[] chunks;
+        final long[] lateTimestamps;
+        final double[] lateValues;
+
+        View(ChunkStatsIndex index, long[] lateTimestamps, double[] lateValues) {
+            this.index = index;
+            this.chunks = index.chunks;
+            this.lateTimestamps = lateTimestamps;
+            this.lateValues = lateValues;
+        }
+    }
+
+    /**
+     * Interleaves a sorted run of late samples with the samples of a scan.
+     * A late sample goes after stored samples with the same timestamp, both
+     * when queries merge the late buffer and when the buffer is written into
+     * the chunks.
+     */
+    private static final class LateMerger implements RecordVisitor {
+        private final long[] timestamps;
+        private final double[] values;
+        private final int to;
+        private final RecordVisitor target;
+        private int next;
+
+        LateMerger(long[] timestamps, double[] values, int from, int to, RecordVisitor target) {
+            this.timestamps = timestamps;
+            this.values = values;
+            this.next = from;
+            this.to = to;
+            this.target = target;
+        }
+
+        @Override
+        public void visit(long timestamp, double value) {
+            while (next < to && timestamps[next] < timestamp) {
+                target.visit(timestamps[next], values[next]);
+                next++;
+            }
+            target.visit(timestamp, value);
+        }
+
+        void drain() {
+            while (next < to) {
+                target.visit(timestamps[next], values[next]);
+                next++;
+            }
+        }
+    }
+
+    /**
+     * Cuts a sorted stream of samples into new on-heap chunks holding
+     * {@code pieceSize} samples each, except possibly the last.
+     */
+    private static final class PieceBuilder implements RecordVisitor {
+        final List<TimeSeriesChunk> pieces = new ArrayList<>(2);
+        private final int capacity;
+        private final int pieceSize;
+        private TimeSeriesChunk current;
+
+        PieceBuilder(int capacity, int pieceSize) {
+            this.capacity = capacity;
+            this.pieceSize = pieceSize;
+        }
+
+        @Override
+        public void visit(long timestamp, double value) {
+            if (current == null || current.size() == pieceSize) {
+                current = new TimeSeriesChunk(capacity);
+                pieces.add(current);
+            }
+            current.append(timestamp, value);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.data_management;
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A fixed-capacity, on-heap block of samples belonging to one {@link TimeSeries}.
+ * Timestamps and measurement values are kept in parallel primitive arrays
+ * sorted by timestamp, so a chunk costs two array headers instead of one
+ * object per sample and can be searched with a binary search.
+ *
+ * <p>A chunk is written by a single thread at a time and read without locks.
+ * The only in-place mutation is {@link #append}, which stores the sample before
+ * publishing the new size through a volatile write, so a reader that reads the
+ * size first always sees fully written samples. Late samples are merged into
+ * new chunks by the owning series.
+ */
+final class TimeSeriesChunk extends SampleChunk {
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final long[] timestamps;
+    private final double[] values;
+    private volatile int size;
+
+    /**
+     * Creates an empty chunk able to hold {@code capacity} samples.
+     *
+     * @param capacity the maximum number of samples in this chunk
+     */
+    TimeSeriesChunk(int capacity) {
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    /**
+     * Creates a full chunk over the given arrays, which must be sorted by
+     * timestamp, have the same length and not be modified afterwards.
+     */
+    TimeSeriesChunk(long[] timestamps, double[] values) {
+        this.timestamps = timestamps;
+        this.values = values;
+        this.size = timestamps.length;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return timestamps.length;
+    }
+
+    boolean isFull() {
+        return size == timestamps.length;
+    }
+
+    @Override
+    long timestampAt(int index) {
+        return timestamps[index];
+    }
+
+    @Override
+    double valueAt(int index) {
+        return values[index];
+    }
+
+    @Override
+    long firstTimestamp() {
+        return timestamps[0];
+    }
+
+    @Override
+    long lastTimestamp() {
+        return timestamps[size - 1];
+    }
+
+    /**
+     * Appends a sample whose timestamp is not older than {@link #lastTimestamp()}.
+     * The caller must make sure the chunk is not full.
+     */
+    void append(long timestamp, double value) {
+        int count = size;
+        timestamps[count] = timestamp;
+        values[count] = value;
+        size = count + 1;
+    }
+
+    @Override
+    int lowerBound(long timestamp, int limit) {
+        int low = 0;
+        int high = limit;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    int upperBound(long timestamp, int limit) {
+        int low = 0;
+        int high = limit;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    TimeSeriesChunk toHeap(int capacity) {
+        int count = size;
+        TimeSeriesChunk copy = new TimeSeriesChunk(capacity);
+        System.arraycopy(timestamps, 0, copy.timestamps, 0, count);
+        System.arraycopy(values, 0, copy.values, 0, count);
+        copy.size = count;
+        return copy;
+    }
+
+    /**
+     * Bulk-copies the samples of this chunk into the given buffers, used by
+     * chunk stores that seal it.
+     */
+    void copyTo(LongBuffer timestampsOut, DoubleBuffer valuesOut) {
+        int count = size;
+        timestampsOut.put(timestamps, 0, count);
+        valuesOut.put(values, 0, count);
+    }
+}
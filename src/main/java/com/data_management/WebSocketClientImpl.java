@@ -1,30 +1,107 @@
 package com.data_management;
 
+import com.data_codec.BinaryRecordCodec;
+import com.data_codec.RecordCodec;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.handshake.ServerHandshake;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of a WebSocket client that connects to a WebSocket server to receive real-time data.
- * This class parses incoming messages and stores the parsed information in the DataStorage.
+ * Incoming messages are handed to an {@link IngestPipeline}, whose workers parse them and store the
+ * parsed information in the DataStorage, so storage contention never stalls the socket's I/O thread.
  */
 public class WebSocketClientImpl extends WebSocketClient implements DataReader {
+    private static final ThreadLocal<RecordCodec> CODEC =
+            ThreadLocal.withInitial(() -> new RecordCodec(RecordCodec.Layout.STREAM_CSV));
+    private static final ThreadLocal<RecordBatch> BATCH = ThreadLocal.withInitial(() -> new RecordBatch(256));
 
-    private DataStorage dataStorage;
+    private final IngestPipeline pipeline;
+    private final boolean ownsPipeline;
+    private volatile boolean reconnecting; // The library closes the old connection through close() on reconnect.
+    private volatile BinaryRecordCodec.Encoding confirmedEncoding; // null until the connection is open
     private CountDownLatch connectionLatch = new CountDownLatch(1); // Used to wait for the connection to be established
 
     /**
-     * Constructs a WebSocketClientImpl with the specified server URI and data storage.
+     * Constructs a WebSocketClientImpl with the specified server URI and data storage. The client
+     * creates its own pipeline, which outlives reconnects and is closed by {@link #close()}, after
+     * the messages received so far are stored.
      *
      * @param serverUri the URI of the WebSocket server
      * @param dataStorage the storage where data will be stored
      */
     public WebSocketClientImpl(URI serverUri, DataStorage dataStorage) {
-        super(serverUri);
-        this.dataStorage = dataStorage;
+        this(serverUri, new IngestPipeline(dataStorage, RecordCodec.Layout.STREAM_CSV), 0, true);
+    }
+
+    /**
+     * Constructs a WebSocketClientImpl that hands received messages to the given pipeline, for
+     * example one with a different queue size, worker count or overflow policy. The pipeline
+     * must parse the {@link RecordCodec.Layout#STREAM_CSV} layout and is not closed with the
+     * connection, so it can outlive reconnects.
+     *
+     * @param serverUri the URI of the WebSocket server
+     * @param pipeline the pipeline that parses and stores received messages
+     */
+    public WebSocketClientImpl(URI serverUri, IngestPipeline pipeline) {
+        this(serverUri, pipeline, 0);
+    }
+
+    /**
+     * Constructs a WebSocketClientImpl that hands received messages to the given pipeline and gives
+     * up connecting after a timeout, so an unreachable server is noticed and can be retried.
+     *
+     * @param serverUri the URI of the WebSocket server
+     * @param pipeline the pipeline that parses and stores received messages
+     * @param connectTimeoutMillis the connect timeout in milliseconds, or 0 to wait indefinitely
+     */
+    public WebSocketClientImpl(URI serverUri, IngestPipeline pipeline, int connectTimeoutMillis) {
+        this(serverUri, pipeline, connectTimeoutMillis, false);
+    }
+
+    private WebSocketClientImpl(URI serverUri, IngestPipeline pipeline, int connectTimeoutMillis,
+                                boolean ownsPipeline) {
+        super(serverUri, new Draft_6455(), null, connectTimeoutMillis);
+        this.pipeline = pipeline;
+        this.ownsPipeline = ownsPipeline;
+    }
+
+    /**
+     * Returns the pipeline received messages are handed to, e.g. to monitor its queue depth and
+     * dropped frames.
+     *
+     * @return the ingest pipeline
+     */
+    public IngestPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Asks the server for an encoding of the records during the handshake, so
+     * must be called before connecting. A server that does not support it
+     * keeps sending text, which is always accepted.
+     *
+     * @param encoding the encoding to ask for
+     */
+    public void requestEncoding(BinaryRecordCodec.Encoding encoding) {
+        addHeader(BinaryRecordCodec.ENCODING_HEADER, encoding.headerValue());
+    }
+
+    /**
+     * Returns the encoding the server confirmed in its handshake response,
+     * which is the one it sends records in. A server that does not know the
+     * {@link BinaryRecordCodec#ENCODING_HEADER} confirms nothing and sends
+     * text.
+     *
+     * @return the confirmed encoding, or {@code null} before the connection is open
+     */
+    public BinaryRecordCodec.Encoding getConfirmedEncoding() {
+        return confirmedEncoding;
     }
 
     /**
@@ -34,18 +111,32 @@ public class WebSocketClientImpl extends WebSocketClient implements DataReader {
      */
     @Override
     public void onOpen(ServerHandshake handshakedata) {
+        confirmedEncoding = BinaryRecordCodec.Encoding.fromHeader(
+                handshakedata.getFieldValue(BinaryRecordCodec.ENCODING_HEADER));
         System.out.println("Connected to WebSocket server.");
         connectionLatch.countDown(); // Notify that the connection is established
     }
 
     /**
-     * Called when a message is received from the WebSocket server.
+     * Called when a message is received from the WebSocket server. The message is only queued;
+     * it is parsed and stored by the pipeline's workers.
      *
      * @param message the received message
      */
     @Override
     public void onMessage(String message) {
-        handleData(message, dataStorage);
+        pipeline.submit(message);
+    }
+
+    /**
+     * Called when a binary frame of records is received from the WebSocket server, after the
+     * client asked for a binary encoding. The frame is only queued, like a text message.
+     *
+     * @param bytes the received frame
+     */
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        pipeline.submit(bytes);
     }
 
     /**
@@ -60,6 +151,39 @@ public class WebSocketClientImpl extends WebSocketClient implements DataReader {
         System.out.println("Disconnected from WebSocket server.");
     }
 
+    /**
+     * Closes the connection. A client that created its own pipeline closes it as well, on the
+     * calling thread, once the messages queued so far are stored; messages still in flight are
+     * counted as dropped, and the client cannot be reconnected afterwards.
+     */
+    @Override
+    public void close() {
+        super.close();
+        if (ownsPipeline && !reconnecting) {
+            pipeline.close();
+        }
+    }
+
+    @Override
+    public void reconnect() {
+        reconnecting = true;
+        try {
+            super.reconnect();
+        } finally {
+            reconnecting = false;
+        }
+    }
+
+    @Override
+    public boolean reconnectBlocking() throws InterruptedException {
+        reconnecting = true;
+        try {
+            return super.reconnectBlocking();
+        } finally {
+            reconnecting = false;
+        }
+    }
+
     /**
      * Called when an error occurs with the WebSocket connection.
      *
@@ -85,27 +209,49 @@ public class WebSocketClientImpl extends WebSocketClient implements DataReader {
     }
 
     /**
-     * Parses a single data entry and stores it in the data storage.
+     * Parses a message in the {@code patientId,timestamp,label,value} layout
+     * and stores it in the data storage on the calling thread, bypassing the
+     * pipeline. A message may hold several records
+     * separated by line breaks; they are stored as one
+     * {@link RecordBatch}.
      *
      * @param data the data entry to handle
      * @param dataStorage the storage where data will be stored
      */
     @Override
     public void handleData(String data, DataStorage dataStorage) {
-        String[] parts = data.split(",");
-        if (parts.length == 4) {
-            try {
-                int patientId = Integer.parseInt(parts[0]);
-                long timestamp = Long.parseLong(parts[1]);
-                String label = parts[2];
-                double value = Double.parseDouble(parts[3]);
-                dataStorage.addPatientData(patientId, value, label, timestamp);
-            } catch (NumberFormatException e) {
-                System.err.println("Failed to parse data: " + data);
-                e.printStackTrace();
+        store(data, dataStorage);
+    }
+
+    /**
+     * Parses a message as {@link #handleData} does, for other readers of the
+     * same layout.
+     */
+    static void store(String data, DataStorage dataStorage) {
+        RecordCodec codec = CODEC.get();
+        RecordBatch batch = BATCH.get();
+        try {
+            int lineStart = 0;
+            while (lineStart <= data.length()) {
+                int lineEnd = data.indexOf('\n', lineStart);
+                if (lineEnd < 0) {
+                    lineEnd = data.length();
+                }
+                if (codec.parse(data, lineStart, lineEnd)) {
+                    batch.add(codec.getPatientId(), codec.getRecordTypeCode(), codec.getValue(), codec.getTimestamp());
+                    if (batch.isFull()) {
+                        dataStorage.addBatch(batch);
+                        batch.clear();
+                    }
+                } else if (lineEnd > lineStart) {
+                    System.err.println("Failed to parse data (" + codec.getError() + "): "
+                            + data.substring(lineStart, lineEnd));
+                }
+                lineStart = lineEnd + 1;
             }
-        } else {
-            System.err.println("Invalid data format: " + data);
+            dataStorage.addBatch(batch);
+        } finally {
+            batch.clear();
         }
     }
 }
@@ -0,0 +1,377 @@
+package com.data_management;
+
+import com.data_codec.BinaryRecordCodec;
+import com.data_codec.RecordCodec;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps WebSocket connections to several simulators or gateways at once and
+ * merges their streams into one {@link IngestPipeline}. Every endpoint has its
+ * own {@link WebSocketClientImpl} and I/O thread, so a slow or dead endpoint
+ * does not hold up the others.
+ *
+ * <p>A connection that fails or drops is retried with exponential backoff,
+ * from the initial to the maximum delay, with random jitter so that endpoints
+ * lost together do not reconnect in lockstep. A successful connection resets
+ * the backoff. Each {@link Connection} reports its own message count,
+ * throughput and lag, i.e. the time since its last message.
+ *
+ * <pre>
+ * WebSocketIngestManager manager = new WebSocketIngestManager(Arrays.asList(
+ *         new URI("ws://ward-a:8080"), new URI("ws://ward-b:8080")));
+ * manager.readData(storage);
+ * for (WebSocketIngestManager.Connection connection : manager.getConnections()) {
+ *     System.out.println(connection.getUri() + ": " + connection.getLagMillis() + " ms behind");
+ * }
+ * </pre>
+ */
+public class WebSocketIngestManager implements DataReader, Closeable {
+    /** Default delay before the first reconnect attempt, in milliseconds. */
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+    /** Default upper bound of the reconnect delay, in milliseconds. */
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 30_000;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+
+    private final List<URI> endpoints;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final ScheduledExecutorService scheduler;
+    private volatile List<Connection> connections = Collections.emptyList();
+    private IngestPipeline pipeline;
+    private boolean ownsPipeline;
+    private BinaryRecordCodec.Encoding encoding = BinaryRecordCodec.Encoding.TEXT;
+    private volatile boolean closed;
+
+    /**
+     * Creates a manager for the given endpoints with the default backoff.
+     *
+     * @param endpoints the {@code ws://} URIs to connect to
+     */
+    public WebSocketIngestManager(Collection<URI> endpoints) {
+        this(endpoints, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a manager for the given endpoints.
+     *
+     * @param endpoints      the {@code ws://} URIs to connect to
+     * @param initialBackoff the delay before the first reconnect attempt
+     * @param maxBackoff     the upper bound of the reconnect delay
+     * @param unit           the unit of both delays
+     */
+    public WebSocketIngestManager(Collection<URI> endpoints, long initialBackoff, long maxBackoff, TimeUnit unit) {
+        if (endpoints.isEmpty() || initialBackoff <= 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("Invalid endpoints or backoff settings");
+        }
+        this.endpoints = new ArrayList<>(endpoints);
+        this.initialBackoffMillis = unit.toMillis(initialBackoff);
+        this.maxBackoffMillis = unit.toMillis(maxBackoff);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websocket-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the record encoding asked from every endpoint when the manager is
+     * started. Endpoints that do not support it keep sending text.
+     *
+     * @param encoding the encoding to ask for
+     */
+    public synchronized void setEncoding(BinaryRecordCodec.Encoding encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Connects to every endpoint through a pipeline with one worker per
+     * endpoint, up to the number of processors. The pipeline drops its oldest
+     * frames when the storage falls behind, so a full queue never stalls the
+     * endpoints' I/O threads; dropped frames are counted by the pipeline.
+     * Returns without waiting for the connections; unreachable endpoints are
+     * retried in the background.
+     *
+     * @param dataStorage the storage where data will be stored
+     */
+    @Override
+    public synchronized void readData(DataStorage dataStorage) {
+        int workers = Math.max(1, Math.min(endpoints.size(), Runtime.getRuntime().availableProcessors()));
+        start(new IngestPipeline(dataStorage, RecordCodec.Layout.STREAM_CSV,
+                IngestPipeline.DEFAULT_CAPACITY, workers, IngestPipeline.OverflowPolicy.DROP_OLDEST));
+        ownsPipeline = true;
+    }
+
+    /**
+     * Connects to every endpoint, handing all received messages to the given
+     * pipeline. The pipeline is not closed with the manager. All endpoints
+     * share its queue, so a pipeline that waits for room, such as one with
+     * the {@link IngestPipeline.OverflowPolicy#BLOCK} policy, holds up every
+     * endpoint at once while the queue is full.
+     *
+     * @param pipeline the pipeline parsing the {@code patientId,timestamp,label,value} messages
+     */
+    public synchronized void start(IngestPipeline pipeline) {
+        if (closed || !connections.isEmpty()) {
+            throw new IllegalStateException("Manager is already started or closed");
+        }
+        this.pipeline = pipeline;
+        List<Connection> started = new ArrayList<>();
+        for (URI endpoint : endpoints) {
+            started.add(new Connection(endpoint, pipeline));
+        }
+        connections = Collections.unmodifiableList(started);
+        for (Connection connection : connections) {
+            if (encoding != BinaryRecordCodec.Encoding.TEXT) {
+                connection.client.requestEncoding(encoding);
+            }
+            connection.client.connect();
+        }
+        scheduler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Parses a message in the {@code patientId,timestamp,label,value} layout
+     * and stores it in the data storage on the calling thread.
+     *
+     * @param data        the data entry to handle
+     * @param dataStorage the storage where data will be stored
+     */
+    @Override
+    public void handleData(String data, DataStorage dataStorage) {
+        WebSocketClientImpl.store(data, dataStorage);
+    }
+
+    /**
+     * Returns the connections, one per endpoint in the order given to the
+     * constructor. Empty until the manager is started.
+     *
+     * @return the connections
+     */
+    public synchronized List<Connection> getConnections() {
+        return connections;
+    }
+
+    /**
+     * Returns the pipeline all connections hand their messages to.
+     *
+     * @return the pipeline, or {@code null} if the manager is not started
+     */
+    public synchronized IngestPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Closes every connection and stops reconnecting. If the pipeline was
+     * created by {@link #readData}, it is closed too, which waits until all
+     * received messages are stored.
+     */
+    @Override
+    public void close() {
+        List<Connection> open;
+        IngestPipeline owned;
+        synchronized (this) {
+            closed = true;
+            open = connections;
+            owned = ownsPipeline ? pipeline : null;
+        }
+        scheduler.shutdownNow();
+        for (Connection connection : open) {
+            try {
+                connection.client.closeBlocking();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (owned != null) {
+            owned.close();
+        }
+    }
+
+    private void sample() {
+        for (Connection connection : connections) {
+            connection.sample();
+        }
+    }
+
+    /**
+     * The state and statistics of the connection to one endpoint.
+     */
+    public final class Connection {
+        private final URI uri;
+        private final Client client;
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder reconnects = new LongAdder();
+        private final long startMillis = System.currentTimeMillis();
+        private volatile long lastMessageMillis;
+        private volatile double messagesPerSecond;
+        private volatile String lastError;
+        private final AtomicInteger failedAttempts = new AtomicInteger(); // Reset on open, raised on failures.
+        private long sampledMessages; // Only touched by the scheduler.
+        private long sampledMillis = startMillis; // Only touched by the scheduler.
+
+        private Connection(URI uri, IngestPipeline pipeline) {
+            this.uri = uri;
+            this.client = new Client(this, pipeline);
+        }
+
+        public URI getUri() {
+            return uri;
+        }
+
+        public boolean isConnected() {
+            return client.isOpen();
+        }
+
+        /**
+         * Returns the number of messages received over all connects.
+         *
+         * @return the message count
+         */
+        public long getMessagesReceived() {
+            return messages.sum();
+        }
+
+        /**
+         * Returns the throughput over the last sampling interval of one
+         * second.
+         *
+         * @return the messages received per second
+         */
+        public double getMessagesPerSecond() {
+            return messagesPerSecond;
+        }
+
+        /**
+         * Returns how long the endpoint has been silent: the time since its
+         * last message, or since the manager started if it has sent none.
+         *
+         * @return the lag, in milliseconds
+         */
+        public long getLagMillis() {
+            long last = lastMessageMillis;
+            return System.currentTimeMillis() - (last == 0 ? startMillis : last);
+        }
+
+        /**
+         * Returns the number of reconnect attempts made so far.
+         *
+         * @return the reconnect count
+         */
+        public long getReconnectCount() {
+            return reconnects.sum();
+        }
+
+        /**
+         * Returns the message of the last connection error.
+         *
+         * @return the error message, or {@code null} if there was none
+         */
+        public String getLastError() {
+            return lastError;
+        }
+
+        private void received() {
+            messages.increment();
+            lastMessageMillis = System.currentTimeMillis();
+        }
+
+        private void sample() {
+            long now = System.currentTimeMillis();
+            long count = messages.sum();
+            if (now > sampledMillis) {
+                messagesPerSecond = (count - sampledMessages) * 1000.0 / (now - sampledMillis);
+            }
+            sampledMessages = count;
+            sampledMillis = now;
+        }
+
+        private void scheduleReconnect() {
+            if (closed) {
+                return;
+            }
+            int shift = Math.min(failedAttempts.getAndIncrement(), 30);
+            long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << shift);
+            long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            try {
+                scheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The manager was closed in the meantime.
+            }
+        }
+
+        private void reconnect() {
+            if (closed) {
+                return;
+            }
+            reconnects.increment();
+            try {
+                // Must not run on the client's own threads, hence the scheduler.
+                client.reconnect();
+            } catch (RuntimeException e) {
+                lastError = e.getMessage();
+                scheduleReconnect();
+            }
+        }
+    }
+
+    /**
+     * Client for one endpoint, reporting its events to its connection.
+     */
+    private static final class Client extends WebSocketClientImpl {
+        private final Connection connection;
+
+        Client(Connection connection, IngestPipeline pipeline) {
+            super(connection.uri, pipeline, CONNECT_TIMEOUT_MILLIS);
+            this.connection = connection;
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshakedata) {
+            super.onOpen(handshakedata);
+            connection.failedAttempts.set(0);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            connection.received();
+            super.onMessage(message);
+        }
+
+        @Override
+        public void onMessage(ByteBuffer bytes) {
+            connection.received();
+            super.onMessage(bytes);
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            System.out.println("Disconnected from " + connection.uri + " (" + code + "): " + reason);
+            connection.scheduleReconnect();
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            // Errors repeat on every failed reconnect, so keep them to one line.
+            connection.lastError = ex.getMessage();
+            System.err.println("WebSocket error on " + connection.uri + ": " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Append-only binary log of every sample written to a {@link DataStorage}.
+ * The log is split into numbered segment files ({@code wal-<n>.log}); a new
+ * segment is started at every checkpoint so older segments can be deleted
+ * once a snapshot covers them.
+ *
+ * <p>Each appending thread copies its entries into a buffer of its own, so
+ * threads writing different patients never wait for each other. A full
+ * buffer is swapped for an empty one and written to the file as a whole, and
+ * a background thread writes every buffer and forces the file to disk every
+ * sync interval, so many appends share one write and one fsync.
+ *
+ * <p>Each segment holds two kinds of entries: a type entry that binds a
+ * record type code to its label, and a sample entry. Every buffer written to
+ * the file starts the type entries of the codes it uses afresh, so buffers of
+ * different threads can reach the file in any order. Because labels are
+ * stored in the log, codes can be remapped on recovery even if the registry
+ * assigns them differently. Buffers of different threads are not ordered,
+ * so the entries of one patient may appear out of sequence order.
+ */
+final class WriteAheadLog implements Closeable {
+    static final byte SAMPLE_ENTRY = 1;
+    static final byte TYPE_ENTRY = 2;
+    static final int SAMPLE_ENTRY_SIZE = 1 + 4 + 2 + 8 + 8 + 8;
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Receives the samples read back from a log segment.
+     */
+    interface Replay {
+        void sample(int patientId, int recordTypeCode, long timestamp, double value, long sequence);
+    }
+
+    private final Path directory;
+    private final Queue<ThreadBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ThreadBuffer> localBuffer = ThreadLocal.withInitial(this::register);
+    private final ScheduledExecutorService syncer;
+    private FileChannel channel; // Guarded by this.
+    private long segment; // Guarded by this.
+    private volatile IOException failure;
+
+    /**
+     * Opens a new segment in {@code directory} and starts the background sync.
+     *
+     * @param directory          the directory holding the log segments
+     * @param segment            the number of the first segment to write
+     * @param syncIntervalMillis how often buffered entries are forced to disk
+     * @throws IOException if the segment cannot be created
+     */
+    WriteAheadLog(Path directory, long segment, long syncIntervalMillis) throws IOException {
+        this.directory = directory;
+        openSegment(segment);
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends one sample to the calling thread's buffer. The entry becomes
+     * durable at the next sync.
+     *
+     * @throws UncheckedIOException if an earlier write to the log failed
+     */
+    void append(int patientId, int recordTypeCode, long timestamp, double value, long sequence) {
+        IOException failed = failure;
+        if (failed != null) {
+            throw new UncheckedIOException("Failed to append to write-ahead log", failed);
+        }
+        ThreadBuffer local = localBuffer.get();
+        ByteBuffer full = local.append(patientId, recordTypeCode, timestamp, value, sequence);
+        if (full != null) {
+            write(local, full);
+        }
+    }
+
+    /**
+     * Writes every buffer to the current segment, closes it and starts the
+     * next one. Entries appended after this call go to the new segment.
+     *
+     * @return the number of the new segment
+     * @throws IOException if the current segment cannot be synced or the new one created
+     */
+    long roll() throws IOException {
+        writeBuffers();
+        synchronized (this) {
+            checkFailure();
+            channel.force(false);
+            channel.close();
+            openSegment(segment + 1);
+            return segment;
+        }
+    }
+
+    /**
+     * Writes all buffered entries and forces them to disk.
+     *
+     * @throws IOException if writing or syncing fails
+     */
+    void sync() throws IOException {
+        writeBuffers();
+        FileChannel current;
+        synchronized (this) {
+            checkFailure();
+            current = channel;
+        }
+        // Forcing outside the lock lets full buffers be written while the disk catches up.
+        try {
+            current.force(false);
+        } catch (ClosedChannelException e) {
+            // The segment was rolled or closed meanwhile, which forces it first.
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        syncer.shutdownNow();
+        writeBuffers();
+        synchronized (this) {
+            checkFailure();
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            failure = e;
+            System.err.println("Write-ahead log sync failed: " + e.getMessage());
+        }
+    }
+
+    private ThreadBuffer register() {
+        ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread());
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Writes the entries of every thread's buffer. Buffers of threads that
+     * ended are dropped once written.
+     */
+    private void writeBuffers() {
+        for (Iterator<ThreadBuffer> it = buffers.iterator(); it.hasNext(); ) {
+            ThreadBuffer buffer = it.next();
+            boolean ended = !buffer.owner.isAlive();
+            ByteBuffer entries = buffer.detach();
+            if (entries != null) {
+                write(buffer, entries);
+            }
+            if (ended) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes a detached buffer of complete entries to the current segment and
+     * hands it back to its owner for reuse. Failures are kept and reported
+     * by the next append or sync.
+     */
+    private void write(ThreadBuffer owner, ByteBuffer entries) {
+        synchronized (this) {
+            try {
+                while (entries.hasRemaining()) {
+                    channel.write(entries);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        owner.recycle(entries);
+    }
+
+    private void checkFailure() throws IOException {
+        IOException failed = failure;
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        segment = number;
+        channel = FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Entries appended by one thread and not yet written. The owner appends
+     * and the log detaches full or synced buffers, both under the buffer's
+     * own lock, which is therefore almost never contended.
+     */
+    private static final class ThreadBuffer {
+        final Thread owner;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE); // Guarded by this.
+        private ByteBuffer spare; // Guarded by this; a written buffer kept for reuse.
+        private boolean[] typesInBuffer = new boolean[0]; // Guarded by this.
+
+        ThreadBuffer(Thread owner) {
+            this.owner = owner;
+        }
+
+        /**
+         * Adds a sample entry, preceded by a type entry if the buffer has
+         * none for the code yet.
+         *
+         * @return the full buffer that was swapped out to make room, ready to
+         *         be written, or {@code null}
+         */
+        synchronized ByteBuffer append(int patientId, int recordTypeCode, long timestamp, double value,
+                                       long sequence) {
+            ByteBuffer full = null;
+            boolean typed = recordTypeCode < typesInBuffer.length && typesInBuffer[recordTypeCode];
+            byte[] label = typed ? null : RecordTypeRegistry.labelOf(recordTypeCode).getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < SAMPLE_ENTRY_SIZE + (typed ? 0 : 1 + 2 + 2 + label.length)) {
+                full = swap();
+                if (typed) {
+                    label = RecordTypeRegistry.labelOf(recordTypeCode).getBytes(StandardCharsets.UTF_8);
+                }
+            }
+            if (full != null || !typed) {
+                buffer.put(TYPE_ENTRY).putShort((short) recordTypeCode).putShort((short) label.length).put(label);
+                if (recordTypeCode >= typesInBuffer.length) {
+                    typesInBuffer = Arrays.copyOf(typesInBuffer,
+                            Math.max(recordTypeCode + 1, typesInBuffer.length * 2));
+                }
+                typesInBuffer[recordTypeCode] = true;
+            }
+            buffer.put(SAMPLE_ENTRY)
+                    .putInt(patientId)
+                    .putShort((short) recordTypeCode)
+                    .putLong(timestamp)
+                    .putDouble(value)
+                    .putLong(sequence);
+            return full;
+        }
+
+        /**
+         * Swaps out the buffered entries, if any.
+         *
+         * @return the entries, ready to be written, or {@code null}
+         */
+        synchronized ByteBuffer detach() {
+            return buffer.position() == 0 ? null : swap();
+        }
+
+        synchronized void recycle(ByteBuffer written) {
+            if (spare == null) {
+                written.clear();
+                spare = written;
+            }
+        }
+
+        private ByteBuffer swap() {
+            ByteBuffer full = buffer;
+            buffer = spare != null ? spare : ByteBuffer.allocate(BUFFER_SIZE);
+            spare = null;
+            Arrays.fill(typesInBuffer, false);
+            full.flip();
+            return full;
+        }
+    }
+
+    static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Lists the numbers of all segments in {@code directory}, in ascending order.
+     *
+     * @param directory the log directory
+     * @return the segment numbers
+     * @throws IOException if the directory cannot be listed
+     */
+    static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> segments.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    /**
+     * Reads every complete entry of a segment and hands the samples to
+     * {@code replay}. A truncated entry at the end of the file, left behind by
+     * a crash between two syncs, ends the replay of that segment.
+     *
+     * @param segmentFile the segment to read
+     * @param replay      receives the samples
+     * @return the number of samples replayed
+     * @throws IOException if the file cannot be read
+     */
+    static long replay(Path segmentFile, Replay replay) throws IOException {
+        long count = 0;
+        int[] codeMap = new int[0];
+        try (FileChannel in = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            ByteBuffer block = ByteBuffer.allocate(1024 * 1024);
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                endOfFile = in.read(block) < 0;
+                block.flip();
+                while (block.hasRemaining()) {
+                    int start = block.position();
+                    byte tag = block.get();
+                    if (tag == SAMPLE_ENTRY && block.remaining() >= SAMPLE_ENTRY_SIZE - 1) {
+                        int patientId = block.getInt();
+                        int fileCode = block.getShort();
+                        long timestamp = block.getLong();
+                        double value = block.getDouble();
+                        long sequence = block.getLong();
+                        replay.sample(patientId, codeMap[fileCode], timestamp, value, sequence);
+                        count++;
+                    } else if (tag == TYPE_ENTRY && block.remaining() >= 4
+                            && block.remaining() >= 4 + (block.getShort(start + 3) & 0xFFFF)) {
+                        int fileCode = block.getShort();
+                        byte[] label = new byte[block.getShort() & 0xFFFF];
+                        block.get(label);
+                        if (fileCode >= codeMap.length) {
+                            codeMap = Arrays.copyOf(codeMap, fileCode + 1);
+                        }
+                        codeMap[fileCode] = RecordTypeRegistry.codeOf(new String(label, StandardCharsets.UTF_8));
+                    } else if (tag == SAMPLE_ENTRY || tag == TYPE_ENTRY) {
+                        block.position(start); // Entry continues in the next block.
+                        break;
+                    } else {
+                        return count; // Zero-filled or torn tail.
+                    }
+                }
+                block.compact();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,171 @@
+package com.data_management;
+
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.data_codec.BinaryRecordCodec;
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryRecordCodecTest {
+
+    @Test
+    public void testPlainAndDeltaFramesRoundTrip() {
+        BinaryRecordCodec encoder = new BinaryRecordCodec(4);
+        encoder.add(1, 1714376789050L, "HeartRate", 72.5);
+        encoder.add(2, 1714376789000L, "Saturation", 97.0);
+        encoder.add(1, 1714376789100L, "HeartRate", 73.0);
+        encoder.add(-4, 1714376789200L, "Alert", 1.0);
+        assertTrue(encoder.isFull());
+        ByteBuffer plain = encoder.encode(false);
+        ByteBuffer delta = encoder.encode(true);
+        assertEquals(plain.remaining() - delta.remaining(), 4 * 4 - Long.BYTES);
+
+        for (ByteBuffer frame : new ByteBuffer[] {plain, delta}) {
+            DataStorage storage = new DataStorage();
+            BinaryRecordCodec decoder = new BinaryRecordCodec();
+            RecordBatch batch = new RecordBatch();
+            assertTrue(decoder.decode(frame, batch::add), decoder.getError());
+            storage.addBatch(batch);
+            assertEquals(4, decoder.getDecodedRecords());
+            assertEquals(0, frame.position());
+
+            List<PatientRecord> one = storage.getRecords(1, 0, Long.MAX_VALUE);
+            assertEquals(2, one.size());
+            assertEquals("HeartRate", one.get(0).getRecordType());
+            assertEquals(1714376789050L, one.get(0).getTimestamp());
+            assertEquals(73.0, one.get(1).getMeasurementValue());
+            assertEquals(97.0, storage.getRecords(2, 0, Long.MAX_VALUE).get(0).getMeasurementValue());
+            assertEquals("Alert", storage.getRecords(-4, 0, Long.MAX_VALUE).get(0).getRecordType());
+        }
+    }
+
+    @Test
+    public void testDeltaFallsBackToPlainForDistantTimestamps() {
+        BinaryRecordCodec encoder = new BinaryRecordCodec();
+        encoder.add(1, 0, "ECG", 0.5);
+        encoder.add(1, Integer.MAX_VALUE + 1L, "ECG", 0.6);
+        ByteBuffer frame = encoder.encode(true);
+        assertEquals(encoder.encode(false), frame);
+
+        DataStorage storage = new DataStorage();
+        RecordBatch batch = new RecordBatch();
+        assertTrue(new BinaryRecordCodec().decode(frame, batch::add));
+        storage.addBatch(batch);
+        assertEquals(Integer.MAX_VALUE + 1L, storage.getRecords(1, 0, Long.MAX_VALUE).get(1).getTimestamp());
+    }
+
+    @Test
+    public void testMalformedFramesAddNothing() {
+        BinaryRecordCodec encoder = new BinaryRecordCodec();
+        encoder.add(1, 100, "ECG", 0.5);
+        encoder.add(1, 200, "ECG", 0.6);
+        ByteBuffer frame = encoder.encode(false);
+        BinaryRecordCodec decoder = new BinaryRecordCodec();
+        RecordBatch batch = new RecordBatch();
+
+        ByteBuffer truncated = frame.duplicate();
+        truncated.limit(truncated.limit() - 1);
+        assertFalse(decoder.decode(truncated, batch::add));
+        assertEquals("Frame size does not match its record count", decoder.getError());
+
+        ByteBuffer badVersion = ByteBuffer.allocate(frame.remaining());
+        badVersion.put(frame.duplicate()).flip();
+        badVersion.put(0, (byte) 9);
+        assertFalse(decoder.decode(badVersion, batch::add));
+        assertFalse(decoder.decode(ByteBuffer.wrap(new byte[] {1, 0, 0}), batch::add));
+        assertEquals("Truncated frame", decoder.getError());
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void testFramesWithUnknownLabelsAreRejected() {
+        BinaryRecordCodec encoder = new BinaryRecordCodec();
+        encoder.add(1, 100, "ECG", 0.5);
+        encoder.add(1, 200, "FrameUnknownLabel", 0.6);
+        ByteBuffer frame = encoder.encode(false);
+        BinaryRecordCodec decoder = new BinaryRecordCodec();
+        RecordBatch batch = new RecordBatch();
+
+        assertFalse(decoder.decode(frame, batch::add));
+        assertEquals("Unknown record type", decoder.getError());
+        assertNull(decoder.labelCodes(frame));
+        assertEquals(RecordTypeRegistry.UNKNOWN, RecordTypeRegistry.lookup("FrameUnknownLabel"));
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void testSimulatorSendsEachClientTheEncodingItAskedFor() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(port, 64, 10);
+        output.start();
+        DataStorage textStorage = new DataStorage();
+        DataStorage binaryStorage = new DataStorage();
+        WebSocketClientImpl textClient = connect(port, textStorage, BinaryRecordCodec.Encoding.TEXT);
+        WebSocketClientImpl binaryClient = connect(port, binaryStorage, BinaryRecordCodec.Encoding.BINARY_DELTA);
+        try {
+            assertEquals(BinaryRecordCodec.Encoding.TEXT, textClient.getConfirmedEncoding());
+            assertEquals(BinaryRecordCodec.Encoding.BINARY_DELTA, binaryClient.getConfirmedEncoding());
+            // A client may see its connection open before the server registered it, so wait until both receive.
+            long deadline = System.currentTimeMillis() + 10_000;
+            while ((textStorage.getRecords(8, 0, Long.MAX_VALUE).isEmpty()
+                    || binaryStorage.getRecords(8, 0, Long.MAX_VALUE).isEmpty())
+                    && System.currentTimeMillis() < deadline) {
+                output.output(8, System.currentTimeMillis(), "Saturation", "95%");
+                Thread.sleep(20);
+            }
+            long warmUpFrames = binaryClient.getPipeline().getProcessedFrames();
+            for (int i = 0; i < 100; i++) {
+                output.output(7, 1000 + i, "Saturation", (90 + i % 10) + "%");
+            }
+            output.output(7, 2000, "Alert", "triggered");
+            deadline = System.currentTimeMillis() + 10_000;
+            while ((textStorage.getRecords(7, 0, Long.MAX_VALUE).size() < 101
+                    || binaryStorage.getRecords(7, 0, Long.MAX_VALUE).size() < 101)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            List<PatientRecord> text = textStorage.getRecords(7, 0, Long.MAX_VALUE);
+            List<PatientRecord> binary = binaryStorage.getRecords(7, 0, Long.MAX_VALUE);
+            assertEquals(101, text.size());
+            assertEquals(101, binary.size());
+            // Records reached the binary client packed into a few frames rather than one text frame each.
+            assertTrue(binaryClient.getPipeline().getProcessedFrames() - warmUpFrames < 10);
+            for (int i = 0; i < text.size(); i++) {
+                assertEquals(text.get(i).getTimestamp(), binary.get(i).getTimestamp());
+                assertEquals(text.get(i).getMeasurementValue(), binary.get(i).getMeasurementValue());
+                assertEquals(text.get(i).getRecordType(), binary.get(i).getRecordType());
+            }
+        } finally {
+            textClient.closeBlocking();
+            binaryClient.closeBlocking();
+            output.stop();
+        }
+    }
+
+    private static WebSocketClientImpl connect(int port, DataStorage storage, BinaryRecordCodec.Encoding encoding)
+            throws Exception {
+        // The server starts listening asynchronously, so retry until it accepts.
+        for (int attempt = 0; attempt < 50; attempt++) {
+            WebSocketClientImpl client = new WebSocketClientImpl(new URI("ws://localhost:" + port), storage);
+            client.requestEncoding(encoding);
+            if (client.connectBlocking()) {
+                return client;
+            }
+            Thread.sleep(100);
+        }
+        throw new IOException("Could not connect to port " + port);
+    }
+}
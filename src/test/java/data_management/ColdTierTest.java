@@ -0,0 +1,108 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColdTierTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testOldChunksAreReadBackFromDisk() throws Exception {
+        ColdTier tier = new ColdTier(directory, 1, TimeUnit.SECONDS, 4 * 16 * 8, 1024);
+        StorageOptions options = new StorageOptions();
+        options.coldTier = tier;
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 8, options);
+        for (int i = 0; i < 1000; i++) {
+            series.add(i * 10L, i);
+        }
+        tier.awaitSpills();
+        series.add(5, 0.5);
+        series.add(-10, -1);
+
+        assertTrue(tier.getSegmentCount() > 1);
+        assertEquals(1002, series.size());
+        List<PatientRecord> all = new ArrayList<>();
+        series.collect(1, Long.MIN_VALUE, Long.MAX_VALUE, all);
+        assertEquals(1002, all.size());
+        assertEquals(-10, all.get(0).getTimestamp());
+        assertEquals(5, all.get(2).getTimestamp());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getTimestamp() <= all.get(i).getTimestamp());
+        }
+        assertTrue(tier.getCachedBytes() <= 4 * 16 * 8);
+
+        RecordStats stats = series.stats(0, 4990);
+        assertEquals(501, stats.getCount());
+        assertEquals(499, stats.getMax());
+        tier.close();
+    }
+
+    @Test
+    public void testStorageSpillsIdleSeries() throws Exception {
+        DataStorage storage = new DataStorage();
+        ColdTier tier = new ColdTier(directory, 1, TimeUnit.MINUTES);
+        storage.setColdTier(tier);
+        for (int i = 0; i < 5000; i++) {
+            storage.addPatientData(4, i, "HeartRate", i * 1000L);
+        }
+        tier.awaitSpills();
+        assertEquals(1, tier.getSegmentCount());
+
+        // The first pass hands the idle chunks over, the second swaps them in.
+        storage.evictExpired(10_000_000L);
+        tier.awaitSpills();
+        storage.evictExpired(10_000_000L);
+        assertEquals(5000, storage.getRecords(4, 0, Long.MAX_VALUE).size());
+        long misses = tier.getCacheMisses();
+        assertEquals(1000, storage.getRecords(4, 0, 999_000L).size());
+        assertEquals(misses, tier.getCacheMisses());
+        assertTrue(tier.getCacheHits() > 0);
+        tier.close();
+    }
+
+    @Test
+    public void testRewrittenChunksAreSpilledAgainAndOldViewsStayReadable() throws Exception {
+        ColdTier tier = new ColdTier(directory, 1, TimeUnit.SECONDS, 16 * 8, 1024);
+        StorageOptions options = new StorageOptions();
+        options.coldTier = tier;
+        options.latenessMillis = 0;
+        options.retentionPolicy.setRetention(RecordTypeRegistry.ECG, 20, TimeUnit.SECONDS);
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 8, options);
+        for (int i = 0; i < 1000; i++) {
+            series.add(i * 10L, i);
+        }
+        tier.awaitSpills();
+        // Rewrites the first chunk, which lies behind other cold chunks.
+        series.add(5, 0.5);
+        series.evictExpired(9990);
+        tier.awaitSpills();
+        series.evictExpired(9990);
+        TimeSeries.Frozen old = series.freeze();
+        for (SampleChunk chunk : old.chunks) {
+            assertTrue(chunk.lastTimestamp() >= 8990 || chunk instanceof ColdTier.ColdChunk);
+        }
+
+        // Retention drops every chunk of the old view and deletes their segments.
+        for (int i = 0; i < 1000; i++) {
+            series.add(100_000L + i * 10L, i);
+        }
+        tier.awaitSpills();
+        List<Double> values = new ArrayList<>();
+        old.forEach((timestamp, value) -> values.add(value));
+        assertEquals(old.sampleCount(), values.size());
+        assertEquals(0.5, values.get(1));
+        tier.close();
+    }
+}
@@ -0,0 +1,81 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressedChunkStoreTest {
+
+    @Test
+    public void testRegularVitalsCompressWell() {
+        CompressedChunkStore store = new CompressedChunkStore();
+        StorageOptions options = new StorageOptions();
+        options.chunkStore = store;
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.SATURATION, TimeSeriesChunk.DEFAULT_CAPACITY, options);
+        Random random = new Random(42);
+        double saturation = 97;
+        for (int i = 0; i < 10 * TimeSeriesChunk.DEFAULT_CAPACITY; i++) {
+            if (random.nextInt(10) == 0) {
+                saturation = Math.max(90, Math.min(100, saturation + random.nextInt(3) - 1));
+            }
+            series.add(1_700_000_000_000L + i * 1000L, saturation);
+        }
+
+        assertEquals(9 * TimeSeriesChunk.DEFAULT_CAPACITY, store.getStoredSamples());
+        assertTrue(store.getStoredBytes() * 10 <= store.getStoredSamples() * 16,
+                "compressed to " + store.getStoredBytes() + " bytes");
+    }
+
+    @Test
+    public void testIrregularSamplesRoundTripExactly() {
+        StorageOptions options = new StorageOptions();
+        options.chunkStore = new CompressedChunkStore();
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 64, options);
+        Random random = new Random(7);
+        long[] timestamps = new long[1000];
+        double[] values = new double[1000];
+        long timestamp = -5000;
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamp += i % 50 == 0 ? random.nextInt(1 << 20) : random.nextInt(300);
+            timestamps[i] = timestamp;
+            values[i] = i % 97 == 0 ? Double.NaN : random.nextGaussian() * 1e6;
+            series.add(timestamps[i], values[i]);
+        }
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(1, Long.MIN_VALUE, Long.MAX_VALUE, records);
+
+        assertEquals(timestamps.length, records.size());
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(timestamps[i], records.get(i).getTimestamp());
+            assertEquals(Double.doubleToRawLongBits(values[i]),
+                    Double.doubleToRawLongBits(records.get(i).getMeasurementValue()));
+        }
+    }
+
+    @Test
+    public void testRangeQueriesAndLateInsertsOnCompressedChunks() {
+        StorageOptions options = new StorageOptions();
+        options.chunkStore = new CompressedChunkStore();
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 8, options);
+        for (int i = 0; i < 80; i++) {
+            series.add(i * 10L, i);
+        }
+        series.add(25, 2.5);
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(1, 15, 45, records);
+
+        assertEquals(4, records.size());
+        assertEquals(20, records.get(0).getTimestamp());
+        assertEquals(2.5, records.get(1).getMeasurementValue());
+        assertEquals(40, records.get(3).getTimestamp());
+        assertEquals(81, series.size());
+    }
+}
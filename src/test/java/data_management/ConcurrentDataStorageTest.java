@@ -0,0 +1,98 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentDataStorageTest {
+
+    @Test
+    public void testConcurrentWritersAndReaders() throws Exception {
+        DataStorage storage = new DataStorage();
+        int writers = 8;
+        int recordsPerWriter = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < recordsPerWriter; i++) {
+                        // Two writers share every patient to exercise the per-patient lock.
+                        int patientId = (writer / 2) * 100 + i % 100;
+                        storage.addPatientData(patientId, i, "ECG", i);
+                    }
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    for (PatientRecord record : storage.getRecords(50, 0, Long.MAX_VALUE)) {
+                        assertEquals(50, record.getPatientId());
+                    }
+                }
+            }));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long total = 0;
+        for (Patient patient : storage.getAllPatients()) {
+            total += patient.getRecordCount();
+            List<PatientRecord> records = patient.getRecords();
+            for (int i = 1; i < records.size(); i++) {
+                assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp());
+            }
+        }
+        assertEquals(writers * recordsPerWriter, total);
+        assertEquals(400, storage.getAllPatients().size());
+    }
+
+    @Test
+    public void testSparseAndNegativePatientIds() {
+        DataStorage storage = new DataStorage();
+        storage.addPatientData(-5, 1.0, "ECG", 1);
+        storage.addPatientData(PatientIndex.MAX_DENSE_ID + 7, 2.0, "ECG", 2);
+        storage.addPatientData(10_000, 3.0, "ECG", 3);
+
+        assertEquals(3, storage.getAllPatients().size());
+        assertEquals(1, storage.getRecords(-5, 0, 10).size());
+        assertEquals(2.0, storage.getRecords(PatientIndex.MAX_DENSE_ID + 7, 0, 10).get(0).getMeasurementValue());
+        assertEquals(10_000, storage.getPatient(10_000).getPatientId());
+        assertNull(storage.getPatient(42));
+    }
+
+    @Test
+    public void testCohortQueryRunsOverAllPatients() {
+        DataStorage storage = new DataStorage();
+        long now = 10_000_000L;
+        for (int id = 0; id < 5000; id++) {
+            double saturation = id % 10 == 0 ? 91 : 97;
+            for (long t = now - 3_600_000L; t <= now; t += 600_000L) {
+                storage.addPatientData(id, saturation, "Saturation", t);
+            }
+        }
+        storage.addPatientData(-7, 90, "Saturation", now);
+
+        List<Patient> low = storage.findPatients(
+                p -> p.getStats(RecordTypeRegistry.SATURATION, now - 3_600_000L, now).getMean() < 93);
+        long samples = storage.reducePatients(p -> true, Patient::getRecordCount, 0L, Long::sum);
+
+        assertEquals(501, low.size());
+        assertEquals(0, low.get(0).getPatientId());
+        assertEquals(4990, low.get(499).getPatientId());
+        assertEquals(-7, low.get(500).getPatientId());
+        assertEquals(5000 * 7 + 1, samples);
+    }
+}
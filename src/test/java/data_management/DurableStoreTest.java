@@ -0,0 +1,118 @@
+package com.data_management;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DurableStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRecoversFromLogOnly() throws IOException {
+        DataStorage storage = new DataStorage();
+        DurableStore store = DurableStore.open(storage, directory);
+        storage.addPatientData(1, 120.0, "SystolicPressure", 1000L);
+        storage.addPatientData(1, 97.0, "Saturation", 1001L);
+        storage.addPatientData(2, 0.5, "ECG", 1002L);
+        store.close();
+
+        DataStorage recovered = new DataStorage();
+        DurableStore.open(recovered, directory).close();
+
+        List<PatientRecord> records = recovered.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(2, records.size());
+        assertEquals("SystolicPressure", records.get(0).getRecordType());
+        assertEquals(97.0, records.get(1).getMeasurementValue());
+        assertEquals(1, recovered.getRecords(2, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testRecoversFromSnapshotAndLogTailExactlyOnce() throws IOException {
+        DataStorage storage = new DataStorage();
+        DurableStore store = DurableStore.open(storage, directory);
+        for (int i = 0; i < 5000; i++) {
+            storage.addPatientData(i % 10, i, "ECG", i);
+        }
+        store.checkpoint();
+        for (int i = 5000; i < 6000; i++) {
+            storage.addPatientData(i % 10, i, "ECG", i);
+        }
+        store.close();
+
+        DataStorage recovered = new DataStorage();
+        DurableStore reopened = DurableStore.open(recovered, directory);
+        long total = 0;
+        for (Patient patient : recovered.getAllPatients()) {
+            total += patient.getRecordCount();
+        }
+        assertEquals(6000, total);
+        assertEquals(5999.0, recovered.getRecords(9, 5999, 5999).get(0).getMeasurementValue());
+
+        // Writes after recovery continue the log and survive another restart.
+        recovered.addPatientData(3, 1.5, "Cholesterol", 7000L);
+        reopened.checkpoint();
+        reopened.close();
+
+        DataStorage again = new DataStorage();
+        DurableStore.open(again, directory).close();
+        assertEquals(601, again.getRecords(3, 0, Long.MAX_VALUE).size());
+        assertEquals(1, SnapshotFile.list(directory).size());
+    }
+
+    @Test
+    public void testTornLogTailIsIgnored() throws IOException {
+        DataStorage storage = new DataStorage();
+        DurableStore store = DurableStore.open(storage, directory);
+        storage.addPatientData(1, 1.0, "ECG", 1L);
+        storage.addPatientData(1, 2.0, "ECG", 2L);
+        store.close();
+
+        Path segment = WriteAheadLog.listSegments(directory).stream()
+                .map(number -> WriteAheadLog.segmentPath(directory, number))
+                .findFirst().orElseThrow();
+        Files.write(segment, new byte[] {WriteAheadLog.SAMPLE_ENTRY, 0, 0}, StandardOpenOption.APPEND);
+
+        DataStorage recovered = new DataStorage();
+        DurableStore.open(recovered, directory).close();
+        assertEquals(2, recovered.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testConcurrentWritersRecoverAcrossCheckpoint() throws Exception {
+        DataStorage storage = new DataStorage();
+        DurableStore store = DurableStore.open(storage, directory);
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++) {
+            int writer = w;
+            writers[w] = new Thread(() -> {
+                // Patient 0 is shared by every writer, so its entries interleave across thread buffers.
+                for (int i = 0; i < 5000; i++) {
+                    storage.addPatientData(i % 2 == 0 ? 0 : writer + 1, i, "ECG", writer * 10_000L + i);
+                }
+            });
+            writers[w].start();
+        }
+        Thread.sleep(5);
+        store.checkpoint();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        store.close();
+
+        DataStorage recovered = new DataStorage();
+        DurableStore.open(recovered, directory).close();
+        assertEquals(10_000, recovered.getRecords(0, 0, Long.MAX_VALUE).size());
+        for (int patient = 1; patient <= writers.length; patient++) {
+            assertEquals(2500, recovered.getRecords(patient, 0, Long.MAX_VALUE).size());
+        }
+    }
+}
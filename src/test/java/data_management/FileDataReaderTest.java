@@ -0,0 +1,174 @@
+package com.data_management;
+
+import com.cardio_generator.outputs.FileOutputStrategy;
+import com.data_codec.GzipBlockCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileDataReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testParallelLoadMatchesSequentialRead() throws IOException {
+        Path file = writeCapture();
+
+        DataStorage sequential = new DataStorage();
+        new FileDataReader(file.toString()).readData(sequential);
+        DataStorage parallel = new DataStorage();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        long loaded = new FileDataReader(file.toString()).readDataParallel(parallel, pool);
+        pool.shutdown();
+
+        assertEquals(200_000, loaded);
+        assertSameRecords(sequential, parallel);
+    }
+
+    @Test
+    public void testGzipCapturesLoadLikePlainText() throws IOException {
+        Path file = writeCapture();
+        byte[] text = Files.readAllBytes(file);
+        // Blocks end mid-line, so lines span members and the runs inflated by different tasks.
+        Path blocked = directory.resolve("capture-blocked.csv.gz");
+        GzipBlockCodec codec = new GzipBlockCodec();
+        try (OutputStream out = Files.newOutputStream(blocked)) {
+            for (int offset = 0; offset < text.length; offset += GzipBlockCodec.MAX_BLOCK_SIZE) {
+                codec.writeMember(text, offset, Math.min(GzipBlockCodec.MAX_BLOCK_SIZE, text.length - offset), out);
+            }
+        }
+        Path plainGzip = directory.resolve("capture.csv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(plainGzip))) {
+            out.write(text);
+        }
+        try (FileChannel channel = FileChannel.open(blocked, StandardOpenOption.READ)) {
+            assertTrue(GzipBlockCodec.indexMembers(channel).length > 10);
+        }
+        try (FileChannel channel = FileChannel.open(plainGzip, StandardOpenOption.READ)) {
+            assertNull(GzipBlockCodec.indexMembers(channel));
+        }
+
+        DataStorage expected = new DataStorage();
+        new FileDataReader(file.toString()).readData(expected);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (Path gzip : new Path[] {blocked, plainGzip}) {
+            DataStorage sequential = new DataStorage();
+            new FileDataReader(gzip.toString()).readData(sequential);
+            assertSameRecords(expected, sequential);
+            DataStorage parallel = new DataStorage();
+            assertEquals(200_000, new FileDataReader(gzip.toString()).readDataParallel(parallel, pool));
+            assertSameRecords(expected, parallel);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFailedReadDiscardsUnflushedRecords() throws IOException {
+        Path truncated = directory.resolve("truncated.csv.gz");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            for (int i = 0; i < 1000; i++) {
+                out.write(("1," + i + ".0,HeartRate," + (1_000L + i) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        byte[] gzip = bytes.toByteArray();
+        Files.write(truncated, Arrays.copyOf(gzip, gzip.length - 20));
+
+        DataStorage storage = new DataStorage();
+        assertThrows(IOException.class, () -> new FileDataReader(truncated.toString()).readData(storage));
+        assertNull(storage.getPatient(1));
+    }
+
+    @Test
+    public void testReadsCompressedSegmentsOfFileOutputStrategy() throws IOException {
+        FileOutputStrategy output = new FileOutputStrategy(directory.toString(), 100_000);
+        for (int i = 0; i < 60_000; i++) {
+            output.output(i % 10 + 1, 1_700_000_000_000L + i, "HeartRate", String.valueOf(60 + i % 40));
+        }
+        output.close();
+        // A later run continues the numbering instead of overwriting.
+        FileOutputStrategy restarted = new FileOutputStrategy(directory.toString(), 100_000);
+        restarted.output(1, 1_800_000_000_000L, "HeartRate", "61");
+        restarted.close();
+
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.sorted().collect(Collectors.toList());
+        }
+        assertTrue(segments.size() > 2);
+        assertEquals("HeartRate-00000.txt.gz", segments.get(0).getFileName().toString());
+        DataStorage storage = new DataStorage();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        long loaded = 0;
+        for (Path segment : segments) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                assertNotNull(GzipBlockCodec.indexMembers(channel));
+            }
+            loaded += new FileDataReader(segment.toString()).readDataParallel(storage, pool);
+        }
+        pool.shutdown();
+
+        assertEquals(60_001, loaded);
+        List<PatientRecord> one = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(6_001, one.size());
+        for (int i = 0; i < 6_000; i++) {
+            assertEquals(1_700_000_000_000L + i * 10L, one.get(i).getTimestamp());
+            assertEquals(60 + i * 10 % 40, one.get(i).getMeasurementValue());
+            assertEquals("HeartRate", one.get(i).getRecordType());
+        }
+        assertEquals(1_800_000_000_000L, one.get(6_000).getTimestamp());
+    }
+
+    private Path writeCapture() throws IOException {
+        Path file = directory.resolve("capture.csv");
+        Random random = new Random(3);
+        String[] labels = {"ECG", "Saturation", "SystolicPressure", "Cholesterol"};
+        try (Writer out = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < 200_000; i++) {
+                out.write((random.nextInt(500) + 1) + "," + (random.nextInt(20000) / 100.0) + ","
+                        + labels[random.nextInt(labels.length)] + "," + (1_700_000_000_000L + i)
+                        + (i % 7 == 0 ? "\r\n" : "\n"));
+                if (i % 50_000 == 0) {
+                    out.write("not,a,record\n\n");
+                }
+            }
+        }
+        return file;
+    }
+
+    private static void assertSameRecords(DataStorage sequential, DataStorage parallel) {
+        for (int id = 1; id <= 500; id++) {
+            List<PatientRecord> expected = sequential.getRecords(id, 0, Long.MAX_VALUE);
+            List<PatientRecord> actual = parallel.getRecords(id, 0, Long.MAX_VALUE);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+                assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue());
+                assertEquals(expected.get(i).getRecordType(), actual.get(i).getRecordType());
+            }
+        }
+    }
+}
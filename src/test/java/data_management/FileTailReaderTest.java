@@ -0,0 +1,52 @@
+package com.data_management;
+
+import com.cardio_generator.outputs.FileOutputStrategy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FileTailReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testFollowsAppendedLines() throws IOException, InterruptedException {
+        FileOutputStrategy output = new FileOutputStrategy(directory.toString());
+        output.output(1, 1000L, "TailSaturation", "97.0%");
+        output.output(2, 1000L, "TailECG", "0.25");
+
+        DataStorage storage = new DataStorage();
+        FileTailReader reader = new FileTailReader(directory);
+        reader.readData(storage);
+        assertEquals(97.0, storage.getRecords(1, 0, Long.MAX_VALUE).get(0).getMeasurementValue());
+        assertEquals(1, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+
+        // A line still being written is picked up once it is complete.
+        Path ecg = directory.resolve("TailECG.txt");
+        Files.write(ecg, "Patient ID: 2, Timestamp: 2000, La".getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.APPEND);
+        reader.readAppended();
+        Files.write(ecg, "bel: TailECG, Data: 0.5\n".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+        reader.readAppended();
+        assertEquals(2, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+
+        // The background thread picks up new files and appends on its own.
+        output.output(3, 3000L, "TailWhiteBloodCells", "7.5");
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (storage.getPatient(3) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        reader.close();
+        assertEquals(7.5, storage.getRecords(3, 0, Long.MAX_VALUE).get(0).getMeasurementValue());
+        assertEquals(2, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        assertEquals(1, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+}
@@ -0,0 +1,126 @@
+package com.data_management;
+
+import com.data_codec.RecordCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IngestPipelineTest {
+
+    @Test
+    public void testFramesAreParsedAndStored() {
+        DataStorage storage = new DataStorage();
+        IngestPipeline pipeline = new IngestPipeline(storage, RecordCodec.Layout.STREAM_CSV, 16, 2,
+                IngestPipeline.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 500; i++) {
+            assertTrue(pipeline.submit((i % 5) + "," + (1000 + i) + ",HeartRate," + i
+                    + "\n" + (i % 5) + "," + (1000 + i) + ",Saturation,97%"));
+        }
+        pipeline.submit("not a record");
+        pipeline.close();
+
+        assertEquals(501, pipeline.getProcessedFrames());
+        assertEquals(1, pipeline.getMalformedRecords());
+        assertEquals(0, pipeline.getDroppedFrames());
+        assertEquals(0, pipeline.getQueueDepth());
+        for (int id = 0; id < 5; id++) {
+            assertEquals(200, storage.getRecords(id, 0, Long.MAX_VALUE).size());
+        }
+        assertFalse(pipeline.submit("1,1,HeartRate,70"));
+    }
+
+    @Test
+    public void testIdleWorkersParkUntilFramesArrive() throws InterruptedException {
+        DataStorage storage = new DataStorage();
+        IngestPipeline pipeline = new IngestPipeline(storage, RecordCodec.Layout.STREAM_CSV, 16, 2,
+                IngestPipeline.OverflowPolicy.BLOCK);
+        for (int round = 1; round <= 3; round++) {
+            pipeline.submit("1," + round + ",HeartRate,70");
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (pipeline.getProcessedFrames() < round && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(round, pipeline.getProcessedFrames());
+            Thread.sleep(50);
+            // Parked without a timeout, not polling.
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("ingest-worker-") && thread.isAlive()) {
+                    assertTrue(thread.getState() != Thread.State.TIMED_WAITING, thread.getState().toString());
+                }
+            }
+        }
+        pipeline.close();
+        assertEquals(3, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testDropOldestKeepsNewestFrames() throws InterruptedException {
+        StalledStorage storage = new StalledStorage();
+        IngestPipeline pipeline = new IngestPipeline(storage, RecordCodec.Layout.STREAM_CSV, 2, 1,
+                IngestPipeline.OverflowPolicy.DROP_OLDEST);
+        pipeline.submit("1,0,HeartRate,70");
+        storage.entered.await();
+        pipeline.submit("1,1,HeartRate,71");
+        pipeline.submit("1,2,HeartRate,72");
+        assertTrue(pipeline.submit("1,3,HeartRate,73"));
+        assertEquals(2, pipeline.getQueueDepth());
+        assertEquals(1, pipeline.getDroppedFrames());
+
+        storage.release.countDown();
+        pipeline.close();
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(0, records.get(0).getTimestamp());
+        assertEquals(2, records.get(1).getTimestamp());
+        assertEquals(3, records.get(2).getTimestamp());
+    }
+
+    @Test
+    public void testDropLowPriorityOnlyDropsListedTypes() throws InterruptedException {
+        StalledStorage storage = new StalledStorage();
+        IngestPipeline pipeline = new IngestPipeline(storage, RecordCodec.Layout.STREAM_CSV, 1, 1,
+                IngestPipeline.OverflowPolicy.DROP_LOW_PRIORITY, "ECG");
+        pipeline.submit("1,0,ECG,0.1");
+        storage.entered.await();
+        pipeline.submit("1,1,ECG,0.2");
+        assertFalse(pipeline.submit("1,2,ECG,0.3"));
+        assertEquals(1, pipeline.getDroppedFrames());
+
+        // A frame of another type waits for room instead of being dropped.
+        Thread sender = new Thread(() -> pipeline.submit("1,3,HeartRate,70"));
+        sender.start();
+        storage.release.countDown();
+        sender.join();
+        pipeline.close();
+
+        assertEquals(1, pipeline.getDroppedFrames());
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals("ECG", records.get(1).getRecordType());
+        assertEquals("HeartRate", records.get(2).getRecordType());
+    }
+
+    /**
+     * Storage whose first batch blocks until released, to keep the queue full.
+     */
+    private static final class StalledStorage extends DataStorage {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void addBatch(RecordBatch batch) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.addBatch(batch);
+        }
+    }
+}
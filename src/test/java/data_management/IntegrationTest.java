@@ -17,6 +17,8 @@ public class IntegrationTest {
         // Mock real-time data feed
         String testData = "1,1234567890,HeartRate,70";
         client.onMessage(testData);
+        // Messages are stored by the pipeline's workers; closing it waits for them.
+        client.getPipeline().close();
 
         // Verify data is processed and stored
         List<PatientRecord> records = dataStorage.getRecords(1, 0, Long.MAX_VALUE);
@@ -0,0 +1,93 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatestVitalsTest {
+
+    @Test
+    public void testSnapshotHoldsNewestSamplePerType() {
+        DataStorage storage = new DataStorage();
+        storage.addPatientData(7, 80, "HeartRate", 1000L);
+        storage.addPatientData(7, 85, "HeartRate", 3000L);
+        storage.addPatientData(7, 70, "HeartRate", 2000L); // late, must not win
+        storage.addPatientData(7, 97, "Saturation", 1500L);
+        storage.addPatientData(2, 120, "SystolicPressure", 500L);
+
+        LatestVitals vitals = storage.refreshLatestVitals();
+        assertEquals(2, vitals.size());
+        assertEquals(2, vitals.getPatientId(0));
+        assertEquals(7, vitals.getPatientId(1));
+
+        int row = vitals.indexOf(7);
+        assertEquals(85, vitals.getValue(row, RecordTypeRegistry.HEART_RATE));
+        assertEquals(3000L, vitals.getTimestamp(row, RecordTypeRegistry.HEART_RATE));
+        assertEquals(97, vitals.getLatest(7, "Saturation").getMeasurementValue());
+        assertFalse(vitals.has(row, RecordTypeRegistry.CHOLESTEROL));
+        assertTrue(Double.isNaN(vitals.getValue(row, RecordTypeRegistry.CHOLESTEROL)));
+        assertNull(vitals.getLatest(3, "HeartRate"));
+        assertEquals(-1, vitals.indexOf(3));
+    }
+
+    @Test
+    public void testEpochsShareUnchangedRows() {
+        DataStorage storage = new DataStorage();
+        for (int id = 0; id < 100; id++) {
+            storage.addPatientData(id, id, "HeartRate", 1000L);
+        }
+        LatestVitals first = storage.refreshLatestVitals();
+        assertSame(first, storage.getLatestVitals());
+        assertSame(first, storage.refreshLatestVitals());
+
+        storage.addPatientData(50, 500, "HeartRate", 2000L);
+        storage.addPatientData(150, 1, "HeartRate", 2000L);
+        LatestVitals second = storage.refreshLatestVitals();
+
+        assertTrue(second.getEpoch() > first.getEpoch());
+        assertEquals(101, second.size());
+        assertEquals(500, second.getValue(second.indexOf(50), RecordTypeRegistry.HEART_RATE));
+        assertEquals(50, first.getValue(first.indexOf(50), RecordTypeRegistry.HEART_RATE));
+        assertSame(first.row(first.indexOf(49)), second.row(second.indexOf(49)));
+    }
+
+    @Test
+    public void testEpochsArePublishedInBackground() throws InterruptedException {
+        DataStorage storage = new DataStorage();
+        storage.addPatientData(4, 60, "HeartRate", 1000L);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (storage.getLatestVitals().size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(LatestVitalsView.EPOCH_MILLIS);
+        }
+        LatestVitals vitals = storage.getLatestVitals();
+        assertEquals(1, vitals.size());
+        assertEquals(60, vitals.getLatest(4, "HeartRate").getMeasurementValue());
+        assertSame(vitals, storage.getLatestVitals());
+    }
+
+    @Test
+    public void testEvictionRefreshesRows() {
+        DataStorage storage = new DataStorage();
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setRetention("Cholesterol", 30, TimeUnit.DAYS);
+        storage.setRetentionPolicy(policy);
+        storage.addPatientData(1, 180.0, "Cholesterol", 1_000L);
+        storage.addPatientData(1, 97.0, "Saturation", 1_000L);
+        LatestVitals before = storage.refreshLatestVitals();
+        assertTrue(before.has(before.indexOf(1), RecordTypeRegistry.CHOLESTEROL));
+
+        assertEquals(1, storage.evictExpired(1_000L + TimeUnit.DAYS.toMillis(31)));
+        LatestVitals after = storage.refreshLatestVitals();
+        int row = after.indexOf(1);
+        assertFalse(after.has(row, RecordTypeRegistry.CHOLESTEROL));
+        assertEquals(97.0, after.getValue(row, RecordTypeRegistry.SATURATION));
+    }
+}
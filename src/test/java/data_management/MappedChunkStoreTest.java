@@ -0,0 +1,93 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedChunkStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRangeQueriesReadSealedChunks() throws IOException {
+        StorageOptions options = new StorageOptions();
+        options.chunkStore = new MappedChunkStore(directory, 1024);
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 4, options);
+        for (int i = 0; i < 100; i++) {
+            series.add(1000L + i * 10, i * 0.5);
+        }
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(7, 1095, 1500, records);
+
+        assertEquals(41, records.size());
+        assertEquals(1100, records.get(0).getTimestamp());
+        assertEquals(5.0, records.get(0).getMeasurementValue());
+        assertEquals(1500, records.get(40).getTimestamp());
+        assertTrue(countSegmentFiles() > 0);
+        options.chunkStore.close();
+    }
+
+    @Test
+    public void testLateSamplesAreInsertedIntoSealedChunks() throws IOException {
+        StorageOptions options = new StorageOptions();
+        options.chunkStore = new MappedChunkStore(directory);
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 4, options);
+        for (int i = 0; i < 20; i++) {
+            series.add(i * 10L, i);
+        }
+        series.add(15, 1.5);
+        series.add(-5, -0.5);
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(1, Long.MIN_VALUE, Long.MAX_VALUE, records);
+
+        assertEquals(22, records.size());
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp());
+        }
+        assertEquals(-5, records.get(0).getTimestamp());
+        assertEquals(1.5, records.get(3).getMeasurementValue());
+        options.chunkStore.close();
+    }
+
+    @Test
+    public void testUnusedSegmentsAreDeleted() throws IOException {
+        DataStorage storage = new DataStorage();
+        MappedChunkStore store = new MappedChunkStore(directory, 16 * TimeSeriesChunk.DEFAULT_CAPACITY * 2);
+        storage.setChunkStore(store);
+        RetentionPolicy retention = new RetentionPolicy();
+        retention.setDefaultRetention(10, TimeUnit.SECONDS);
+        storage.setRetentionPolicy(retention);
+        for (long t = 0; t < 20 * TimeSeriesChunk.DEFAULT_CAPACITY; t++) {
+            storage.addPatientData(1, t, "HeartRate", t);
+        }
+
+        assertEquals(TimeSeriesChunk.DEFAULT_CAPACITY * 20 - 1,
+                (long) storage.getRecords(1, 20 * TimeSeriesChunk.DEFAULT_CAPACITY - 1, Long.MAX_VALUE)
+                        .get(0).getMeasurementValue());
+        assertTrue(store.getSegmentCount() <= 8);
+        assertEquals(store.getSegmentCount(), countSegmentFiles());
+
+        store.close();
+        assertEquals(0, countSegmentFiles());
+    }
+
+    private long countSegmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
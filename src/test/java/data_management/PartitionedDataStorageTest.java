@@ -0,0 +1,105 @@
+package com.data_management;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PartitionedDataStorageTest {
+
+    @Test
+    public void testWritesFromManyThreadsReachOwningShard() throws Exception {
+        PartitionedDataStorage storage = new PartitionedDataStorage(4, 128);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            int producer = p;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    storage.addPatientData(i % 50, i, "HeartRate", producer * 100_000L + i);
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        storage.flush();
+
+        long total = 0;
+        for (int id = 0; id < 50; id++) {
+            List<PatientRecord> records = storage.getRecords(id, 0, Long.MAX_VALUE);
+            assertEquals(4 * 40, records.size());
+            for (int i = 1; i < records.size(); i++) {
+                assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp());
+            }
+            assertEquals(storage.shardOf(id).getPatient(id), storage.getPatient(id));
+            total += records.size();
+        }
+        assertEquals(8000, total);
+
+        long spread = storage.getShards().stream().filter(shard -> !shard.getAllPatients().isEmpty()).count();
+        assertEquals(4, spread);
+        assertThrows(UnsupportedOperationException.class, () -> storage.shardOf(1).addPatientData(1, 1, "HeartRate", 1));
+        assertThrows(UnsupportedOperationException.class, () -> storage.getShards().get(0).evictExpired(0));
+
+        storage.close();
+        assertThrows(IllegalStateException.class, () -> storage.addPatientData(1, 1, "HeartRate", 1));
+    }
+
+    @Test
+    public void testEvictionRunsOnWriterThreads() throws Exception {
+        PartitionedDataStorage storage = new PartitionedDataStorage(2, 16);
+        RetentionPolicy retention = new RetentionPolicy();
+        retention.setRetention("HeartRate", 1, TimeUnit.SECONDS);
+        for (DataStorage shard : storage.getShards()) {
+            shard.setRetentionPolicy(retention);
+        }
+        for (int i = 0; i < 1000; i++) {
+            storage.addPatientData(i % 10, i, "HeartRate", i);
+        }
+        storage.flush();
+
+        assertEquals(0, storage.evictExpired(1000));
+        assertEquals(1000, storage.evictExpired(1_000_000));
+        assertTrue(storage.getRecords(3, 0, Long.MAX_VALUE).isEmpty());
+
+        storage.close();
+        assertEquals(0, storage.evictExpired(2_000_000));
+    }
+
+    @Test
+    public void testWriterDeathFailsFlushAndClose() {
+        PartitionedDataStorage storage = new PartitionedDataStorage(1, 16);
+        storage.getShards().get(0).setChunkStore(new ChunkStore() {
+            @Override
+            SampleChunk seal(TimeSeriesChunk chunk) {
+                throw new AssertionError("seal failed");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            IllegalStateException failure = assertThrows(IllegalStateException.class, () -> {
+                for (int i = 0; i < 100_000; i++) {
+                    storage.addPatientData(1, i, "HeartRate", i);
+                }
+                storage.flush();
+            });
+            assertTrue(failure.getCause() instanceof AssertionError);
+            assertThrows(IllegalStateException.class, storage::flush);
+            assertThrows(IllegalStateException.class, storage::close);
+        });
+    }
+}
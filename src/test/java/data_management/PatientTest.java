@@ -50,4 +50,18 @@ public class PatientTest {
         List<PatientRecord> records = patient.getRecords(now - 10000, now);
         assertTrue(records.isEmpty());
     }
+
+    @Test
+    public void testForEachRecordStreamsOneTypeInOrder() {
+        patient.addRecord(98.0, "Saturation", 3000);
+        patient.addRecord(120.0, "SystolicPressure", 1500);
+        patient.addRecord(96.0, "Saturation", 1000);
+        patient.addRecord(97.0, "Saturation", 2000);
+
+        StringBuilder visited = new StringBuilder();
+        patient.forEachRecord("Saturation", 1000, 2500,
+                (timestamp, value) -> visited.append(timestamp).append('=').append(value).append(';'));
+
+        assertEquals("1000=96.0;2000=97.0;", visited.toString());
+    }
 }
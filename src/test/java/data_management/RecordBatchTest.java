@@ -0,0 +1,81 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordBatchTest {
+
+    @Test
+    public void testBatchIsGroupedByPatient() {
+        DataStorage storage = new DataStorage();
+        RecordBatch batch = new RecordBatch(8);
+        batch.add(3, RecordTypeRegistry.ECG, 1.0, 100);
+        batch.add(-1, RecordTypeRegistry.ECG, 2.0, 100);
+        batch.add(3, RecordTypeRegistry.ECG, 3.0, 200);
+        batch.add(3, RecordTypeRegistry.SATURATION, 97.0, 150);
+        batch.add(-1, RecordTypeRegistry.ECG, 4.0, 50);
+        storage.addBatch(batch);
+
+        List<PatientRecord> three = storage.getRecords(3, 0, Long.MAX_VALUE);
+        assertEquals(3, three.size());
+        assertEquals(1.0, three.get(0).getMeasurementValue());
+        assertEquals(97.0, three.get(1).getMeasurementValue());
+        assertEquals(3.0, three.get(2).getMeasurementValue());
+        List<PatientRecord> negative = storage.getRecords(-1, 0, Long.MAX_VALUE);
+        assertEquals(50, negative.get(0).getTimestamp());
+        assertEquals(100, negative.get(1).getTimestamp());
+
+        batch.clear();
+        assertTrue(batch.isEmpty());
+        for (int i = 0; i < 8; i++) {
+            batch.add(9, RecordTypeRegistry.ECG, i, i);
+        }
+        assertThrows(IllegalStateException.class, () -> batch.add(9, RecordTypeRegistry.ECG, 0, 0));
+        storage.addBatch(batch);
+        assertEquals(8, storage.getPatient(9).getRecordCount());
+    }
+
+    @Test
+    public void testWrappedArraysAreNotReordered() {
+        int[] ids = {2, 1, 2};
+        int[] codes = {RecordTypeRegistry.ECG, RecordTypeRegistry.ECG, RecordTypeRegistry.ECG};
+        double[] values = {1, 2, 3};
+        long[] timestamps = {10, 20, 30};
+        DataStorage storage = new DataStorage();
+        storage.addBatch(new RecordBatch(ids, codes, values, timestamps));
+
+        assertArrayEquals(new int[] {2, 1, 2}, ids);
+        assertEquals(2, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        assertEquals(1, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testReusedBatchSortsIntoSameArrays() {
+        RecordBatch batch = new RecordBatch(4);
+        int[] first = batch.patientIds;
+        int[] second = null;
+        for (int round = 0; round < 4; round++) {
+            batch.add(5, RecordTypeRegistry.ECG, 1, 1);
+            batch.add(Integer.MIN_VALUE, RecordTypeRegistry.ECG, 2, 2);
+            batch.add(-3, RecordTypeRegistry.ECG, 3, 3);
+            batch.add(5, RecordTypeRegistry.ECG, 4, 4);
+            batch.groupByPatient();
+
+            assertArrayEquals(new int[] {Integer.MIN_VALUE, -3, 5, 5}, batch.patientIds);
+            assertArrayEquals(new double[] {2, 3, 1, 4}, batch.values);
+            if (second == null) {
+                second = batch.patientIds;
+            }
+            assertSame(round % 2 == 0 ? second : first, batch.patientIds);
+            batch.clear();
+        }
+    }
+}
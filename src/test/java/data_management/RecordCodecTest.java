@@ -0,0 +1,93 @@
+package com.data_management;
+
+import com.data_codec.RecordCodec;
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordCodecTest {
+
+    @Test
+    public void testAllLayoutsParseToTheSameRecord() {
+        RecordCodec file = new RecordCodec(RecordCodec.Layout.FILE_CSV);
+        RecordCodec stream = new RecordCodec(RecordCodec.Layout.STREAM_CSV);
+        RecordCodec output = new RecordCodec(RecordCodec.Layout.OUTPUT_TEXT);
+
+        assertTrue(file.parse("12,97.5,Saturation,1714376789050"));
+        assertTrue(stream.parse("12,1714376789050,Saturation,97.5%"));
+        assertTrue(output.parse("Patient ID: 12, Timestamp: 1714376789050, Label: Saturation, Data: 97.5%\r"));
+        for (RecordCodec codec : new RecordCodec[] {file, stream, output}) {
+            assertEquals(12, codec.getPatientId());
+            assertEquals(1714376789050L, codec.getTimestamp());
+            assertEquals(97.5, codec.getValue());
+            assertEquals(RecordTypeRegistry.SATURATION, codec.getRecordTypeCode());
+            assertNull(codec.getError());
+        }
+
+        ByteBuffer bytes = ByteBuffer.wrap("x3,-1.25,ECG,-5\n".getBytes(StandardCharsets.US_ASCII));
+        assertTrue(file.parse(bytes, 1, 15));
+        assertEquals(3, file.getPatientId());
+        assertEquals(-1.25, file.getValue());
+        assertEquals(-5, file.getTimestamp());
+
+        assertTrue(stream.parse("4,100,Alert,triggered"));
+        assertEquals(1.0, stream.getValue());
+        assertTrue(stream.parse("4,100,Alert,resolved"));
+        assertEquals(0.0, stream.getValue());
+    }
+
+    @Test
+    public void testMalformedRecordsAreReported() {
+        RecordCodec codec = new RecordCodec(RecordCodec.Layout.STREAM_CSV);
+        String[] inputs = {"", "1,2,ECG", "a,2,ECG,3", "1,2,,3", "1,2,ECG,3,4", "1,x,ECG,3", "1,2,ECG,.",
+            "99999999999,2,ECG,3", "1,2,ECG,1.2.3"};
+        for (String input : inputs) {
+            assertFalse(codec.parse(input), input);
+            assertTrue(codec.getError() != null, input);
+        }
+        RecordCodec output = new RecordCodec(RecordCodec.Layout.OUTPUT_TEXT);
+        assertFalse(output.parse("1,2,ECG,3"));
+        assertFalse(output.parse("Patient ID: 1; Timestamp: 2, Label: ECG, Data: 3"));
+    }
+
+    @Test
+    public void testUnknownLabelsAreRejected() {
+        RecordCodec codec = new RecordCodec(RecordCodec.Layout.STREAM_CSV);
+        assertFalse(codec.parse("1,2,CodecUnknownLabel,3"));
+        assertEquals("Unknown record type", codec.getError());
+        assertEquals(RecordTypeRegistry.UNKNOWN, RecordTypeRegistry.lookup("CodecUnknownLabel"));
+        assertTrue(codec.parse("1,2,HeartRate,3"));
+    }
+
+    @Test
+    public void testLabelsAreRegisteredOnlyForValidRecords() {
+        RecordCodec codec = new RecordCodec(RecordCodec.Layout.STREAM_CSV, true);
+        assertFalse(codec.parse("1,2,CodecRejectedLabel,not-a-number"));
+        assertEquals(RecordTypeRegistry.UNKNOWN, RecordTypeRegistry.lookup("CodecRejectedLabel"));
+
+        assertTrue(codec.parse("1,2,CodecAcceptedLabel,3"));
+        assertEquals(RecordTypeRegistry.lookup("CodecAcceptedLabel"), codec.getRecordTypeCode());
+        assertTrue(codec.getRecordTypeCode() != RecordTypeRegistry.UNKNOWN);
+    }
+
+    @Test
+    public void testNumbersMatchJdk() {
+        RecordCodec codec = new RecordCodec(RecordCodec.Layout.FILE_CSV);
+        String[] inputs = {"0", "-0", "97.5", "-12.25", "0.1", "123456789.123456", ".5", "7.", "+3.75",
+            "1e3", "-2.5E-3", "NaN", "Infinity", "0.30000000000000004", "1234567890123456789"};
+        for (String input : inputs) {
+            assertTrue(codec.parse("1," + input + ",ECG,5"), input);
+            assertEquals(Double.parseDouble(input), codec.getValue(), input);
+        }
+        assertTrue(codec.parse("1,0,ECG," + Long.MIN_VALUE));
+        assertEquals(Long.MIN_VALUE, codec.getTimestamp());
+        assertFalse(codec.parse("1,0,ECG,9223372036854775808"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordStatsTest {
+
+    @Test
+    public void testStatsMatchScanOfRange() {
+        StorageOptions options = new StorageOptions();
+        options.chunkStore = new CompressedChunkStore();
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 8, options);
+        Random random = new Random(11);
+        for (int i = 0; i < 500; i++) {
+            long timestamp = i % 10 == 0 ? random.nextInt(5000) : i * 10L;
+            series.add(timestamp, random.nextGaussian());
+        }
+
+        for (int q = 0; q < 200; q++) {
+            long start = random.nextInt(5200) - 100;
+            long end = start + random.nextInt(3000);
+            List<PatientRecord> records = new ArrayList<>();
+            series.collect(1, start, end, records);
+            RecordStats stats = series.stats(start, end);
+
+            assertEquals(records.size(), stats.getCount());
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (PatientRecord record : records) {
+                sum += record.getMeasurementValue();
+                min = Math.min(min, record.getMeasurementValue());
+                max = Math.max(max, record.getMeasurementValue());
+            }
+            if (!records.isEmpty()) {
+                assertEquals(min, stats.getMin());
+                assertEquals(max, stats.getMax());
+                assertEquals(sum, stats.getSum(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testStorageStats() {
+        DataStorage storage = new DataStorage();
+        for (int i = 1; i <= 5000; i++) {
+            storage.addPatientData(3, i, "Saturation", i * 1000L);
+        }
+
+        RecordStats stats = storage.getStats(3, "Saturation", 1000L, 4000L * 1000);
+        assertEquals(4000, stats.getCount());
+        assertEquals(1, stats.getMin());
+        assertEquals(4000, stats.getMax());
+        assertEquals(2000.5, stats.getMean());
+
+        RecordStats empty = storage.getStats(3, "ECG", 0, Long.MAX_VALUE);
+        assertEquals(0, empty.getCount());
+        assertTrue(Double.isNaN(empty.getMean()));
+    }
+}
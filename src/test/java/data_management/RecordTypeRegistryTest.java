@@ -0,0 +1,50 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordTypeRegistryTest {
+
+    @Test
+    public void testSimulatorLabelsHaveFixedCodes() {
+        assertEquals(RecordTypeRegistry.ECG, RecordTypeRegistry.codeOf("ECG"));
+        assertEquals(RecordTypeRegistry.SATURATION, RecordTypeRegistry.codeOf("Saturation"));
+        assertEquals(RecordTypeRegistry.SYSTOLIC_PRESSURE, RecordTypeRegistry.codeOf("SystolicPressure"));
+        assertEquals(RecordTypeRegistry.CHOLESTEROL, RecordTypeRegistry.codeOf("Cholesterol"));
+        assertEquals("DiastolicPressure", RecordTypeRegistry.labelOf(RecordTypeRegistry.DIASTOLIC_PRESSURE));
+    }
+
+    @Test
+    public void testNewLabelsAreInternedOnce() {
+        assertEquals(RecordTypeRegistry.UNKNOWN, RecordTypeRegistry.lookup("RespiratoryRate"));
+        int code = RecordTypeRegistry.codeOf("RespiratoryRate");
+        assertTrue(code > RecordTypeRegistry.HEART_RATE);
+        assertEquals(code, RecordTypeRegistry.codeOf("RespiratoryRate"));
+        assertEquals("RespiratoryRate", RecordTypeRegistry.labelOf(code));
+        assertTrue(RecordTypeRegistry.size() > code);
+    }
+
+    @Test
+    public void testUnknownCodeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> RecordTypeRegistry.labelOf(-3));
+    }
+
+    @Test
+    public void testRecordsCarryTypeCodes() {
+        PatientRecord record = new PatientRecord(1, 120.0, "SystolicPressure", 10L);
+        assertEquals(RecordTypeRegistry.SYSTOLIC_PRESSURE, record.getRecordTypeCode());
+        assertEquals("SystolicPressure", record.getRecordType());
+    }
+
+    @Test
+    public void testRecordsWithoutLabelKeepNullType() {
+        PatientRecord record = new PatientRecord(1, 120.0, (String) null, 10L);
+        assertEquals(RecordTypeRegistry.UNKNOWN, record.getRecordTypeCode());
+        assertNull(record.getRecordType());
+    }
+}
@@ -0,0 +1,141 @@
+package com.data_management;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RollupTest {
+
+    @Test
+    public void testTierMatchesRawSamples() {
+        DataStorage storage = new DataStorage();
+        Random random = new Random(3);
+        for (long t = 0; t < 3 * 3_600_000L; t += 250) {
+            storage.addPatientData(1, 60 + random.nextInt(40), "HeartRate", t);
+        }
+        List<RollupBucket> fromTier = storage.getRollups(1, "HeartRate", 0, Long.MAX_VALUE, 3_600_000L);
+        List<RollupBucket> fromSeconds = storage.getRollups(1, "HeartRate", 0, Long.MAX_VALUE, 1000L);
+
+        assertEquals(3, fromTier.size());
+        assertEquals(3 * 3600, fromSeconds.size());
+        for (RollupBucket hour : fromTier) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            long count = 0;
+            for (PatientRecord record : storage.getRecords(1, hour.getStartTime(),
+                    hour.getStartTime() + hour.getDuration() - 1)) {
+                min = Math.min(min, record.getMeasurementValue());
+                max = Math.max(max, record.getMeasurementValue());
+                sum += record.getMeasurementValue();
+                count++;
+            }
+            assertEquals(count, hour.getCount());
+            assertEquals(min, hour.getMin());
+            assertEquals(max, hour.getMax());
+            assertEquals(sum / count, hour.getMean(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testResolutionsWithoutTierFallBackToRawSamples() {
+        DataStorage storage = new DataStorage();
+        for (long t = 0; t < 10_000; t += 100) {
+            storage.addPatientData(1, t, "ECG", t);
+        }
+
+        List<RollupBucket> buckets = storage.getRollups(1, "ECG", 1600, 4000, 1500);
+
+        assertEquals(2, buckets.size());
+        assertEquals(1500, buckets.get(0).getStartTime());
+        assertEquals(15, buckets.get(0).getCount());
+        assertEquals(1500, buckets.get(0).getMin());
+        assertEquals(2900, buckets.get(0).getMax());
+        assertEquals(3000, buckets.get(1).getStartTime());
+        assertEquals(4400, buckets.get(1).getMax());
+    }
+
+    @Test
+    public void testTierGrowsFromSmallFirstBlock() {
+        RollupTier tier = new RollupTier(10);
+        for (int i = 0; i < 300; i++) {
+            tier.add(i * 10L, i);
+        }
+        // A late sample in a grown block, and one opening a bucket between two.
+        tier.add(3, 100);
+        tier.add(-20, 7);
+        List<RollupBucket> buckets = new ArrayList<>();
+        RollupTier.Resampler resampler = new RollupTier.Resampler(10, buckets);
+        tier.scan(Long.MIN_VALUE, Long.MAX_VALUE, resampler);
+        resampler.finish();
+
+        assertEquals(301, buckets.size());
+        assertEquals(-20, buckets.get(0).getStartTime());
+        assertEquals(2, buckets.get(1).getCount());
+        assertEquals(100, buckets.get(1).getMax());
+        for (int i = 1; i < 300; i++) {
+            assertEquals(i * 10L, buckets.get(i + 1).getStartTime());
+            assertEquals(i, buckets.get(i + 1).getSum());
+        }
+    }
+
+    @Test
+    public void testLateBucketsSplitFullBlocks() {
+        RollupTier tier = new RollupTier(10);
+        int blocks = 3;
+        int count = blocks * RollupTier.BLOCK_CAPACITY;
+        for (int i = 0; i < count; i++) {
+            tier.add(i * 20L, 1);
+        }
+        // Fill every gap, so each full block has to split, some of them several times.
+        for (int i = count - 1; i >= 0; i--) {
+            tier.add(i * 20L + 10, 2);
+        }
+        List<RollupBucket> buckets = new ArrayList<>();
+        RollupTier.Resampler resampler = new RollupTier.Resampler(10, buckets);
+        tier.scan(Long.MIN_VALUE, Long.MAX_VALUE, resampler);
+        resampler.finish();
+
+        assertEquals(2 * count, buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            assertEquals(i * 10L, buckets.get(i).getStartTime());
+            assertEquals(i % 2 == 0 ? 1 : 2, buckets.get(i).getSum());
+        }
+    }
+
+    @Test
+    public void testLateSamplesUpdateBuckets() {
+        DataStorage storage = new DataStorage();
+        storage.addPatientData(1, 10, "ECG", 120_000);
+        storage.addPatientData(1, 20, "ECG", 180_000);
+        storage.addPatientData(1, 5, "ECG", 61_000);
+        storage.addPatientData(1, 40, "ECG", 125_000);
+
+        List<RollupBucket> buckets = storage.getRollups(1, "ECG", 0, 200_000, 60_000);
+
+        assertEquals(3, buckets.size());
+        assertEquals(60_000, buckets.get(0).getStartTime());
+        assertEquals(5, buckets.get(0).getMax());
+        assertEquals(2, buckets.get(1).getCount());
+        assertEquals(25, buckets.get(1).getMean());
+        assertEquals(20, buckets.get(2).getMin());
+    }
+
+    @Test
+    public void testRollupTiersCanBeConfigured() {
+        DataStorage storage = new DataStorage();
+        storage.setRollupTiers(60_000L);
+        storage.addPatientData(1, 1, "ECG", 0);
+
+        assertTrue(storage.getRollups(1, "Unknown", 0, 1000, 1000).isEmpty());
+        assertEquals(1, storage.getRollups(1, "ECG", 0, 1000, 1000).size());
+        assertThrows(IllegalArgumentException.class, () -> storage.setRollupTiers(0));
+        assertThrows(IllegalArgumentException.class, () -> storage.getRollups(1, "ECG", 0, 1000, 0));
+    }
+}
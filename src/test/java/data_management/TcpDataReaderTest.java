@@ -0,0 +1,87 @@
+package com.data_management;
+
+import com.cardio_generator.outputs.TcpOutputStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TcpDataReaderTest {
+
+    @Test
+    public void testReadsSeveralProducersOnOneThreadAndReconnects() throws Exception {
+        DataStorage storage = new DataStorage();
+        int simulatorPort = freePort();
+        TcpOutputStrategy simulator = new TcpOutputStrategy(simulatorPort);
+        try (ServerSocket producer = new ServerSocket(0)) {
+            producer.setSoTimeout(10_000);
+            TcpDataReader reader = new TcpDataReader(Arrays.asList(
+                    new InetSocketAddress("localhost", producer.getLocalPort()),
+                    new InetSocketAddress("localhost", simulatorPort)), 20, TimeUnit.MILLISECONDS);
+            reader.readData(storage);
+            try {
+                try (Socket socket = producer.accept()) {
+                    OutputStream out = socket.getOutputStream();
+                    // The second record is split across two writes.
+                    write(out, "1,100,HeartRate,70\n1,200,Heart");
+                    Thread.sleep(50);
+                    write(out, "Rate,71\r\nnot a record\n");
+                    awaitTrue(() -> storage.getRecords(1, 0, Long.MAX_VALUE).size() == 2);
+                }
+                // The producer dropped the connection; the reader comes back.
+                try (Socket socket = producer.accept()) {
+                    write(socket.getOutputStream(), "1,300,HeartRate,72\n");
+                    awaitTrue(() -> storage.getRecords(1, 0, Long.MAX_VALUE).size() == 3);
+                }
+
+                // The simulator only sends once it has accepted the reader.
+                long timestamp = 1000;
+                while (storage.getRecords(2, 0, Long.MAX_VALUE).isEmpty() && timestamp < 2000) {
+                    simulator.output(2, timestamp++, "Saturation", "97.0%");
+                    Thread.sleep(10);
+                }
+                assertTrue(reader.getConnectedFeeds() >= 1);
+
+                List<PatientRecord> one = storage.getRecords(1, 0, Long.MAX_VALUE);
+                assertEquals(71.0, one.get(1).getMeasurementValue());
+                assertEquals(300, one.get(2).getTimestamp());
+                assertEquals(97.0, storage.getRecords(2, 0, Long.MAX_VALUE).get(0).getMeasurementValue());
+                assertEquals(1, reader.getMalformedRecords());
+                assertTrue(reader.getRecordsRead() >= 4);
+            } finally {
+                reader.close();
+            }
+            assertEquals(0, reader.getConnectedFeeds());
+        }
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for condition");
+            Thread.sleep(10);
+        }
+    }
+}
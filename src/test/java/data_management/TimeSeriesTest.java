@@ -0,0 +1,194 @@
+package com.data_management;
+
+import com.data_codec.RecordTypeRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeSeriesTest {
+
+    @Test
+    public void testRangeLookupAcrossChunks() {
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 4, new StorageOptions());
+        for (int i = 0; i < 20; i++) {
+            series.add(1000L + i * 10, i);
+        }
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(1, 1035, 1120, records);
+
+        assertEquals(20, series.size());
+        assertEquals(9, records.size());
+        assertEquals(1040, records.get(0).getTimestamp());
+        assertEquals(1120, records.get(8).getTimestamp());
+        assertEquals("ECG", records.get(0).getRecordType());
+    }
+
+    @Test
+    public void testFirstChunkGrowsUpToChunkCapacity() {
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 100, new StorageOptions());
+        series.add(0, 0);
+        assertEquals(TimeSeries.INITIAL_CHUNK_CAPACITY, ((TimeSeriesChunk) series.freeze().chunks[0]).capacity());
+        for (int i = 1; i < 250; i++) {
+            series.add(i * 10L, i);
+        }
+        TimeSeries.Frozen frozen = series.freeze();
+        assertEquals(3, frozen.chunks.length);
+        assertEquals(100, frozen.chunks[0].size());
+        assertEquals(100, ((TimeSeriesChunk) frozen.chunks[2]).capacity());
+        List<PatientRecord> all = new ArrayList<>();
+        series.collect(1, 0, Long.MAX_VALUE, all);
+        assertEquals(250, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(i * 10L, all.get(i).getTimestamp());
+            assertEquals(i, all.get(i).getMeasurementValue());
+        }
+    }
+
+    @Test
+    public void testLateSamplesAreInsertedInOrder() {
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 4, new StorageOptions());
+        long[] timestamps = {50, 10, 40, 20, 60, 30, 5, 70, 15, 45};
+        for (long timestamp : timestamps) {
+            series.add(timestamp, timestamp / 10.0);
+        }
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(1, Long.MIN_VALUE, Long.MAX_VALUE, records);
+
+        assertEquals(timestamps.length, records.size());
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp());
+        }
+        assertEquals(5, records.get(0).getTimestamp());
+        assertEquals(0.5, records.get(0).getMeasurementValue());
+    }
+
+    @Test
+    public void testPatientMergesTypesByTimestamp() {
+        Patient patient = new Patient(1);
+        patient.addRecord(120.0, "SystolicPressure", 300);
+        patient.addRecord(97.0, "Saturation", 100);
+        patient.addRecord(80.0, "DiastolicPressure", 200);
+
+        List<PatientRecord> records = patient.getRecords();
+        assertEquals(3, patient.getRecordCount());
+        assertEquals("Saturation", records.get(0).getRecordType());
+        assertEquals("DiastolicPressure", records.get(1).getRecordType());
+        assertEquals("SystolicPressure", records.get(2).getRecordType());
+        assertEquals(1, patient.getRecords("Saturation", 0, 1000).size());
+    }
+
+    @Test
+    public void testRetentionDropsWholeChunks() {
+        StorageOptions options = new StorageOptions();
+        options.retentionPolicy.setRetention(RecordTypeRegistry.ECG, 100, TimeUnit.MILLISECONDS);
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 4, options);
+        for (int i = 0; i < 1000; i++) {
+            series.add(i * 10L, i);
+        }
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(1, Long.MIN_VALUE, Long.MAX_VALUE, records);
+        assertEquals(records.size(), series.size());
+        // 100 ms of retention at one sample every 10 ms keeps at most three full chunks plus the tail.
+        assertTrue(series.size() <= 16, "size was " + series.size());
+        // Expiry happens when a chunk is started, so up to two chunks may lie partly outside the window.
+        assertTrue(records.get(0).getTimestamp() >= 9990 - 100 - 2 * 4 * 10);
+        assertEquals(9990, records.get(records.size() - 1).getTimestamp());
+    }
+
+    @Test
+    public void testEvictExpiredEmptiesQuietSeries() {
+        DataStorage storage = new DataStorage();
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setRetention("Cholesterol", 30, TimeUnit.DAYS);
+        storage.setRetentionPolicy(policy);
+        storage.addPatientData(1, 180.0, "Cholesterol", 1_000L);
+        storage.addPatientData(1, 97.0, "Saturation", 1_000L);
+
+        assertEquals(0, storage.evictExpired(1_000L + TimeUnit.DAYS.toMillis(29)));
+        assertEquals(1, storage.evictExpired(1_000L + TimeUnit.DAYS.toMillis(31)));
+        assertEquals(1, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals("Saturation", storage.getRecords(1, 0, Long.MAX_VALUE).get(0).getRecordType());
+    }
+
+    @Test
+    public void testInterleavedSourcesAreMergedInTimeOrder() {
+        StorageOptions options = new StorageOptions();
+        options.latenessMillis = 50;
+        TimeSeries series = new TimeSeries(RecordTypeRegistry.ECG, 8, options);
+        // Two sources, one lagging 30 ms behind the other, plus a straggler far behind.
+        for (int i = 0; i < 300; i++) {
+            series.add(i * 10L + 30, i);
+            series.add(i * 10L + 5, -i);
+        }
+        series.add(-1000, 0.0);
+
+        List<PatientRecord> records = new ArrayList<>();
+        series.collect(1, Long.MIN_VALUE, Long.MAX_VALUE, records);
+        assertEquals(601, records.size());
+        assertEquals(601, series.size());
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp());
+        }
+        assertEquals(-1000, records.get(0).getTimestamp());
+        assertEquals(601, series.stats(Long.MIN_VALUE, Long.MAX_VALUE).getCount());
+
+        TimeSeries.Frozen frozen = series.freeze();
+        assertEquals(601, frozen.sampleCount());
+    }
+
+    @Test
+    public void testDuplicatesAreDroppedWhenEnabled() {
+        DataStorage storage = new DataStorage();
+        storage.setDeduplication(true);
+        storage.setChunkStore(new CompressedChunkStore());
+        for (int i = 0; i < 3000; i++) {
+            storage.addPatientData(5, i, "ECG", i * 10L);
+        }
+        for (int i = 2950; i < 3000; i++) {
+            storage.addPatientData(5, i, "ECG", i * 10L); // resent after a reconnect
+        }
+        storage.addPatientData(5, 1.0, "ECG", 5); // reordered, but new
+        storage.addPatientData(5, 2.0, "ECG", 5); // reordered duplicate
+        storage.addPatientData(5, 3.0, "Saturation", 10); // same timestamp, other type
+
+        assertEquals(3001, storage.getRecords(5, 0, Long.MAX_VALUE).stream()
+                .filter(record -> record.getRecordTypeCode() == RecordTypeRegistry.ECG).count());
+        assertEquals(51, storage.getDuplicateCount());
+        assertEquals(3002, storage.getPatient(5).getRecordCount());
+
+        storage.setDeduplication(false);
+        storage.addPatientData(5, 4.0, "ECG", 5);
+        assertEquals(3003, storage.getPatient(5).getRecordCount());
+    }
+
+    @Test
+    public void testExpiredSamplesAreNotReinserted() {
+        DataStorage storage = new DataStorage();
+        storage.setDeduplication(true);
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setRetention("ECG", 1, TimeUnit.SECONDS);
+        storage.setRetentionPolicy(policy);
+        for (int i = 0; i < 5000; i++) {
+            storage.addPatientData(5, i, "ECG", i * 10L);
+        }
+        long retained = storage.getPatient(5).getRecordCount();
+        assertTrue(retained < 5000, "nothing was evicted");
+
+        // Re-reading the start of the capture does not restore expired samples, and they are not duplicates.
+        for (int i = 0; i < 100; i++) {
+            storage.addPatientData(5, i, "ECG", i * 10L);
+        }
+        assertEquals(retained, storage.getPatient(5).getRecordCount());
+        assertEquals(100, storage.getExpiredDropCount());
+        assertEquals(0, storage.getDuplicateCount());
+        assertTrue(storage.getRecords(5, 0, Long.MAX_VALUE).get(0).getTimestamp() > 0);
+    }
+}
@@ -48,4 +48,18 @@ public class WebSocketClientTest {
         assertFalse(records.isEmpty());
         assertEquals(70, records.get(0).getMeasurementValue());
     }
+
+    @Test
+    public void testOwnedPipelineIsOnlyClosedByClose() throws URISyntaxException {
+        DataStorage dataStorage = new DataStorage();
+        WebSocketClientImpl client = new WebSocketClientImpl(new URI("ws://localhost:8080"), dataStorage);
+
+        // A lost connection leaves the pipeline open for a reconnect.
+        client.onClose(1006, "lost", true);
+        assertTrue(client.getPipeline().submit("1,1234567890,HeartRate,70"));
+
+        client.close();
+        assertFalse(client.getPipeline().submit("1,1234567891,HeartRate,71"));
+        assertEquals(1, dataStorage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
 }
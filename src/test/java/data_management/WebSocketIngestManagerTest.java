@@ -0,0 +1,108 @@
+package com.data_management;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WebSocketIngestManagerTest {
+
+    @Test
+    public void testDeadEndpointDoesNotStallOthersAndDroppedEndpointReconnects() throws Exception {
+        int livePort = freePort();
+        int deadPort = freePort();
+        GreetingServer server = new GreetingServer(livePort, 1);
+        server.start();
+        DataStorage storage = new DataStorage();
+        WebSocketIngestManager manager = new WebSocketIngestManager(Arrays.asList(
+                new URI("ws://localhost:" + livePort), new URI("ws://localhost:" + deadPort)),
+                20, 200, TimeUnit.MILLISECONDS);
+        try {
+            manager.readData(storage);
+            WebSocketIngestManager.Connection live = manager.getConnections().get(0);
+            WebSocketIngestManager.Connection dead = manager.getConnections().get(1);
+
+            awaitTrue(() -> storage.getRecords(1, 0, Long.MAX_VALUE).size() == 1);
+            assertTrue(live.isConnected());
+            assertEquals(1, live.getMessagesReceived());
+            awaitTrue(() -> dead.getReconnectCount() >= 2);
+            assertFalse(dead.isConnected());
+            assertEquals(0, dead.getMessagesReceived());
+            assertTrue(dead.getLastError() != null);
+
+            server.stop();
+            awaitTrue(() -> !live.isConnected());
+            GreetingServer restarted = new GreetingServer(livePort, 2);
+            restarted.start();
+            try {
+                awaitTrue(() -> storage.getRecords(2, 0, Long.MAX_VALUE).size() == 1);
+                assertTrue(live.getReconnectCount() >= 1);
+                assertEquals(2, live.getMessagesReceived());
+            } finally {
+                restarted.stop();
+            }
+        } finally {
+            manager.close();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for condition");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Server sending one record of its patient to every client that connects.
+     */
+    private static final class GreetingServer extends WebSocketServer {
+        private final int patientId;
+
+        GreetingServer(int port, int patientId) {
+            super(new InetSocketAddress("localhost", port));
+            this.patientId = patientId;
+            setReuseAddr(true);
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+            conn.send(patientId + ",1000,HeartRate,70");
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {
+        }
+
+        @Override
+        public void onStart() {
+        }
+    }
+}